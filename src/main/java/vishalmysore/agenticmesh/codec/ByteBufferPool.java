@@ -0,0 +1,121 @@
+package vishalmysore.agenticmesh.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct byte buffers in power-of-two size classes.
+ * <p>
+ * Direct buffers are expensive to allocate and are only freed when the garbage collector gets to
+ * them, so encoders borrow one, fill it, hand it to I/O and give it back. A request is served from the
+ * smallest class that fits; requests above the largest class get an unpooled buffer. Each class keeps
+ * at most a fixed number of idle buffers, so memory stays bounded however many are returned.
+ */
+public class ByteBufferPool {
+    public static final int MIN_BUFFER_SIZE = 256;
+    public static final int MAX_BUFFER_SIZE = 1 << 20;
+    private static final int DEFAULT_MAX_IDLE_PER_SIZE = 64;
+
+    // Index i holds idle buffers of MIN_BUFFER_SIZE << i bytes
+    private final Queue<ByteBuffer>[] idle;
+    private final AtomicInteger[] idleCounts;
+    private final int maxIdlePerSize;
+    private final AtomicLong allocatedCount;
+    private final AtomicLong reusedCount;
+    private final AtomicLong droppedCount;
+
+    public ByteBufferPool() {
+        this(DEFAULT_MAX_IDLE_PER_SIZE);
+    }
+
+    /**
+     * @param maxIdlePerSize idle buffers kept at most per size class; returned buffers beyond that are dropped
+     */
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(int maxIdlePerSize) {
+        if (maxIdlePerSize < 0) {
+            throw new IllegalArgumentException("Idle buffer limit must not be negative");
+        }
+        int classes = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+        this.idle = new Queue[classes];
+        this.idleCounts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            idle[i] = new ConcurrentLinkedQueue<>();
+            idleCounts[i] = new AtomicInteger();
+        }
+        this.maxIdlePerSize = maxIdlePerSize;
+        this.allocatedCount = new AtomicLong();
+        this.reusedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+    }
+
+    /**
+     * Borrows a cleared big-endian direct buffer with at least the given capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        if (minCapacity > MAX_BUFFER_SIZE) {
+            allocatedCount.incrementAndGet();
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer = idle[sizeClass].poll();
+        if (buffer != null) {
+            idleCounts[sizeClass].decrementAndGet();
+            reusedCount.incrementAndGet();
+            return buffer.clear().order(ByteOrder.BIG_ENDIAN);
+        }
+        allocatedCount.incrementAndGet();
+        return ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+    }
+
+    /**
+     * Gives a buffer back. Buffers that did not come from a pool of this layout are ignored; the
+     * caller must not use the buffer afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || capacity < MIN_BUFFER_SIZE || capacity > MAX_BUFFER_SIZE
+            || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int sizeClass = sizeClass(capacity);
+        if (idleCounts[sizeClass].incrementAndGet() > maxIdlePerSize) {
+            idleCounts[sizeClass].decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        idle[sizeClass].offer(buffer);
+    }
+
+    private static int sizeClass(int capacity) {
+        int size = Math.max(MIN_BUFFER_SIZE, capacity);
+        int rounded = Integer.bitCount(size) == 1 ? size : Integer.highestOneBit(size) << 1;
+        return Integer.numberOfTrailingZeros(rounded / MIN_BUFFER_SIZE);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        int idleBuffers = 0;
+        long idleBytes = 0;
+        for (int i = 0; i < idleCounts.length; i++) {
+            int count = idleCounts[i].get();
+            idleBuffers += count;
+            idleBytes += (long) count * (MIN_BUFFER_SIZE << i);
+        }
+        stats.put("allocatedBuffers", allocatedCount.get());
+        stats.put("reusedBuffers", reusedCount.get());
+        stats.put("droppedBuffers", droppedCount.get());
+        stats.put("idleBuffers", idleBuffers);
+        stats.put("idleBytes", idleBytes);
+        return stats;
+    }
+}
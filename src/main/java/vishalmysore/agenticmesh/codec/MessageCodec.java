@@ -0,0 +1,503 @@
+package vishalmysore.agenticmesh.codec;
+
+import vishalmysore.agenticmesh.core.Message;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of {@link Message} that writes into and reads from byte buffers directly,
+ * without building byte arrays or strings for the whole message first.
+ * <p>
+ * A frame is big-endian: the magic bytes "AM", the format version, the frame length in bytes as an
+ * int, then type, priority and a flags byte; then id, sender, receiver, protocol and correlation id
+ * as UTF-8 strings with a varint length (0 means null, otherwise length + 1); then the deadline if the
+ * flags say so, and finally the payload as a tagged value. Payloads may be null, strings, integers,
+ * longs, doubles, booleans, byte arrays, and lists or maps of those; other collections are written
+ * as lists. Maps and lists come back as LinkedHashMap and ArrayList.
+ * <p>
+ * A decoder reads every version up to its own and rejects newer ones, so a version is only bumped for
+ * changes old decoders cannot skip.
+ */
+public class MessageCodec {
+    public static final int VERSION = 1;
+    private static final short MAGIC = 0x414D;
+    private static final int HEADER_SIZE = 10;
+    private static final int MAX_DEPTH = 64;
+    private static final int FLAG_DEADLINE = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_TRUE = 5;
+    private static final byte TAG_FALSE = 6;
+    private static final byte TAG_BYTES = 7;
+    private static final byte TAG_LIST = 8;
+    private static final byte TAG_MAP = 9;
+
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+    private static final Message.MessagePriority[] PRIORITIES = Message.MessagePriority.values();
+    // Priority each type code implies, with code 0 for a null type
+    private static final Message.MessagePriority[] IMPLIED_PRIORITIES = impliedPriorities();
+
+    private final ByteBufferPool pool;
+
+    public MessageCodec() {
+        this(new ByteBufferPool());
+    }
+
+    public MessageCodec(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the exact number of bytes {@link #encode(Message, ByteBuffer)} writes for the message
+     *
+     * @throws IllegalArgumentException if the payload holds a type the codec cannot write
+     */
+    public int encodedSize(Message message) {
+        int size = HEADER_SIZE;
+        size += stringSize(message.getId());
+        size += stringSize(message.getSenderId());
+        size += stringSize(message.getReceiverId());
+        size += stringSize(message.getProtocol());
+        size += stringSize(message.getCorrelationId());
+        if (message.getDeadline() != null) {
+            size += Long.BYTES + Integer.BYTES;
+        }
+        return size + valueSize(message.getPayload(), 0);
+    }
+
+    /**
+     * Encodes the message into a pooled direct buffer, ready to be read. Hand the buffer back with
+     * {@link #release(ByteBuffer)} once it has been written out.
+     */
+    public ByteBuffer encode(Message message) {
+        int size = encodedSize(message);
+        ByteBuffer buffer = pool.acquire(size);
+        writeFrame(message, size, buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes the message at the buffer's position and advances it past the frame
+     *
+     * @throws BufferOverflowException  if the buffer has less room than {@link #encodedSize(Message)}
+     * @throws IllegalArgumentException if the payload holds a type the codec cannot write
+     */
+    public void encode(Message message, ByteBuffer target) {
+        int size = encodedSize(message);
+        if (target.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        ByteOrder order = target.order();
+        target.order(ByteOrder.BIG_ENDIAN);
+        try {
+            writeFrame(message, size, target);
+        } finally {
+            target.order(order);
+        }
+    }
+
+    private void writeFrame(Message message, int size, ByteBuffer target) {
+        target.putShort(MAGIC);
+        target.put((byte) VERSION);
+        target.putInt(size);
+        Message.MessageType type = message.getType();
+        target.put((byte) (type == null ? 0 : type.ordinal() + 1));
+        target.put((byte) explicitPriority(message));
+        Instant deadline = message.getDeadline();
+        target.put((byte) (deadline != null ? FLAG_DEADLINE : 0));
+        writeString(message.getId(), target);
+        writeString(message.getSenderId(), target);
+        writeString(message.getReceiverId(), target);
+        writeString(message.getProtocol(), target);
+        writeString(message.getCorrelationId(), target);
+        if (deadline != null) {
+            target.putLong(deadline.getEpochSecond());
+            target.putInt(deadline.getNano());
+        }
+        writeValue(message.getPayload(), target, 0);
+    }
+
+    /**
+     * Message keeps an explicit priority private, so one is written only where it differs from what
+     * the type implies; a decoded message then reports the same priority either way
+     *
+     * @return 0 for the type's priority, otherwise the ordinal + 1
+     */
+    private static int explicitPriority(Message message) {
+        Message.MessagePriority priority = message.getPriority();
+        Message.MessageType type = message.getType();
+        return priority == IMPLIED_PRIORITIES[type == null ? 0 : type.ordinal() + 1] ? 0 : priority.ordinal() + 1;
+    }
+
+    private static Message.MessagePriority[] impliedPriorities() {
+        Message.MessagePriority[] implied = new Message.MessagePriority[TYPES.length + 1];
+        implied[0] = new Message(null, null, null, null, null, null).getPriority();
+        for (Message.MessageType type : TYPES) {
+            implied[type.ordinal() + 1] = new Message(null, null, null, null, null, type).getPriority();
+        }
+        return implied;
+    }
+
+    /**
+     * Decodes the frame at the buffer's position and advances it past the frame
+     *
+     * @throws IllegalArgumentException if the bytes are not a complete frame of a known version
+     */
+    public Message decode(ByteBuffer source) {
+        ByteOrder order = source.order();
+        source.order(ByteOrder.BIG_ENDIAN);
+        int start = source.position();
+        try {
+            if (source.getShort() != MAGIC) {
+                throw new IllegalArgumentException("Not a message frame");
+            }
+            int version = source.get();
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("Unsupported message format version " + version);
+            }
+            int size = source.getInt();
+            if (size < HEADER_SIZE || size > source.limit() - start) {
+                throw new IllegalArgumentException("Truncated message frame of " + size + " bytes");
+            }
+            int typeCode = source.get();
+            int priorityCode = source.get();
+            int flags = source.get();
+            String id = readString(source);
+            String senderId = readString(source);
+            String receiverId = readString(source);
+            String protocol = readString(source);
+            String correlationId = readString(source);
+            Instant deadline = (flags & FLAG_DEADLINE) != 0
+                ? Instant.ofEpochSecond(source.getLong(), source.getInt()) : null;
+            Object payload = readValue(source, 0);
+            if (source.position() - start != size) {
+                throw new IllegalArgumentException("Message frame length does not match its content");
+            }
+            Message message = new Message(id, senderId, receiverId, protocol, payload,
+                typeCode == 0 ? null : TYPES[typeCode - 1], correlationId);
+            if (priorityCode != 0) {
+                message = message.withPriority(PRIORITIES[priorityCode - 1]);
+            }
+            return deadline != null ? message.withDeadline(deadline) : message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated or corrupt message frame", e);
+        } finally {
+            source.order(order);
+        }
+    }
+
+    /**
+     * Gives a buffer from {@link #encode(Message)} back to the pool
+     */
+    public void release(ByteBuffer buffer) {
+        pool.release(buffer);
+    }
+
+    public ByteBufferPool getPool() {
+        return pool;
+    }
+
+    private static int valueSize(Object value, int depth) {
+        checkDepth(depth);
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return 1 + stringSize((String) value);
+        }
+        if (value instanceof Integer) {
+            return 1 + varintSize(zigzag((Integer) value));
+        }
+        if (value instanceof Long) {
+            return 1 + varintSize(zigzag((Long) value));
+        }
+        if (value instanceof Double) {
+            return 1 + Double.BYTES;
+        }
+        if (value instanceof byte[]) {
+            int length = ((byte[]) value).length;
+            return 1 + varintSize(length) + length;
+        }
+        if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            int size = 1 + varintSize(list.size());
+            for (Object element : list) {
+                size += valueSize(element, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            int size = 1 + varintSize(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += valueSize(entry.getKey(), depth + 1) + valueSize(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        throw new IllegalArgumentException("Unsupported payload type: " + value.getClass().getName());
+    }
+
+    private static void writeValue(Object value, ByteBuffer target, int depth) {
+        if (value == null) {
+            target.put(TAG_NULL);
+        } else if (value instanceof String) {
+            target.put(TAG_STRING);
+            writeString((String) value, target);
+        } else if (value instanceof Integer) {
+            target.put(TAG_INT);
+            writeVarint(zigzag((Integer) value), target);
+        } else if (value instanceof Long) {
+            target.put(TAG_LONG);
+            writeVarint(zigzag((Long) value), target);
+        } else if (value instanceof Double) {
+            target.put(TAG_DOUBLE);
+            target.putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            target.put((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            target.put(TAG_BYTES);
+            writeVarint(bytes.length, target);
+            target.put(bytes);
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            target.put(TAG_LIST);
+            writeVarint(list.size(), target);
+            for (Object element : list) {
+                writeValue(element, target, depth + 1);
+            }
+        } else {
+            Map<?, ?> map = (Map<?, ?>) value;
+            target.put(TAG_MAP);
+            writeVarint(map.size(), target);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey(), target, depth + 1);
+                writeValue(entry.getValue(), target, depth + 1);
+            }
+        }
+    }
+
+    private static Object readValue(ByteBuffer source, int depth) {
+        checkDepth(depth);
+        byte tag = source.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(source);
+            case TAG_INT:
+                return (int) unzigzag(readVarint(source));
+            case TAG_LONG:
+                return unzigzag(readVarint(source));
+            case TAG_DOUBLE:
+                return source.getDouble();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_BYTES: {
+                byte[] bytes = new byte[readLength(source)];
+                source.get(bytes);
+                return bytes;
+            }
+            case TAG_LIST: {
+                int size = readLength(source);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(source, depth + 1));
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                int size = readLength(source);
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(source, depth + 1), readValue(source, depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown payload tag " + tag);
+        }
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Payload nested deeper than " + MAX_DEPTH + " levels");
+        }
+    }
+
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintSize(length + 1L) + length;
+    }
+
+    /**
+     * Counts UTF-8 bytes the way {@link #writeString} encodes: a lone surrogate becomes '?'
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeString(String value, ByteBuffer target) {
+        if (value == null) {
+            target.put((byte) 0);
+            return;
+        }
+        int length = utf8Length(value);
+        writeVarint(length + 1L, target);
+        if (length == value.length()) {
+            // All ASCII: a loop without branches the JIT can unroll
+            for (int i = 0; i < length; i++) {
+                target.put((byte) value.charAt(i));
+            }
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                target.put((byte) c);
+            } else if (c < 0x800) {
+                target.put((byte) (0xC0 | c >> 6));
+                target.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                target.put((byte) (0xF0 | codePoint >> 18));
+                target.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                target.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                target.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                target.put((byte) '?');
+            } else {
+                target.put((byte) (0xE0 | c >> 12));
+                target.put((byte) (0x80 | c >> 6 & 0x3F));
+                target.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer source) {
+        long prefix = readVarint(source);
+        if (prefix == 0) {
+            return null;
+        }
+        if (prefix - 1 > source.remaining()) {
+            throw new IllegalArgumentException("String runs past the end of the frame");
+        }
+        int end = source.position() + (int) (prefix - 1);
+        // UTF-8 never takes fewer bytes than UTF-16 chars
+        char[] chars = new char[end - source.position()];
+        int length = 0;
+        while (source.position() < end) {
+            int b = source.get();
+            if (b >= 0) {
+                chars[length++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[length++] = (char) ((b & 0x1F) << 6 | continuation(source));
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[length++] = (char) ((b & 0x0F) << 12 | continuation(source) << 6 | continuation(source));
+            } else if ((b & 0xF8) == 0xF0) {
+                int codePoint = (b & 0x07) << 18 | continuation(source) << 12 | continuation(source) << 6
+                    | continuation(source);
+                if (!Character.isSupplementaryCodePoint(codePoint)) {
+                    throw new IllegalArgumentException("Malformed UTF-8 in message frame");
+                }
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                throw new IllegalArgumentException("Malformed UTF-8 in message frame");
+            }
+        }
+        if (source.position() != end) {
+            throw new IllegalArgumentException("Malformed UTF-8 in message frame");
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static int continuation(ByteBuffer source) {
+        int b = source.get();
+        if ((b & 0xC0) != 0x80) {
+            throw new IllegalArgumentException("Malformed UTF-8 in message frame");
+        }
+        return b & 0x3F;
+    }
+
+    private static int readLength(ByteBuffer source) {
+        long length = readVarint(source);
+        if (length > source.remaining()) {
+            throw new IllegalArgumentException("Length runs past the end of the frame");
+        }
+        return (int) length;
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(long value, ByteBuffer target) {
+        while ((value & ~0x7FL) != 0) {
+            target.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    private static long readVarint(ByteBuffer source) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in message frame");
+    }
+}
@@ -1,5 +1,8 @@
 package vishalmysore.agenticmesh.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Core interface for all agents in the AgenticMesh ecosystem
  */
@@ -23,7 +26,55 @@ public interface MeshParticipantAgent {
      * Processes a message received by this agent
      */
     void processMessage(Message message);
+
+    /**
+     * Processes several messages addressed to this agent, in delivery order. The mesh calls this
+     * when more than one message is ready for the agent; override it to amortize work such as
+     * remote calls across the batch. The default processes each message in turn and rethrows the
+     * first failure after the rest of the batch has been processed.
+     */
+    default void processBatch(List<Message> messages) {
+        RuntimeException failure = null;
+        for (Message message : messages) {
+            try {
+                processMessage(message);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
     
+    /**
+     * Processes a message as a pipeline stage and returns the message handed to the next stage. The
+     * default calls {@link #processMessage(Message)} and passes the message on unchanged; return null
+     * to drop the message from the pipeline.
+     */
+    default Message transform(Message message) {
+        processMessage(message);
+        return message;
+    }
+
+    /**
+     * Processes a micro-batch as a pipeline stage. The pipeline calls this for stages with batching
+     * enabled; override it to amortize work such as remote calls across the batch. Returns one entry
+     * per message, in order: the message handed to the next stage, or null to drop it. The default
+     * transforms each message in turn; if the call throws, the whole batch counts as failed.
+     */
+    default List<Message> transformBatch(List<Message> messages) {
+        List<Message> results = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            results.add(transform(message));
+        }
+        return results;
+    }
+
     /**
      * Gets the current state of the agent
      */
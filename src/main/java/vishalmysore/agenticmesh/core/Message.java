@@ -1,5 +1,9 @@
 package vishalmysore.agenticmesh.core;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
 /**
  * Message class for inter-agent communication
  */
@@ -10,14 +14,66 @@ public class Message {
     private final String protocol; // "A2A" or "MCP"
     private final Object payload;
     private final MessageType type;
+    private final String correlationId; // id of the request a RESPONSE answers
+    private final MessagePriority priority; // null means derived from the type
+    private final Instant deadline; // null means the message never expires
 
     public Message(String id, String senderId, String receiverId, String protocol, Object payload, MessageType type) {
+        this(id, senderId, receiverId, protocol, payload, type, null);
+    }
+
+    public Message(String id, String senderId, String receiverId, String protocol, Object payload, MessageType type,
+                   String correlationId) {
+        this(id, senderId, receiverId, protocol, payload, type, correlationId, null, null);
+    }
+
+    private Message(String id, String senderId, String receiverId, String protocol, Object payload, MessageType type,
+                    String correlationId, MessagePriority priority, Instant deadline) {
         this.id = id;
         this.senderId = senderId;
         this.receiverId = receiverId;
         this.protocol = protocol;
         this.payload = payload;
         this.type = type;
+        this.correlationId = correlationId;
+        this.priority = priority;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns a copy of this message with an explicit priority instead of the one derived from its type
+     */
+    public Message withPriority(MessagePriority priority) {
+        return new Message(id, senderId, receiverId, protocol, payload, type, correlationId, priority, deadline);
+    }
+
+    /**
+     * Returns a copy of this message that expires at the given instant; a null deadline never expires
+     */
+    public Message withDeadline(Instant deadline) {
+        return new Message(id, senderId, receiverId, protocol, payload, type, correlationId, priority, deadline);
+    }
+
+    /**
+     * Returns a copy of this message under another id, keeping its correlation id, priority and deadline
+     */
+    public Message withId(String id) {
+        return new Message(id, senderId, receiverId, protocol, payload, type, correlationId, priority, deadline);
+    }
+
+    /**
+     * Returns a copy of this message that expires once the given time to live has elapsed from now
+     */
+    public Message withTimeToLive(Duration timeToLive) {
+        return withDeadline(Instant.now().plus(timeToLive));
+    }
+
+    /**
+     * Creates a RESPONSE to the given request, sent back to its sender and correlated by the request id
+     */
+    public static Message responseTo(Message request, Object payload) {
+        return new Message(UUID.randomUUID().toString(), request.getReceiverId(), request.getSenderId(),
+            request.getProtocol(), payload, MessageType.RESPONSE, request.getId());
     }
 
     // Getters
@@ -27,6 +83,37 @@ public class Message {
     public String getProtocol() { return protocol; }
     public Object getPayload() { return payload; }
     public MessageType getType() { return type; }
+    public String getCorrelationId() { return correlationId; }
+    public Instant getDeadline() { return deadline; }
+
+    /**
+     * Checks whether the message has a deadline that has already passed
+     */
+    public boolean isExpired() {
+        return deadline != null && Instant.now().isAfter(deadline);
+    }
+
+    /**
+     * Gets the scheduling priority: the explicit one if set, otherwise COMMAND and RESPONSE are HIGH,
+     * QUERY is MEDIUM and EVENT is LOW
+     */
+    public MessagePriority getPriority() {
+        if (priority != null) {
+            return priority;
+        }
+        if (type == null) {
+            return MessagePriority.LOW;
+        }
+        switch (type) {
+            case COMMAND:
+            case RESPONSE:
+                return MessagePriority.HIGH;
+            case QUERY:
+                return MessagePriority.MEDIUM;
+            default:
+                return MessagePriority.LOW;
+        }
+    }
 
     public enum MessageType {
         COMMAND,
@@ -34,4 +121,11 @@ public class Message {
         QUERY,
         RESPONSE
     }
+
+    public enum MessagePriority {
+        LOW,
+        MEDIUM,
+        HIGH,
+        CRITICAL
+    }
 }
@@ -0,0 +1,519 @@
+package vishalmysore.agenticmesh.dag;
+
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Streams requests through a directed acyclic graph of agents.
+ * <p>
+ * A node becomes ready for a request once all of its parents have produced their output for it.
+ * Ready nodes run on a shared pool of worker threads, so independent branches of one request run at
+ * the same time, and many requests are in the graph at once. Each node still handles one request at
+ * a time, in the order they became ready, so an agent is never called concurrently.
+ * <p>
+ * A node with several parents receives their outputs joined into one message correlated to the
+ * request: by default its payload maps each parent's id to that parent's output payload. The request
+ * completes with the output of its sink node, or with the sink outputs joined the same way if the
+ * graph has several sinks. A node returning null completes the request with null; a node throwing,
+ * errors included, completes it exceptionally. Either way the rest of the graph skips that request.
+ */
+public class DagRuntime {
+    // Requests a node may run per turn before yielding its thread to other nodes
+    private static final int NODE_THROUGHPUT = 16;
+
+    private final String name;
+    private final Node[] nodes;
+    private final int[] sinks;
+    private final Map<String, Node> nodesById;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Set<Execution> executions;
+    private final AtomicLong submittedCount;
+    private final AtomicLong completedCount;
+    private final AtomicLong failedCount;
+    private final AtomicLong filteredCount;
+    private final AtomicLong totalLatencyNanos;
+    private volatile boolean running;
+    // Guarded by this; the worker pool is shut down for good once set
+    private boolean stopped;
+
+    /**
+     * @param agents       the nodes of the graph
+     * @param children     node id to the ids of the nodes that take its output
+     * @param workerCount  threads shared by all nodes
+     * @param maxInFlight  requests in the graph at once; further submitters wait
+     * @throws IllegalArgumentException if an edge names an unknown node or the edges form a cycle
+     */
+    public DagRuntime(String name, List<MeshParticipantAgent> agents, Map<String, List<String>> children,
+                      int workerCount, int maxInFlight) {
+        if (agents.isEmpty() || workerCount < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("A DAG needs at least one agent, worker and request in flight");
+        }
+        this.name = name;
+        this.nodes = topologicalOrder(agents, children);
+        this.nodesById = new HashMap<>();
+        List<Integer> sinkList = new ArrayList<>();
+        for (Node node : nodes) {
+            nodesById.put(node.agent.getId(), node);
+            if (node.children.length == 0) {
+                sinkList.add(node.index);
+            }
+        }
+        this.sinks = sinkList.stream().mapToInt(Integer::intValue).toArray();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, name + "-dag-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executions = ConcurrentHashMap.newKeySet();
+        this.submittedCount = new AtomicLong();
+        this.completedCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.filteredCount = new AtomicLong();
+        this.totalLatencyNanos = new AtomicLong();
+    }
+
+    /**
+     * Orders the nodes so every node comes after its parents (Kahn's algorithm)
+     */
+    private Node[] topologicalOrder(List<MeshParticipantAgent> agents, Map<String, List<String>> children) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < agents.size(); i++) {
+            positions.put(agents.get(i).getId(), i);
+        }
+        List<List<Integer>> parentLists = new ArrayList<>();
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int i = 0; i < agents.size(); i++) {
+            parentLists.add(new ArrayList<>());
+            childLists.add(new ArrayList<>());
+        }
+        children.forEach((from, targets) -> {
+            for (String to : targets) {
+                Integer fromPosition = positions.get(from);
+                Integer toPosition = positions.get(to);
+                if (fromPosition == null || toPosition == null) {
+                    throw new IllegalArgumentException("Edge " + from + " -> " + to + " names an unknown node");
+                }
+                childLists.get(fromPosition).add(toPosition);
+                parentLists.get(toPosition).add(fromPosition);
+            }
+        });
+
+        int[] indegree = new int[agents.size()];
+        Queue<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < agents.size(); i++) {
+            indegree[i] = parentLists.get(i).size();
+            if (indegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] order = new int[agents.size()];
+        int[] rank = new int[agents.size()];
+        int ordered = 0;
+        while (!ready.isEmpty()) {
+            int position = ready.poll();
+            rank[position] = ordered;
+            order[ordered++] = position;
+            for (int child : childLists.get(position)) {
+                if (--indegree[child] == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+        if (ordered < agents.size()) {
+            throw new IllegalArgumentException("The edges between the agents form a cycle");
+        }
+
+        Node[] nodes = new Node[agents.size()];
+        for (int i = 0; i < ordered; i++) {
+            int position = order[i];
+            nodes[i] = new Node(i, agents.get(position),
+                parentLists.get(position).stream().mapToInt(p -> rank[p]).toArray(),
+                childLists.get(position).stream().mapToInt(c -> rank[c]).toArray());
+        }
+        return nodes;
+    }
+
+    /**
+     * @throws IllegalStateException if the runtime was stopped; a stopped runtime cannot be restarted
+     */
+    public synchronized void start() {
+        if (stopped) {
+            throw new IllegalStateException("DAG " + name + " was stopped and cannot be restarted");
+        }
+        running = true;
+    }
+
+    /**
+     * Replaces the default join of a node with several parents. The function gets the parents'
+     * outputs by parent id, in the order the edges were added, and returns the node's input.
+     */
+    public void setJoiner(String nodeId, Function<Map<String, Message>, Message> joiner) {
+        Node node = nodesById.get(nodeId);
+        if (node == null) {
+            throw new IllegalArgumentException("Unknown DAG node: " + nodeId);
+        }
+        node.joiner = joiner;
+    }
+
+    /**
+     * Sends a request into the graph, waiting while the maximum number of requests is in flight
+     *
+     * @return completes with the sink output, with null if a node dropped the request, or exceptionally
+     * if a node failed or the runtime stopped while the submitter waited
+     * @throws IllegalStateException      if the runtime is not running
+     * @throws RejectedExecutionException if interrupted while waiting
+     */
+    public CompletableFuture<Message> submit(Message request) {
+        checkRunning();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for DAG capacity", e);
+        }
+        submittedCount.incrementAndGet();
+        Execution execution = new Execution(request);
+        executions.add(execution);
+        if (!running) {
+            // stop() began while we waited for a permit; this gives the permit back
+            execution.fail(new IllegalStateException("DAG " + name + " stopped before the request started"));
+            return execution.result;
+        }
+        for (Node node : nodes) {
+            if (node.parents.length == 0) {
+                node.enqueue(execution);
+            }
+        }
+        return execution.result;
+    }
+
+    /**
+     * Stops accepting requests and waits for the ones in flight to complete. Requests still running
+     * at the timeout are failed, and so are requests whose submitter was still waiting for a permit.
+     *
+     * @return true if every request in flight completed before the timeout
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            if (!running) {
+                return true;
+            }
+            running = false;
+            stopped = true;
+        }
+        boolean drained = inFlight.tryAcquire(maxInFlight, timeout, unit);
+        workers.shutdownNow();
+        if (drained) {
+            // Submitters that passed the running check and still wait for a permit fail at once
+            inFlight.release(maxInFlight);
+        } else {
+            for (Execution execution : executions) {
+                execution.fail(new IllegalStateException("DAG " + name + " stopped before the request completed"));
+            }
+        }
+        return drained;
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new IllegalStateException("DAG " + name + " is not running");
+        }
+    }
+
+    private void execute(Node node, Execution execution) {
+        long started = System.nanoTime();
+        node.waitNanos.addAndGet(started - execution.readyNanos.get(node.index));
+        Message output;
+        try {
+            output = node.agent.transform(input(node, execution));
+        } catch (Exception e) {
+            node.failedCount.incrementAndGet();
+            execution.fail(e);
+            return;
+        } catch (Error e) {
+            // The request fails before the error takes down the worker thread
+            node.failedCount.incrementAndGet();
+            execution.fail(e);
+            throw e;
+        } finally {
+            node.serviceNanos.addAndGet(System.nanoTime() - started);
+            node.invocationCount.incrementAndGet();
+        }
+        if (output == null) {
+            execution.finish(null, filteredCount);
+            return;
+        }
+        execution.outputs.set(node.index, output);
+        for (int child : node.children) {
+            if (execution.pendingParents.decrementAndGet(child) == 0) {
+                nodes[child].enqueue(execution);
+            }
+        }
+        if (node.children.length == 0 && execution.pendingSinks.decrementAndGet() == 0) {
+            execution.finish(sinks.length == 1 ? output : join(execution, sinks, null), completedCount);
+        }
+    }
+
+    private Message input(Node node, Execution execution) {
+        if (node.parents.length == 0) {
+            return execution.request;
+        }
+        if (node.parents.length == 1) {
+            return execution.outputs.get(node.parents[0]);
+        }
+        return join(execution, node.parents, node);
+    }
+
+    /**
+     * Joins the outputs of several nodes for one request, with the node's joiner if it has one
+     */
+    private Message join(Execution execution, int[] sources, Node node) {
+        Map<String, Message> outputs = new LinkedHashMap<>();
+        for (int source : sources) {
+            outputs.put(nodes[source].agent.getId(), execution.outputs.get(source));
+        }
+        if (node != null && node.joiner != null) {
+            return node.joiner.apply(Collections.unmodifiableMap(outputs));
+        }
+        Map<String, Object> payloads = new LinkedHashMap<>();
+        outputs.forEach((id, output) -> payloads.put(id, output.getPayload()));
+        Message request = execution.request;
+        String receiverId = node != null ? node.agent.getId() : request.getSenderId();
+        return new Message(request.getId(), request.getSenderId(), receiverId, request.getProtocol(), payloads,
+            request.getType(), request.getId()).withDeadline(request.getDeadline());
+    }
+
+    public boolean isRunning() { return running; }
+    public long getSubmittedCount() { return submittedCount.get(); }
+    public long getCompletedCount() { return completedCount.get(); }
+
+    /**
+     * Gets the nodes on the path with the largest sum of average node latency, where a node's latency
+     * is the time from becoming ready to finishing, queueing included. Speeding up any other node does
+     * not shorten requests.
+     */
+    public List<String> getCriticalPath() {
+        double[] longest = new double[nodes.length];
+        int[] previous = new int[nodes.length];
+        int end = 0;
+        for (Node node : nodes) {
+            int index = node.index;
+            previous[index] = -1;
+            for (int parent : node.parents) {
+                if (previous[index] < 0 || longest[parent] > longest[previous[index]]) {
+                    previous[index] = parent;
+                }
+            }
+            longest[index] = node.averageLatencyNanos() + (previous[index] < 0 ? 0 : longest[previous[index]]);
+            if (longest[index] > longest[end]) {
+                end = index;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        for (int index = end; index >= 0; index = previous[index]) {
+            path.add(nodes[index].agent.getId());
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Gets request totals, per-node latency under "nodes" and the critical path
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long completed = completedCount.get();
+        stats.put("submittedRequests", submittedCount.get());
+        stats.put("completedRequests", completed);
+        stats.put("failedRequests", failedCount.get());
+        stats.put("filteredRequests", filteredCount.get());
+        stats.put("requestsInFlight", maxInFlight - inFlight.availablePermits());
+        long finished = completed + filteredCount.get();
+        stats.put("averageLatencyMillis", finished == 0 ? 0.0 : totalLatencyNanos.get() / 1e6 / finished);
+        Map<String, Object> nodeStats = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            nodeStats.put(node.agent.getId(), node.getStatistics());
+        }
+        stats.put("nodes", nodeStats);
+        List<String> criticalPath = getCriticalPath();
+        double criticalPathNanos = 0;
+        for (String id : criticalPath) {
+            criticalPathNanos += nodesById.get(id).averageLatencyNanos();
+        }
+        stats.put("criticalPath", criticalPath);
+        stats.put("criticalPathMillis", criticalPathNanos / 1e6);
+        return stats;
+    }
+
+    /**
+     * One request on its way through the graph
+     */
+    private final class Execution {
+        private final Message request;
+        private final long startedNanos;
+        private final AtomicIntegerArray pendingParents;
+        private final AtomicInteger pendingSinks;
+        private final AtomicReferenceArray<Message> outputs;
+        private final AtomicLongArray readyNanos;
+        private final CompletableFuture<Message> result;
+        private final AtomicBoolean finished;
+
+        Execution(Message request) {
+            this.request = request;
+            this.startedNanos = System.nanoTime();
+            this.pendingParents = new AtomicIntegerArray(nodes.length);
+            for (Node node : nodes) {
+                pendingParents.set(node.index, node.parents.length);
+            }
+            this.pendingSinks = new AtomicInteger(sinks.length);
+            this.outputs = new AtomicReferenceArray<>(nodes.length);
+            this.readyNanos = new AtomicLongArray(nodes.length);
+            this.result = new CompletableFuture<>();
+            this.finished = new AtomicBoolean();
+        }
+
+        boolean isFinished() {
+            return finished.get();
+        }
+
+        void finish(Message output, AtomicLong outcome) {
+            if (finished.compareAndSet(false, true)) {
+                // Counted before the caller is woken, so statistics read after the result include it
+                outcome.incrementAndGet();
+                totalLatencyNanos.addAndGet(System.nanoTime() - startedNanos);
+                executions.remove(this);
+                inFlight.release();
+                result.complete(output);
+            }
+        }
+
+        void fail(Throwable error) {
+            if (finished.compareAndSet(false, true)) {
+                failedCount.incrementAndGet();
+                executions.remove(this);
+                inFlight.release();
+                result.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * A graph node with its run queue. Like an agent mailbox, it is scheduled on the pool while it has
+     * ready requests and runs them one at a time.
+     */
+    private final class Node implements Runnable {
+        private final int index;
+        private final MeshParticipantAgent agent;
+        private final int[] parents;
+        private final int[] children;
+        private final Queue<Execution> queue;
+        private final AtomicBoolean scheduled;
+        private final AtomicLong invocationCount;
+        private final AtomicLong failedCount;
+        private final AtomicLong serviceNanos;
+        private final AtomicLong waitNanos;
+        private volatile Function<Map<String, Message>, Message> joiner;
+
+        Node(int index, MeshParticipantAgent agent, int[] parents, int[] children) {
+            this.index = index;
+            this.agent = agent;
+            this.parents = parents;
+            this.children = children;
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.scheduled = new AtomicBoolean();
+            this.invocationCount = new AtomicLong();
+            this.failedCount = new AtomicLong();
+            this.serviceNanos = new AtomicLong();
+            this.waitNanos = new AtomicLong();
+        }
+
+        void enqueue(Execution execution) {
+            execution.readyNanos.set(index, System.nanoTime());
+            queue.offer(execution);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Only a stopped runtime's pool rejects, and nothing would ever run the queued requests
+                    for (Execution execution = queue.poll(); execution != null; execution = queue.poll()) {
+                        execution.fail(
+                            new IllegalStateException("DAG " + name + " stopped before the request completed"));
+                    }
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < NODE_THROUGHPUT; i++) {
+                    Execution execution = queue.poll();
+                    if (execution == null) {
+                        break;
+                    }
+                    if (!execution.isFinished()) {
+                        execute(this, execution);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // Requests that became ready while the flag was still set would otherwise wait for the next one
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        double averageLatencyNanos() {
+            long invocations = invocationCount.get();
+            return invocations == 0 ? 0.0 : (double) (serviceNanos.get() + waitNanos.get()) / invocations;
+        }
+
+        Map<String, Object> getStatistics() {
+            Map<String, Object> stats = new HashMap<>();
+            long invocations = invocationCount.get();
+            stats.put("invocations", invocations);
+            stats.put("failures", failedCount.get());
+            stats.put("queueDepth", queue.size());
+            stats.put("averageServiceMillis", invocations == 0 ? 0.0 : serviceNanos.get() / 1e6 / invocations);
+            stats.put("averageWaitMillis", invocations == 0 ? 0.0 : waitNanos.get() / 1e6 / invocations);
+            stats.put("averageLatencyMillis", averageLatencyNanos() / 1e6);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import vishalmysore.agenticmesh.core.Message;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CoDel-style admission control for an {@link IngressQueue}. The queueing delay (sojourn time) of every
+ * dequeued message is compared with a target; a short burst above the target is tolerated, but once the
+ * delay has stayed above it for a whole interval the queue is treated as a standing backlog and new
+ * messages are shed until a dequeued message waits less than the target again or the queue empties.
+ * CRITICAL messages are always admitted.
+ * <p>
+ * The queue calls {@link #onDequeue} and {@link #admit} while holding its lock, so the controller
+ * does not synchronize on its own.
+ */
+public class AdmissionController {
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final AtomicLong shedCount;
+    private long firstAboveTime;
+    private volatile boolean shedding;
+
+    /**
+     * @param target   acceptable queueing delay
+     * @param interval how long the delay must stay above the target before new work is shed
+     */
+    public AdmissionController(Duration target, Duration interval) {
+        if (target.isNegative() || target.isZero() || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Target and interval must be positive");
+        }
+        this.targetNanos = target.toNanos();
+        this.intervalNanos = interval.toNanos();
+        this.shedCount = new AtomicLong();
+    }
+
+    /**
+     * Records the sojourn time of a message leaving the queue
+     *
+     * @param sojournNanos time the message spent queued
+     * @param nowNanos     current {@link System#nanoTime()}
+     * @param queueEmpty   whether the queue is empty after this dequeue
+     */
+    void onDequeue(long sojournNanos, long nowNanos, boolean queueEmpty) {
+        if (sojournNanos < targetNanos || queueEmpty) {
+            firstAboveTime = 0;
+            shedding = false;
+        } else if (firstAboveTime == 0) {
+            firstAboveTime = nowNanos + intervalNanos;
+        } else if (nowNanos - firstAboveTime >= 0) {
+            shedding = true;
+        }
+    }
+
+    /**
+     * Decides whether a new message may enter the queue, counting it as shed if not
+     */
+    boolean admit(Message message) {
+        if (!shedding || message.getPriority() == Message.MessagePriority.CRITICAL) {
+            return true;
+        }
+        shedCount.incrementAndGet();
+        return false;
+    }
+
+    public boolean isShedding() { return shedding; }
+    public long getShedCount() { return shedCount.get(); }
+    public Duration getTarget() { return Duration.ofNanos(targetNanos); }
+    public Duration getInterval() { return Duration.ofNanos(intervalNanos); }
+}
@@ -0,0 +1,15 @@
+package vishalmysore.agenticmesh.dispatch;
+
+/**
+ * Behaviour of a bounded ingress queue when a message arrives and the queue is full
+ */
+public enum BackpressurePolicy {
+    /** Block the caller until space becomes available */
+    BLOCK,
+    /** Reject the incoming message immediately */
+    FAIL_FAST,
+    /** Evict the oldest queued message to make room */
+    DROP_OLDEST,
+    /** Evict the oldest message of the lowest queued priority, or the incoming one if nothing ranks lower */
+    DROP_LOWEST_PRIORITY
+}
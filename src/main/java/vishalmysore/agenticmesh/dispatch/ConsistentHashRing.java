@@ -0,0 +1,80 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import java.util.Arrays;
+
+/**
+ * Immutable consistent-hash ring that maps keys such as agent ids onto shard indexes. Every shard
+ * owns a number of virtual nodes, so adding a shard only moves about 1/(n+1) of the keys.
+ */
+public final class ConsistentHashRing {
+    private final int shardCount;
+    private final int virtualNodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Shard count and virtual nodes must be positive");
+        }
+        this.shardCount = shardCount;
+        this.virtualNodes = virtualNodes;
+        int size = shardCount * virtualNodes;
+        long[] hashes = new long[size];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int i = shard * virtualNodes + v;
+                hashes[i] = mix(((long) shard << 32) | v);
+            }
+        }
+        // Sort points while keeping track of their owners
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * Returns a ring with one more shard; keys either stay where they are or move to the new shard
+     */
+    public ConsistentHashRing withAdditionalShard() {
+        return new ConsistentHashRing(shardCount + 1, virtualNodes);
+    }
+
+    /**
+     * Gets the shard that owns the key
+     */
+    public int shardFor(String key) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        long hash = hash(key);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public int getShardCount() { return shardCount; }
+
+    private static long hash(String key) {
+        // FNV-1a over the UTF-16 code units, finished with a 64-bit mixer
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,395 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.core.Message.MessagePriority;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ingress stage in front of a dispatcher that applies a {@link BackpressurePolicy}
+ * once the queue reaches its capacity.
+ * <p>
+ * Messages are held in one FIFO lane per {@link MessagePriority} and dequeued by weighted round robin:
+ * while every lane is backlogged, each round takes up to 8 CRITICAL, 4 HIGH, 2 MEDIUM and 1 LOW message.
+ * Urgent messages therefore wait behind at most one round of other lanes, and low-priority lanes still
+ * make progress every round. Ordering is preserved within a lane but not across lanes.
+ * <p>
+ * Messages whose deadline has passed are discarded when they reach the head of their lane, and an
+ * optional {@link AdmissionController} sheds new messages while the queue has a standing backlog.
+ */
+public class IngressQueue {
+    private static final MessagePriority[] PRIORITIES = MessagePriority.values();
+    static final int[] LANE_WEIGHTS = {1, 2, 4, 8}; // indexed by MessagePriority ordinal
+
+    private final int capacity;
+    private final Lane[] lanes;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final AtomicLong rejectedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong expiredCount;
+    private volatile BackpressurePolicy policy;
+    private volatile AdmissionController admissionController;
+    private int size;
+    private int currentLane;
+    private int laneCredit;
+    private boolean closed;
+
+    public IngressQueue(int capacity, BackpressurePolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.lanes = new Lane[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(LANE_WEIGHTS[i], Math.min(capacity, 1024));
+        }
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.rejectedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.expiredCount = new AtomicLong();
+        this.policy = policy;
+        this.currentLane = lanes.length - 1;
+        this.laneCredit = lanes[currentLane].weight;
+    }
+
+    /**
+     * Enqueues a message, applying the backpressure policy if the queue is full
+     *
+     * @throws RejectedExecutionException if the message is rejected by the policy or admission control,
+     *                                    or the queue is closed
+     */
+    public void submit(Message message) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Ingress queue is closed");
+            }
+            AdmissionController admission = admissionController;
+            if (admission != null && !admission.admit(message)) {
+                throw new RejectedExecutionException("Ingress queue is shedding load (queueing delay above "
+                    + admission.getTarget().toMillis() + " ms)");
+            }
+            if (size >= capacity && !makeRoom(message)) {
+                return;
+            }
+            enqueue(message);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueues a batch of messages under a single lock acquisition. With {@link BackpressurePolicy#FAIL_FAST}
+     * the batch is accepted or rejected as a whole; the other policies apply to each message in turn.
+     * Messages refused by admission control are left out and reported once the rest are queued.
+     *
+     * @throws RejectedExecutionException if the batch is rejected by the policy, some messages are shed
+     *                                    by admission control, or the queue is closed
+     */
+    public void submitAll(Collection<Message> batch) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Ingress queue is closed");
+            }
+            if (policy == BackpressurePolicy.FAIL_FAST && size + batch.size() > capacity) {
+                rejectedCount.addAndGet(batch.size());
+                throw new RejectedExecutionException("Ingress queue cannot take a batch of " + batch.size()
+                    + " messages (capacity " + capacity + ")");
+            }
+            AdmissionController admission = admissionController;
+            int added = 0;
+            int shed = 0;
+            for (Message message : batch) {
+                if (admission != null && !admission.admit(message)) {
+                    shed++;
+                    continue;
+                }
+                if (size >= capacity) {
+                    if (added > 0) {
+                        // Wake consumers for what is already queued before possibly blocking
+                        notEmpty.signalAll();
+                        added = 0;
+                    }
+                    if (!makeRoom(message)) {
+                        continue;
+                    }
+                }
+                enqueue(message);
+                added++;
+            }
+            if (added > 0) {
+                notEmpty.signalAll();
+            }
+            if (shed > 0) {
+                throw new RejectedExecutionException("Ingress queue shed " + shed + " of " + batch.size()
+                    + " messages (queueing delay above " + admission.getTarget().toMillis() + " ms)");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Message message) {
+        lanes[message.getPriority().ordinal()].entries.addLast(new Entry(message, System.nanoTime()));
+        size++;
+    }
+
+    /**
+     * Makes room for the incoming message; returns false if the incoming message was dropped instead
+     */
+    private boolean makeRoom(Message incoming) {
+        switch (policy) {
+            case BLOCK:
+                try {
+                    while (size >= capacity) {
+                        if (closed) {
+                            throw new RejectedExecutionException("Ingress queue is closed");
+                        }
+                        notFull.await();
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException("Interrupted while waiting for ingress capacity");
+                }
+            case FAIL_FAST:
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Ingress queue is full (capacity " + capacity + ")");
+            case DROP_OLDEST:
+                evictOldest();
+                droppedCount.incrementAndGet();
+                return true;
+            case DROP_LOWEST_PRIORITY:
+                droppedCount.incrementAndGet();
+                return evictLowerPriority(incoming);
+            default:
+                throw new IllegalStateException("Unknown backpressure policy: " + policy);
+        }
+    }
+
+    private void evictOldest() {
+        Lane oldest = null;
+        for (Lane lane : lanes) {
+            Entry head = lane.entries.peekFirst();
+            if (head != null && (oldest == null || head.enqueuedNanos - oldest.entries.peekFirst().enqueuedNanos < 0)) {
+                oldest = lane;
+            }
+        }
+        if (oldest != null) {
+            oldest.entries.pollFirst();
+            size--;
+        }
+    }
+
+    private boolean evictLowerPriority(Message incoming) {
+        int incomingLane = incoming.getPriority().ordinal();
+        for (int i = 0; i < incomingLane; i++) {
+            if (!lanes[i].entries.isEmpty()) {
+                lanes[i].entries.pollFirst();
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the next unexpired message by weighted round robin over the non-empty lanes, or returns null
+     * if every remaining message had expired; the caller holds the lock
+     */
+    private Message dequeue() {
+        while (size > 0) {
+            Lane lane = lanes[currentLane];
+            if (laneCredit > 0 && !lane.entries.isEmpty()) {
+                Entry entry = lane.entries.pollFirst();
+                size--;
+                long now = System.nanoTime();
+                long sojourn = now - entry.enqueuedNanos;
+                AdmissionController admission = admissionController;
+                if (admission != null) {
+                    admission.onDequeue(sojourn, now, size == 0);
+                }
+                if (entry.message.isExpired()) {
+                    // Skipped without using lane credit, so expired backlog does not slow the lane down
+                    expiredCount.incrementAndGet();
+                    continue;
+                }
+                laneCredit--;
+                lane.dequeued++;
+                lane.waitNanos += sojourn;
+                return entry.message;
+            }
+            // Move to the next lower lane, wrapping from LOW back to CRITICAL; unused credit is not carried over
+            currentLane = currentLane == 0 ? lanes.length - 1 : currentLane - 1;
+            laneCredit = lanes[currentLane].weight;
+        }
+        return null;
+    }
+
+    /**
+     * Waits until a message is available and removes it
+     */
+    public Message take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Message message;
+            do {
+                while (size == 0) {
+                    notEmpty.await();
+                }
+                message = dequeue();
+                notFull.signalAll();
+            } while (message == null);
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxMessages queued messages without waiting
+     */
+    public int drainTo(Collection<? super Message> target, int maxMessages) {
+        lock.lock();
+        try {
+            int before = size;
+            int drained = 0;
+            Message message;
+            while (drained < maxMessages && (message = dequeue()) != null) {
+                target.add(message);
+                drained++;
+            }
+            if (size < before) {
+                notFull.signalAll();
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects further submissions and releases producers blocked on a full queue
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages currently queued in each priority lane
+     */
+    public Map<MessagePriority, Integer> getLaneDepths() {
+        Map<MessagePriority, Integer> depths = new EnumMap<>(MessagePriority.class);
+        lock.lock();
+        try {
+            for (MessagePriority priority : PRIORITIES) {
+                depths.put(priority, lanes[priority.ordinal()].entries.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return depths;
+    }
+
+    /**
+     * Gets the number of messages dequeued from each priority lane
+     */
+    public Map<MessagePriority, Long> getLaneDequeuedCounts() {
+        Map<MessagePriority, Long> counts = new EnumMap<>(MessagePriority.class);
+        lock.lock();
+        try {
+            for (MessagePriority priority : PRIORITIES) {
+                counts.put(priority, lanes[priority.ordinal()].dequeued);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the total time messages dequeued from each priority lane spent waiting in the queue
+     */
+    public Map<MessagePriority, Long> getLaneWaitTimes(TimeUnit unit) {
+        Map<MessagePriority, Long> waits = new EnumMap<>(MessagePriority.class);
+        lock.lock();
+        try {
+            for (MessagePriority priority : PRIORITIES) {
+                waits.put(priority, unit.convert(lanes[priority.ordinal()].waitNanos, TimeUnit.NANOSECONDS));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return waits;
+    }
+
+    public int getCapacity() { return capacity; }
+    public BackpressurePolicy getPolicy() { return policy; }
+    public void setPolicy(BackpressurePolicy policy) { this.policy = policy; }
+    public long getRejectedCount() { return rejectedCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getExpiredCount() { return expiredCount.get(); }
+    public AdmissionController getAdmissionController() { return admissionController; }
+
+    /**
+     * Enables CoDel-style admission control, or disables it when given null
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * FIFO of one priority with its round-robin weight and wait-time totals, guarded by the queue lock
+     */
+    private static final class Lane {
+        private final int weight;
+        private final ArrayDeque<Entry> entries;
+        private long dequeued;
+        private long waitNanos;
+
+        Lane(int weight, int initialCapacity) {
+            this.weight = weight;
+            this.entries = new ArrayDeque<>(initialCapacity);
+        }
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final long enqueuedNanos;
+
+        Entry(Message message, long enqueuedNanos) {
+            this.message = message;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
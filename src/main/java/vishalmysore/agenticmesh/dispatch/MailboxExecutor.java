@@ -0,0 +1,311 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Actor-style mailboxes, one per agent, served by a fixed pool of worker threads. Messages for
+ * the same agent are handled one at a time while different agents run in parallel. Like the
+ * {@link IngressQueue}, a mailbox keeps one FIFO lane per priority and takes from them by weighted
+ * round robin, so an urgent message does not wait behind an agent's whole backlog of low ones.
+ * Each mailbox holds at most {@code capacity} messages; a producer delivering to a full mailbox
+ * waits until the agent catches up, so a slow agent pushes back on whoever feeds it.
+ */
+public class MailboxExecutor {
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final int throughput;
+    private final Map<String, Mailbox> mailboxes;
+    private final BiConsumer<MeshParticipantAgent, List<Message>> handler;
+    private volatile int capacity;
+    private volatile boolean shuttingDown;
+
+    /**
+     * Creates mailboxes without a size limit
+     */
+    public MailboxExecutor(int workerCount, int throughput, BiConsumer<MeshParticipantAgent, List<Message>> handler) {
+        this(workerCount, throughput, Integer.MAX_VALUE, handler);
+    }
+
+    /**
+     * @param workerCount number of pool threads shared by all mailboxes
+     * @param throughput  messages a mailbox may take per turn before yielding its thread to other mailboxes
+     * @param capacity    messages a mailbox may hold before deliveries to it wait
+     * @param handler     callback that delivers the messages taken in one turn to their agent
+     */
+    public MailboxExecutor(int workerCount, int throughput, int capacity,
+                           BiConsumer<MeshParticipantAgent, List<Message>> handler) {
+        if (workerCount < 1 || throughput < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Worker count, throughput and capacity must be positive");
+        }
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.workerCount = workerCount;
+        this.throughput = throughput;
+        this.capacity = capacity;
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a mailbox for the agent if it does not have one yet
+     */
+    public void register(MeshParticipantAgent agent) {
+        mailboxes.computeIfAbsent(agent.getId(), id -> new Mailbox(agent));
+    }
+
+    /**
+     * Removes the agent's mailbox, discarding any messages that have not been processed yet
+     */
+    public void unregister(String agentId) {
+        Mailbox mailbox = mailboxes.remove(agentId);
+        if (mailbox != null) {
+            mailbox.closed = true;
+            mailbox.signalRoom();
+        }
+    }
+
+    /**
+     * Appends a message to the agent's mailbox, waiting while the mailbox is full
+     *
+     * @return false if the agent has no mailbox, or it was removed or the caller interrupted while waiting
+     */
+    public boolean deliver(String agentId, Message message) {
+        Mailbox mailbox = mailboxes.get(agentId);
+        return mailbox != null && mailbox.enqueueAll(List.of(message)) == 1;
+    }
+
+    /**
+     * Appends several messages to the agent's mailbox, scheduling it once per chunk that fits
+     *
+     * @return the number of messages appended; fewer than given if the agent has no mailbox, or it
+     *         was removed or the caller interrupted while waiting for room
+     */
+    public int deliverAll(String agentId, Collection<Message> messages) {
+        Mailbox mailbox = mailboxes.get(agentId);
+        return mailbox != null ? mailbox.enqueueAll(messages) : 0;
+    }
+
+    /**
+     * Changes the mailbox capacity; producers waiting on a full mailbox recheck it at once
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        mailboxes.values().forEach(Mailbox::signalRoom);
+    }
+
+    public int getCapacity() { return capacity; }
+
+    public int getQueueDepth(String agentId) {
+        Mailbox mailbox = mailboxes.get(agentId);
+        return mailbox != null ? mailbox.depth.get() : 0;
+    }
+
+    public long getPendingCount() {
+        long pending = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            pending += mailbox.depth.get();
+        }
+        return pending;
+    }
+
+    public int getWorkerCount() { return workerCount; }
+
+    /**
+     * Stops the worker pool once the mailboxes that are already scheduled have been drained
+     */
+    public void shutdown() {
+        shuttingDown = true;
+        workers.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    public void shutdownNow() {
+        shuttingDown = true;
+        workers.shutdownNow();
+    }
+
+    private final class Mailbox implements Runnable {
+        private final MeshParticipantAgent agent;
+        private final ConcurrentLinkedQueue<Message>[] lanes = newLanes();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ReentrantLock roomLock = new ReentrantLock();
+        private final Condition room = roomLock.newCondition();
+        private volatile int waiting;
+        private volatile boolean closed;
+        // Round-robin position; only touched by the worker holding the scheduled flag
+        private int currentLane = IngressQueue.LANE_WEIGHTS.length - 1;
+        private int laneCredit = IngressQueue.LANE_WEIGHTS[currentLane];
+
+        Mailbox(MeshParticipantAgent agent) {
+            this.agent = agent;
+        }
+
+        @SuppressWarnings("unchecked")
+        private ConcurrentLinkedQueue<Message>[] newLanes() {
+            ConcurrentLinkedQueue<Message>[] created = new ConcurrentLinkedQueue[IngressQueue.LANE_WEIGHTS.length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new ConcurrentLinkedQueue<>();
+            }
+            return created;
+        }
+
+        // Depth is raised before the messages become visible, so a concurrent turn never drives it negative
+        int enqueueAll(Collection<Message> messages) {
+            List<Message> pending = messages instanceof List ? (List<Message>) messages : new ArrayList<>(messages);
+            int appended = 0;
+            try {
+                while (appended < pending.size()) {
+                    int granted = reserve(pending.size() - appended);
+                    if (granted == 0) {
+                        break;
+                    }
+                    for (int end = appended + granted; appended < end; appended++) {
+                        Message message = pending.get(appended);
+                        lanes[message.getPriority().ordinal()].offer(message);
+                    }
+                    schedule();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return appended;
+        }
+
+        /**
+         * Claims room for up to the wanted number of messages, waiting while the mailbox is full
+         *
+         * @return the number of slots claimed, 0 once the mailbox is closed
+         */
+        private int reserve(int wanted) throws InterruptedException {
+            while (!closed) {
+                int current = depth.get();
+                int free = capacity - current;
+                if (free <= 0) {
+                    awaitRoom();
+                } else {
+                    int granted = Math.min(free, wanted);
+                    if (depth.compareAndSet(current, current + granted)) {
+                        return granted;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        private void awaitRoom() throws InterruptedException {
+            roomLock.lock();
+            try {
+                // Registered before the recheck, so a turn that frees room after it always signals
+                waiting++;
+                while (depth.get() >= capacity && !closed) {
+                    room.await();
+                }
+            } finally {
+                waiting--;
+                roomLock.unlock();
+            }
+        }
+
+        void signalRoom() {
+            if (waiting > 0) {
+                roomLock.lock();
+                try {
+                    room.signalAll();
+                } finally {
+                    roomLock.unlock();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Takes the next message by weighted round robin over the lanes, highest priority first
+         */
+        private Message poll() {
+            for (int visited = 0; visited <= lanes.length; visited++) {
+                if (laneCredit > 0) {
+                    Message message = lanes[currentLane].poll();
+                    if (message != null) {
+                        laneCredit--;
+                        return message;
+                    }
+                }
+                currentLane = currentLane == 0 ? lanes.length - 1 : currentLane - 1;
+                laneCredit = IngressQueue.LANE_WEIGHTS[currentLane];
+            }
+            return null;
+        }
+
+        private boolean isEmpty() {
+            for (ConcurrentLinkedQueue<Message> lane : lanes) {
+                if (!lane.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<Message> batch = new ArrayList<>(Math.max(1, Math.min(throughput, depth.get())));
+            try {
+                // While shutting down keep draining, since the pool no longer accepts reschedules
+                do {
+                    Message message;
+                    while (batch.size() < throughput && (message = poll()) != null) {
+                        batch.add(message);
+                    }
+                    if (batch.isEmpty() || closed) {
+                        break;
+                    }
+                    depth.addAndGet(-batch.size());
+                    signalRoom();
+                    try {
+                        handler.accept(agent, batch);
+                    } catch (Exception e) {
+                        System.err.println("Error in mailbox of agent " + agent.getId() + ": " + e.getMessage());
+                    }
+                    batch.clear();
+                } while (shuttingDown);
+            } finally {
+                scheduled.set(false);
+                // A producer may have enqueued after the last poll while we still held the flag
+                if (!isEmpty() && !closed) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
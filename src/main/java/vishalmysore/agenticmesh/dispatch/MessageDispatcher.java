@@ -0,0 +1,109 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import vishalmysore.agenticmesh.core.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Event-driven dispatcher that parks its worker threads on an ingress queue until messages
+ * arrive, then drains whatever has accumulated and hands it to the handler as one batch
+ */
+public class MessageDispatcher {
+    private final String name;
+    private final IngressQueue queue;
+    private final Consumer<List<Message>> batchHandler;
+    private final int threadCount;
+    private final int maxBatchSize;
+    private final List<Thread> workers;
+    private final AtomicLong dispatchedCount;
+    private final AtomicLong batchCount;
+    private volatile boolean running;
+
+    public MessageDispatcher(String name, IngressQueue queue, int threadCount, int maxBatchSize,
+                             Consumer<List<Message>> batchHandler) {
+        if (threadCount < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Thread count and batch size must be positive");
+        }
+        this.name = name;
+        this.queue = queue;
+        this.threadCount = threadCount;
+        this.maxBatchSize = maxBatchSize;
+        this.batchHandler = batchHandler;
+        this.workers = new ArrayList<>();
+        this.dispatchedCount = new AtomicLong();
+        this.batchCount = new AtomicLong();
+    }
+
+    /**
+     * Starts the dispatcher threads
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::runWorker, name + "-dispatcher-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private void runWorker() {
+        List<Message> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                // Park until work arrives instead of polling on a timer
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            try {
+                batchHandler.accept(batch);
+            } catch (Exception e) {
+                System.err.println("Error processing message batch: " + e.getMessage());
+            }
+            dispatchedCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stops accepting work and wakes up idle dispatcher threads so they can exit
+     */
+    public synchronized void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Waits for all dispatcher threads to exit after {@link #shutdown()}
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isRunning() { return running; }
+    public int getThreadCount() { return threadCount; }
+    public int getMaxBatchSize() { return maxBatchSize; }
+    public long getDispatchedCount() { return dispatchedCount.get(); }
+    public long getBatchCount() { return batchCount.get(); }
+}
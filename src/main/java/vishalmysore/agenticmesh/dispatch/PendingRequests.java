@@ -0,0 +1,91 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import vishalmysore.agenticmesh.core.Message;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of outstanding requests waiting for a RESPONSE with a matching correlation id. Entries are
+ * removed when the response arrives or the timeout expires, so no thread is parked per request.
+ */
+public class PendingRequests {
+    private final Map<String, CompletableFuture<Message>> pending;
+    private final AtomicLong completedCount;
+    private final AtomicLong timedOutCount;
+
+    public PendingRequests() {
+        this.pending = new ConcurrentHashMap<>();
+        this.completedCount = new AtomicLong();
+        this.timedOutCount = new AtomicLong();
+    }
+
+    /**
+     * Registers a request and returns the future its response will complete
+     *
+     * @throws IllegalArgumentException if a request with the same id is already pending
+     */
+    public CompletableFuture<Message> register(String requestId, Duration timeout) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        if (pending.putIfAbsent(requestId, future) != null) {
+            throw new IllegalArgumentException("Request already pending: " + requestId);
+        }
+        // Callers get the dependent stage, so bookkeeping is done before they observe the outcome
+        return future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((response, error) -> {
+            pending.remove(requestId, future);
+            if (error instanceof TimeoutException) {
+                timedOutCount.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Completes the pending request the response is correlated with
+     *
+     * @return false if the message is not a response to a pending request
+     */
+    public boolean complete(Message response) {
+        if (response.getType() != Message.MessageType.RESPONSE || response.getCorrelationId() == null) {
+            return false;
+        }
+        CompletableFuture<Message> future = pending.remove(response.getCorrelationId());
+        if (future == null) {
+            return false;
+        }
+        // Count before completing so a caller woken by the future already sees it; undo if a timeout won
+        completedCount.incrementAndGet();
+        if (!future.complete(response)) {
+            completedCount.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Fails a pending request, for example when the request could not be routed
+     */
+    public void fail(String requestId, Throwable cause) {
+        CompletableFuture<Message> future = pending.remove(requestId);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Cancels every pending request
+     */
+    public void cancelAll() {
+        pending.forEach((requestId, future) -> future.completeExceptionally(
+            new CancellationException("Mesh stopped before a response to " + requestId + " arrived")));
+        pending.clear();
+    }
+
+    public int size() { return pending.size(); }
+    public long getCompletedCount() { return completedCount.get(); }
+    public long getTimedOutCount() { return timedOutCount.get(); }
+}
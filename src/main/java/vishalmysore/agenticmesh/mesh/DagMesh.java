@@ -0,0 +1,242 @@
+package vishalmysore.agenticmesh.mesh;
+
+import vishalmysore.agenticmesh.config.ConfigurationManager;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.dag.DagRuntime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Implementation of a DAG mesh pattern where agents form a directed acyclic graph: a request fans out
+ * to independent branches that run concurrently and joins where a node has several parents. It
+ * generalizes the pipeline mesh, which is the special case of a single chain.
+ */
+public class DagMesh implements Mesh {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final String id;
+    private final Map<String, MeshParticipantAgent> agents;
+    // Node id to the ids of the nodes that take its output, in the order the edges were added
+    private final Map<String, List<String>> children;
+    private final Map<String, Function<Map<String, Message>, Message>> joiners;
+    private final int workerCount;
+    private final int maxInFlight;
+    private MeshState state;
+    private volatile DagRuntime runtime;
+
+    public DagMesh(String id) {
+        this(id, ConfigurationManager.getInstance()
+                .getValue("dagWorkerThreads", Integer.class, Runtime.getRuntime().availableProcessors()),
+            ConfigurationManager.getInstance().getValue("dagMaxInFlight", Integer.class, DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @param workerCount threads shared by all nodes
+     * @param maxInFlight requests in the graph at once before {@link #submit(Message)} blocks
+     */
+    public DagMesh(String id, int workerCount, int maxInFlight) {
+        if (workerCount < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Worker count and requests in flight must be positive");
+        }
+        this.id = id;
+        this.agents = new LinkedHashMap<>();
+        this.children = new LinkedHashMap<>();
+        this.joiners = new HashMap<>();
+        this.workerCount = workerCount;
+        this.maxInFlight = maxInFlight;
+        this.state = new MeshState(id, "dag");
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getPattern() {
+        return "dag";
+    }
+
+    @Override
+    public void addAgent(MeshParticipantAgent agent) {
+        if (agents.put(agent.getId(), agent) == null) {
+            children.put(agent.getId(), new ArrayList<>());
+            state.incrementAgentCount();
+        }
+    }
+
+    @Override
+    public void removeAgent(String agentId) {
+        if (agents.remove(agentId) != null) {
+            children.remove(agentId);
+            children.values().forEach(targets -> targets.remove(agentId));
+            joiners.remove(agentId);
+            state.decrementAgentCount();
+        }
+    }
+
+    @Override
+    public List<MeshParticipantAgent> getAgents() {
+        return new ArrayList<>(agents.values());
+    }
+
+    /**
+     * Adds an edge: the output of the first agent becomes an input of the second
+     *
+     * @throws IllegalArgumentException if an agent is unknown or the edge would create a cycle
+     */
+    public void connect(String fromAgentId, String toAgentId) {
+        if (!agents.containsKey(fromAgentId) || !agents.containsKey(toAgentId)) {
+            throw new IllegalArgumentException("Unknown agent in edge " + fromAgentId + " -> " + toAgentId);
+        }
+        if (reaches(toAgentId, fromAgentId)) {
+            throw new IllegalArgumentException("Edge " + fromAgentId + " -> " + toAgentId + " would create a cycle");
+        }
+        List<String> targets = children.get(fromAgentId);
+        if (!targets.contains(toAgentId)) {
+            targets.add(toAgentId);
+        }
+    }
+
+    public void disconnect(String fromAgentId, String toAgentId) {
+        List<String> targets = children.get(fromAgentId);
+        if (targets != null) {
+            targets.remove(toAgentId);
+        }
+    }
+
+    private boolean reaches(String from, String to) {
+        Deque<String> pending = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        pending.push(from);
+        while (!pending.isEmpty()) {
+            String current = pending.pop();
+            if (current.equals(to)) {
+                return true;
+            }
+            if (visited.add(current)) {
+                children.get(current).forEach(pending::push);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the agents that take the given agent's output
+     */
+    public List<String> getChildren(String agentId) {
+        List<String> targets = children.get(agentId);
+        return targets != null ? List.copyOf(targets) : List.of();
+    }
+
+    /**
+     * Replaces the default join for an agent with several parents. The function gets the parents'
+     * outputs by parent id and returns the agent's input. Takes effect on the next start.
+     */
+    public void setJoiner(String agentId, Function<Map<String, Message>, Message> joiner) {
+        if (!agents.containsKey(agentId)) {
+            throw new IllegalArgumentException("Unknown agent: " + agentId);
+        }
+        joiners.put(agentId, joiner);
+    }
+
+    @Override
+    public void initialize() {
+        state.setStatus(MeshState.Status.INITIALIZING);
+        for (MeshParticipantAgent agent : agents.values()) {
+            agent.initialize();
+        }
+        state.setStatus(MeshState.Status.INITIALIZED);
+    }
+
+    /**
+     * Starts executing the current graph. Changes to the agents or edges take effect on the next start.
+     */
+    @Override
+    public void start() {
+        if (runtime != null) {
+            return;
+        }
+        DagRuntime started = new DagRuntime(id, getAgents(), children, workerCount, maxInFlight);
+        joiners.forEach(started::setJoiner);
+        started.start();
+        runtime = started;
+        state.setStatus(MeshState.Status.RUNNING);
+    }
+
+    @Override
+    public void stop() {
+        state.setStatus(MeshState.Status.STOPPING);
+        DagRuntime stopping = runtime;
+        runtime = null;
+        if (stopping != null) {
+            try {
+                if (!stopping.stop(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println("DAG " + id + " stopped with requests still in flight");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (MeshParticipantAgent agent : agents.values()) {
+            agent.shutdown();
+        }
+        state.setStatus(MeshState.Status.STOPPED);
+    }
+
+    @Override
+    public MeshState getState() {
+        return state;
+    }
+
+    /**
+     * Sends a request through the graph, blocking while the maximum number of requests is in flight
+     *
+     * @return completes with the output of the sink agent, or the outputs of all sinks joined
+     * @throws IllegalStateException if the mesh has not been started
+     */
+    public CompletableFuture<Message> submit(Message request) {
+        DagRuntime current = runtime;
+        if (current == null) {
+            throw new IllegalStateException("DAG " + id + " is not running");
+        }
+        return current.submit(request);
+    }
+
+    /**
+     * Gets the agents on the path with the largest average latency while the mesh is running
+     */
+    public List<String> getCriticalPath() {
+        DagRuntime current = runtime;
+        return current != null ? current.getCriticalPath() : List.of();
+    }
+
+    /**
+     * Gets DAG statistics, with per-agent latency and the critical path while the mesh is running
+     */
+    public Map<String, Object> getStatistics() {
+        DagRuntime current = runtime;
+        Map<String, Object> stats = current != null ? current.getStatistics() : new HashMap<>();
+        stats.put("totalAgents", agents.size());
+        int edges = 0;
+        for (List<String> targets : children.values()) {
+            edges += targets.size();
+        }
+        stats.put("edges", edges);
+        stats.put("running", current != null);
+        return stats;
+    }
+}
@@ -3,42 +3,160 @@ package vishalmysore.agenticmesh.mesh;
 import vishalmysore.agenticmesh.core.MeshParticipantAgent;
 import vishalmysore.agenticmesh.core.AgentState;
 import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.config.ConfigurationManager;
+import vishalmysore.agenticmesh.dispatch.AdmissionController;
+import vishalmysore.agenticmesh.dispatch.BackpressurePolicy;
+import vishalmysore.agenticmesh.dispatch.ConsistentHashRing;
+import vishalmysore.agenticmesh.dispatch.IngressQueue;
+import vishalmysore.agenticmesh.dispatch.MailboxExecutor;
+import vishalmysore.agenticmesh.dispatch.MessageDispatcher;
+import vishalmysore.agenticmesh.dispatch.PendingRequests;
+import vishalmysore.agenticmesh.events.Event;
+import vishalmysore.agenticmesh.events.EventBus;
+import vishalmysore.agenticmesh.resilience.CircuitBreaker;
+import vishalmysore.agenticmesh.resilience.CircuitBreakerRegistry;
+import vishalmysore.agenticmesh.resilience.IdempotencyFilter;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
- * Implementation of a hub-and-spoke mesh pattern where a central agent coordinates with peripheral agents
+ * Implementation of a hub-and-spoke mesh pattern where a central agent coordinates with peripheral agents.
+ * Routing can be split across several hub shards, each with its own ingress queue and dispatcher;
+ * receivers are assigned to shards by consistent hashing of their agent id. Deliveries to each
+ * agent go through a circuit breaker, so a failing agent is skipped until probes show it recovered.
+ * Agent mailboxes are bounded by the configured mailboxCapacity: a dispatcher delivering to a full
+ * mailbox waits, so the backlog of a slow agent stays in the ingress queue, where the backpressure
+ * policy and admission control act on it. An agent that routes through the hub from processMessage
+ * should therefore not rely on the BLOCK policy while its own mailbox can fill up.
+ * <p>
+ * A receiver gets messages of the same priority in routing order only while its shard has a single
+ * dispatcher thread: with several, two batches for one receiver may reach its mailbox in either
+ * order. Broadcasts are sharded by sender, so they are not ordered relative to direct messages
+ * that another shard delivers to the same spoke.
  */
 public class HubMesh implements Mesh {
+    private static final int DEFAULT_DISPATCH_BATCH_SIZE = 64;
+    private static final int DEFAULT_MESSAGE_QUEUE_SIZE = 1000;
+    private static final int MAILBOX_THROUGHPUT = 32;
+    private static final int DEFAULT_MAILBOX_CAPACITY = 1000;
+    private static final int SHARD_VIRTUAL_NODES = 128;
+    private static final int DEFAULT_ADMISSION_INTERVAL_MILLIS = 100;
+    private static final int DEFAULT_IDEMPOTENCY_MAX_ENTRIES = 100_000;
+
     private final String id;
     private final Map<String, MeshParticipantAgent> agents;
     private MeshParticipantAgent hubAgent;
     private MeshState state;
-    private final ExecutorService executorService;
+    private final MailboxExecutor mailboxes;
     private final ScheduledExecutorService scheduledExecutor;
-    private final Map<String, Integer> agentLoadCount;
-    private final Queue<Message> messageQueue;
+    private final SpokeLoadBalancer loadBalancer;
+    private final int dispatcherThreads;
+    private final int shardQueueSize;
+    private volatile BackpressurePolicy backpressurePolicy;
+    private volatile Duration admissionTarget;
+    private volatile Duration admissionInterval;
+    private final AtomicLong expiredMessages;
+    private final AtomicLong shortCircuitedMessages;
+    private volatile CircuitBreakerRegistry circuitBreakers;
+    private volatile IdempotencyFilter idempotencyFilter;
+    private final AtomicLong replayedResponses;
+    private final EventBus eventBus;
+    private volatile HubShard[] shards;
+    private volatile ConsistentHashRing shardRing;
+    private final Map<String, Integer> spokeShards;
+    private final AtomicLong shardRebalanceMoves;
+    private final PendingRequests pendingRequests;
     private final Set<String> activeAgents;
-    private LoadBalancingStrategy loadBalancingStrategy;
     
     public enum LoadBalancingStrategy {
         ROUND_ROBIN,
         LEAST_LOADED,
-        RANDOM
+        RANDOM,
+        /** Fewest messages queued or being processed */
+        LEAST_IN_FLIGHT,
+        /** Lowest peak-EWMA processing latency weighted by messages in flight */
+        PEAK_EWMA
     }
 
     public HubMesh(String id) {
+        this(id, 1);
+    }
+
+    /**
+     * Creates a hub whose routed messages are dispatched by the given number of threads.
+     * More than one thread gives up per-receiver ordering.
+     */
+    public HubMesh(String id, int dispatcherThreads) {
+        this(id, dispatcherThreads, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * Creates a hub whose ingress queue is bounded by the configured messageQueueSize and
+     * handles overflow with the given policy
+     */
+    public HubMesh(String id, int dispatcherThreads, BackpressurePolicy backpressurePolicy) {
+        this(id, dispatcherThreads, Runtime.getRuntime().availableProcessors(), backpressurePolicy);
+    }
+
+    /**
+     * Creates a hub whose spoke deliveries run on a fixed pool of mailbox workers
+     */
+    public HubMesh(String id, int dispatcherThreads, int mailboxWorkers, BackpressurePolicy backpressurePolicy) {
+        this(id, 1, dispatcherThreads, mailboxWorkers, backpressurePolicy);
+    }
+
+    /**
+     * Creates a sharded hub. Each shard has its own ingress queue of the configured messageQueueSize
+     * and its own dispatcher threads; all shards share the spoke mailboxes. Admission control is
+     * enabled when admissionTargetMillis is configured (see {@link #setAdmissionControl}), and
+     * duplicate suppression when idempotencyRetentionMillis is (see {@link #setIdempotency}).
+     */
+    public HubMesh(String id, int shardCount, int dispatcherThreadsPerShard, int mailboxWorkers,
+                   BackpressurePolicy backpressurePolicy) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
         this.id = id;
-        this.agents = new HashMap<>();
+        this.agents = new ConcurrentHashMap<>();
         this.state = new MeshState(id, "hub-spoke");
-        this.executorService = Executors.newCachedThreadPool();
+        ConfigurationManager config = ConfigurationManager.getInstance();
+        this.mailboxes = new MailboxExecutor(mailboxWorkers, MAILBOX_THROUGHPUT,
+            config.getValue("mailboxCapacity", Integer.class, DEFAULT_MAILBOX_CAPACITY), this::sendToAgent);
         this.scheduledExecutor = Executors.newScheduledThreadPool(1);
-        this.agentLoadCount = new ConcurrentHashMap<>();
-        this.messageQueue = new ConcurrentLinkedQueue<>();
+        this.loadBalancer = new SpokeLoadBalancer(LoadBalancingStrategy.ROUND_ROBIN);
+        this.dispatcherThreads = dispatcherThreadsPerShard;
+        this.shardQueueSize = config.getValue("messageQueueSize", Integer.class, DEFAULT_MESSAGE_QUEUE_SIZE);
+        this.backpressurePolicy = backpressurePolicy;
+        int admissionTargetMillis = config.getValue("admissionTargetMillis", Integer.class, 0);
+        if (admissionTargetMillis > 0) {
+            this.admissionTarget = Duration.ofMillis(admissionTargetMillis);
+            this.admissionInterval = Duration.ofMillis(config.getValue("admissionIntervalMillis", Integer.class,
+                DEFAULT_ADMISSION_INTERVAL_MILLIS));
+        }
+        this.expiredMessages = new AtomicLong();
+        this.shortCircuitedMessages = new AtomicLong();
+        this.circuitBreakers = new CircuitBreakerRegistry(this::onCircuitStateChange);
+        int idempotencyRetentionMillis = config.getValue("idempotencyRetentionMillis", Integer.class, 0);
+        if (idempotencyRetentionMillis > 0) {
+            this.idempotencyFilter = new IdempotencyFilter(Duration.ofMillis(idempotencyRetentionMillis),
+                config.getValue("idempotencyMaxEntries", Integer.class, DEFAULT_IDEMPOTENCY_MAX_ENTRIES),
+                config.getValue("idempotencyCacheResponses", Boolean.class, true));
+        }
+        this.replayedResponses = new AtomicLong();
+        this.eventBus = EventBus.getInstance();
+        this.spokeShards = new ConcurrentHashMap<>();
+        this.shardRebalanceMoves = new AtomicLong();
+        this.pendingRequests = new PendingRequests();
+        this.shards = new HubShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = newShard(i);
+        }
+        this.shardRing = new ConsistentHashRing(shardCount, SHARD_VIRTUAL_NODES);
         this.activeAgents = ConcurrentHashMap.newKeySet();
-        this.loadBalancingStrategy = LoadBalancingStrategy.ROUND_ROBIN;
     }
 
     @Override
@@ -57,6 +175,9 @@ public class HubMesh implements Mesh {
             hubAgent = agent; // First agent becomes the hub
         }
         agents.put(agent.getId(), agent);
+        mailboxes.register(agent);
+        spokeShards.put(agent.getId(), shardRing.shardFor(agent.getId()));
+        refreshSpokes();
         state.incrementAgentCount();
     }
 
@@ -68,7 +189,10 @@ public class HubMesh implements Mesh {
         if (agents.remove(agentId) != null) {
             state.decrementAgentCount();
             activeAgents.remove(agentId);
-            agentLoadCount.remove(agentId);
+            mailboxes.unregister(agentId);
+            circuitBreakers.remove(agentId);
+            spokeShards.remove(agentId);
+            refreshSpokes();
         }
     }
 
@@ -98,23 +222,60 @@ public class HubMesh implements Mesh {
     }
 
     private void startMessageProcessor() {
-        executorService.submit(() -> {
-            while (state.getStatus() == MeshState.Status.RUNNING) {
-                try {
-                    Message message = messageQueue.poll();
-                    if (message != null) {
-                        processMessage(message);
-                    }
-                    TimeUnit.MILLISECONDS.sleep(100); // Prevent busy waiting
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    // Log error and continue processing
-                    System.err.println("Error processing message: " + e.getMessage());
-                }
+        for (HubShard shard : shards) {
+            shard.dispatcher.start();
+        }
+    }
+
+    private HubShard newShard(int index) {
+        IngressQueue queue = new IngressQueue(shardQueueSize, backpressurePolicy);
+        if (admissionTarget != null) {
+            queue.setAdmissionController(new AdmissionController(admissionTarget, admissionInterval));
+        }
+        String name = index == 0 && shards.length == 1 ? id : id + "-shard-" + index;
+        return new HubShard(queue, new MessageDispatcher(name, queue, dispatcherThreads,
+            DEFAULT_DISPATCH_BATCH_SIZE, this::processBatch));
+    }
+
+    /**
+     * Adds a hub shard, starting its dispatcher if the mesh is running. Consistent hashing moves
+     * only the receivers the new shard takes over; messages already queued on their previous
+     * shard are still delivered, so ordering for a moved receiver is only guaranteed for
+     * messages routed after this call returns.
+     *
+     * @return the number of spokes that moved to the new shard
+     */
+    public synchronized int addShard() {
+        HubShard[] current = shards;
+        HubShard shard = newShard(current.length);
+        HubShard[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = shard;
+        if (state.getStatus() == MeshState.Status.RUNNING) {
+            shard.dispatcher.start();
+        }
+        // Publish the shard before the ring so a lookup never sees an index it cannot resolve
+        shards = grown;
+        shardRing = shardRing.withAdditionalShard();
+        return reassignSpokes();
+    }
+
+    private int reassignSpokes() {
+        ConsistentHashRing ring = shardRing;
+        int moved = 0;
+        for (String agentId : agents.keySet()) {
+            int shard = ring.shardFor(agentId);
+            Integer previous = spokeShards.put(agentId, shard);
+            if (previous != null && previous != shard) {
+                moved++;
             }
-        });
+        }
+        shardRebalanceMoves.addAndGet(moved);
+        return moved;
+    }
+
+    private HubShard shardFor(Message message) {
+        String key = message.getReceiverId() != null ? message.getReceiverId() : message.getSenderId();
+        return shards[key != null ? shardRing.shardFor(key) : 0];
     }
 
     private void startHealthCheck() {
@@ -140,12 +301,89 @@ public class HubMesh implements Mesh {
 
     /**
      * Routes a message through the hub to appropriate spoke agents
+     *
+     * @throws RejectedExecutionException if the ingress queue is full and the backpressure policy rejects it
      */
     public void routeMessage(Message message) {
         if (!state.getStatus().equals(MeshState.Status.RUNNING)) {
             throw new IllegalStateException("Mesh is not running");
         }
-        messageQueue.offer(message);
+        recordResponse(message);
+        if (pendingRequests.complete(message)) {
+            return; // Response consumed by a caller waiting in request()
+        }
+        shardFor(message).queue.submit(message);
+    }
+
+    /**
+     * Routes a request and returns a future completed by the first RESPONSE routed through this hub
+     * whose correlation id equals the request id. The future fails with a TimeoutException if no
+     * response arrives in time, or with the routing error if the request cannot be queued.
+     */
+    public CompletableFuture<Message> request(Message message, Duration timeout) {
+        CompletableFuture<Message> response = pendingRequests.register(message.getId(), timeout);
+        try {
+            routeMessage(message);
+        } catch (RuntimeException e) {
+            pendingRequests.fail(message.getId(), e);
+        }
+        return response;
+    }
+
+    /**
+     * Routes a batch of messages through the hub with a single state check and queue operation.
+     * Messages are grouped by receiver when dispatched, so agents can receive them through
+     * {@link MeshParticipantAgent#processBatch(List)}.
+     *
+     * @throws RejectedExecutionException if the ingress queue is full and the backpressure policy rejects it
+     */
+    public void routeMessages(Collection<Message> messages) {
+        if (!state.getStatus().equals(MeshState.Status.RUNNING)) {
+            throw new IllegalStateException("Mesh is not running");
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (messages.stream().anyMatch(m -> m.getType() == Message.MessageType.RESPONSE)) {
+            List<Message> remaining = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                recordResponse(message);
+                if (!pendingRequests.complete(message)) {
+                    remaining.add(message);
+                }
+            }
+            messages = remaining;
+        }
+        if (shards.length == 1) {
+            shards[0].queue.submitAll(messages);
+            return;
+        }
+        Map<HubShard, List<Message>> byShard = new LinkedHashMap<>();
+        for (Message message : messages) {
+            byShard.computeIfAbsent(shardFor(message), k -> new ArrayList<>()).add(message);
+        }
+        byShard.forEach((shard, batch) -> shard.queue.submitAll(batch));
+    }
+
+    private void processBatch(List<Message> batch) {
+        if (batch.size() == 1) {
+            processMessage(batch.get(0));
+            return;
+        }
+        // Group by receiver, keeping delivery order, so each mailbox is scheduled once per batch
+        Map<String, List<Message>> byReceiver = new LinkedHashMap<>();
+        for (Message message : batch) {
+            if (message.getReceiverId() == null) {
+                for (MeshParticipantAgent agent : agents.values()) {
+                    if (agent != hubAgent) {
+                        byReceiver.computeIfAbsent(agent.getId(), k -> new ArrayList<>()).add(message);
+                    }
+                }
+            } else {
+                byReceiver.computeIfAbsent(message.getReceiverId(), k -> new ArrayList<>()).add(message);
+            }
+        }
+        byReceiver.forEach(this::deliverAll);
     }
 
     private void processMessage(Message message) {
@@ -153,67 +391,228 @@ public class HubMesh implements Mesh {
             // Broadcast message to all spokes
             broadcastToSpokes(message);
         } else {
-            // Route to specific agent
-            MeshParticipantAgent targetAgent = agents.get(message.getReceiverId());
-            if (targetAgent != null) {
-                sendToAgent(targetAgent, message);
-            }
+            // Route to the specific agent's mailbox
+            deliver(message.getReceiverId(), message);
         }
     }
 
     private void broadcastToSpokes(Message message) {
-        getSpokeAgents().forEach(agent -> 
-            executorService.submit(() -> sendToAgent(agent, message))
-        );
+        for (MeshParticipantAgent agent : agents.values()) {
+            if (agent != hubAgent) {
+                deliver(agent.getId(), message);
+            }
+        }
     }
 
-    private void sendToAgent(MeshParticipantAgent agent, Message message) {
+    private void deliver(String agentId, Message message) {
+        if (mailboxes.deliver(agentId, message)) {
+            loadBalancer.onDispatch(agentId, 1);
+        }
+    }
+
+    private void deliverAll(String agentId, List<Message> messages) {
+        int delivered = mailboxes.deliverAll(agentId, messages);
+        if (delivered > 0) {
+            loadBalancer.onDispatch(agentId, delivered);
+        }
+    }
+
+    private void sendToAgent(MeshParticipantAgent agent, List<Message> batch) {
+        long start = System.nanoTime();
+        int delivered = batch.size();
         try {
-            agent.processMessage(message);
-            agentLoadCount.merge(agent.getId(), 1, Integer::sum);
-        } catch (Exception e) {
-            System.err.println("Error sending message to agent " + agent.getId() + ": " + e.getMessage());
-            // Optionally set agent state to ERROR
-            agent.getState().setStatus(AgentState.Status.ERROR);
+            batch = dropExpired(batch);
+            IdempotencyFilter filter = idempotencyFilter;
+            if (filter != null && !batch.isEmpty()) {
+                batch = filter.markFirst(agent.getId(), batch, this::replayResponse);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            CircuitBreaker breaker = circuitBreakers.get(agent.getId());
+            if (!breaker.tryAcquire()) {
+                shortCircuit(agent, batch);
+                if (filter != null) {
+                    filter.forgetAll(agent.getId(), batch); // Never processed, so a retry must get through
+                }
+                return;
+            }
+            List<Message> granted = batch;
+            try {
+                breaker.execute(() -> {
+                    if (granted.size() == 1) {
+                        agent.processMessage(granted.get(0));
+                    } else {
+                        agent.processBatch(granted);
+                    }
+                });
+            } catch (Exception e) {
+                if (filter != null) {
+                    filter.forgetAll(agent.getId(), batch);
+                }
+                System.err.println("Error sending message to agent " + agent.getId() + ": " + e.getMessage());
+            }
+        } finally {
+            // Failures count as latency too, so slow failing backends are avoided as well
+            loadBalancer.onComplete(agent.getId(), delivered, System.nanoTime() - start);
+        }
+    }
+
+    private void recordResponse(Message message) {
+        IdempotencyFilter filter = idempotencyFilter;
+        if (filter != null && message.getType() == Message.MessageType.RESPONSE) {
+            filter.recordResponse(message);
         }
     }
 
     /**
-     * Gets the next agent based on the current load balancing strategy
+     * Answers a duplicate QUERY with the response the agent gave to the original. The replay goes out
+     * under a fresh id, since the requester's own filter has already marked the original response.
      */
-    public MeshParticipantAgent getNextAgent(String currentAgentId) {
-        List<MeshParticipantAgent> spokes = getSpokeAgents();
-        if (spokes.isEmpty()) return null;
-
-        switch (loadBalancingStrategy) {
-            case ROUND_ROBIN:
-                int currentIndex = -1;
-                for (int i = 0; i < spokes.size(); i++) {
-                    if (spokes.get(i).getId().equals(currentAgentId)) {
-                        currentIndex = i;
-                        break;
-                    }
-                }
-                return spokes.get((currentIndex + 1) % spokes.size());
+    private void replayResponse(Message response) {
+        // Counted first, so a caller woken by the replayed response already sees it
+        replayedResponses.incrementAndGet();
+        try {
+            routeMessage(response.withId(UUID.randomUUID().toString()));
+        } catch (RuntimeException e) {
+            replayedResponses.decrementAndGet();
+            System.err.println("Error replaying cached response " + response.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards messages for an agent whose breaker is open, failing any request waiting on them at once
+     */
+    private void shortCircuit(MeshParticipantAgent agent, List<Message> batch) {
+        shortCircuitedMessages.addAndGet(batch.size());
+        for (Message message : batch) {
+            pendingRequests.fail(message.getId(),
+                new RejectedExecutionException("Circuit breaker for agent " + agent.getId() + " is open"));
+        }
+    }
 
-            case LEAST_LOADED:
-                return spokes.stream()
-                    .min(Comparator.comparingInt(a -> agentLoadCount.getOrDefault(a.getId(), 0)))
-                    .orElse(null);
+    private void onCircuitStateChange(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+        String agentId = breaker.getName();
+        MeshParticipantAgent agent = agents.get(agentId);
+        if (to == CircuitBreaker.State.OPEN) {
+            loadBalancer.suspend(agentId, breaker.getOpenDuration().toNanos(), TimeUnit.NANOSECONDS);
+            if (agent != null) {
+                agent.getState().setStatus(AgentState.Status.ERROR);
+            }
+        } else if (to == CircuitBreaker.State.CLOSED) {
+            loadBalancer.resume(agentId);
+            if (agent != null && agent.getState().getStatus() == AgentState.Status.ERROR) {
+                agent.getState().setStatus(AgentState.Status.ACTIVE);
+            }
+        }
+        eventBus.publish(circuitEvent(id, agentId, from, to));
+    }
 
-            case RANDOM:
-                return spokes.get(new Random().nextInt(spokes.size()));
+    static Event circuitEvent(String meshId, String agentId, CircuitBreaker.State from, CircuitBreaker.State to) {
+        String type;
+        switch (to) {
+            case OPEN: type = "circuit.opened"; break;
+            case HALF_OPEN: type = "circuit.half_opened"; break;
+            default: type = "circuit.closed"; break;
+        }
+        return new Event(type, agentId, Map.of("meshId", meshId, "from", from.name(), "to", to.name()),
+            to == CircuitBreaker.State.OPEN ? Event.EventPriority.HIGH : Event.EventPriority.MEDIUM);
+    }
 
-            default:
-                return spokes.get(0);
+    /**
+     * Removes messages whose deadline passed while they waited in a mailbox, so agents are not called for them
+     */
+    private List<Message> dropExpired(List<Message> batch) {
+        List<Message> live = null;
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = batch.get(i);
+            if (message.isExpired()) {
+                expiredMessages.incrementAndGet();
+                if (live == null) {
+                    live = new ArrayList<>(batch.subList(0, i));
+                }
+            } else if (live != null) {
+                live.add(message);
+            }
         }
+        return live != null ? live : batch;
+    }
+
+    /**
+     * Gets the next agent based on the current load balancing strategy
+     */
+    public MeshParticipantAgent getNextAgent(String currentAgentId) {
+        return loadBalancer.next(currentAgentId);
     }
 
     /**
      * Sets the load balancing strategy
      */
     public void setLoadBalancingStrategy(LoadBalancingStrategy strategy) {
-        this.loadBalancingStrategy = strategy;
+        loadBalancer.setStrategy(strategy);
+    }
+
+    /**
+     * Sets how the ingress queue handles messages once it is full
+     */
+    public synchronized void setBackpressurePolicy(BackpressurePolicy policy) {
+        this.backpressurePolicy = policy;
+        for (HubShard shard : shards) {
+            shard.queue.setPolicy(policy);
+        }
+    }
+
+    /**
+     * Sets how many messages each agent mailbox may hold before dispatchers wait for the agent to catch up
+     */
+    public void setMailboxCapacity(int capacity) {
+        mailboxes.setCapacity(capacity);
+    }
+
+    /**
+     * Replaces the per-agent circuit breakers with ones using the given settings; all breakers start closed
+     *
+     * @see CircuitBreakerRegistry#CircuitBreakerRegistry(double, int, Duration, int, Duration, int,
+     *      CircuitBreaker.Listener)
+     */
+    public void setCircuitBreakerSettings(double failureRateThreshold, int minimumCalls, Duration window, int buckets,
+                                          Duration openDuration, int halfOpenProbes) {
+        CircuitBreakerRegistry previous = circuitBreakers;
+        circuitBreakers = new CircuitBreakerRegistry(failureRateThreshold, minimumCalls, window, buckets,
+            openDuration, halfOpenProbes, this::onCircuitStateChange);
+        previous.getStates().keySet().forEach(loadBalancer::resume);
+    }
+
+    /**
+     * Gets the circuit breaker state of each agent that has received messages
+     */
+    public Map<String, CircuitBreaker.State> getCircuitStates() {
+        return circuitBreakers.getStates();
+    }
+
+    /**
+     * Suppresses messages whose id an agent was already handed within the retention. Messages that fail
+     * or are short-circuited are forgotten again, so retries still get through. With cacheResponses a
+     * duplicate QUERY is answered with the cached RESPONSE to the original. A null retention turns
+     * suppression off.
+     *
+     * @see IdempotencyFilter#IdempotencyFilter(Duration, int, boolean)
+     */
+    public void setIdempotency(Duration retention, int maxEntries, boolean cacheResponses) {
+        idempotencyFilter = retention != null ? new IdempotencyFilter(retention, maxEntries, cacheResponses) : null;
+    }
+
+    /**
+     * Enables CoDel-style admission control on every shard: once messages have waited longer than the
+     * target for a whole interval, new non-CRITICAL messages are rejected until the backlog clears.
+     * A null target disables admission control.
+     */
+    public synchronized void setAdmissionControl(Duration target, Duration interval) {
+        this.admissionTarget = target;
+        this.admissionInterval = interval;
+        for (HubShard shard : shards) {
+            shard.queue.setAdmissionController(target != null ? new AdmissionController(target, interval) : null);
+        }
     }
 
     /**
@@ -232,10 +631,80 @@ public class HubMesh implements Mesh {
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalAgents", agents.size());
         stats.put("activeAgents", activeAgents.size());
-        stats.put("messageQueueSize", messageQueue.size());
-        stats.put("agentLoads", new HashMap<>(agentLoadCount));
+        // Copied before the shards are read: addShard publishes a shard before the ring can hand out its index
+        List<Integer> assignedShards = new ArrayList<>(spokeShards.values());
+        HubShard[] currentShards = shards;
+        int queueSize = 0;
+        int queueCapacity = 0;
+        long rejected = 0;
+        long dropped = 0;
+        long expired = expiredMessages.get();
+        long shed = 0;
+        boolean shedding = false;
+        long dispatched = 0;
+        long batches = 0;
+        List<Integer> shardQueueSizes = new ArrayList<>();
+        Map<Message.MessagePriority, Integer> laneDepths = new EnumMap<>(Message.MessagePriority.class);
+        Map<Message.MessagePriority, Long> laneDequeued = new EnumMap<>(Message.MessagePriority.class);
+        Map<Message.MessagePriority, Long> laneWaitMicros = new EnumMap<>(Message.MessagePriority.class);
+        for (HubShard shard : currentShards) {
+            shard.queue.getLaneDepths().forEach((lane, depth) -> laneDepths.merge(lane, depth, Integer::sum));
+            shard.queue.getLaneDequeuedCounts().forEach((lane, count) -> laneDequeued.merge(lane, count, Long::sum));
+            shard.queue.getLaneWaitTimes(TimeUnit.MICROSECONDS)
+                .forEach((lane, wait) -> laneWaitMicros.merge(lane, wait, Long::sum));
+            int size = shard.queue.size();
+            shardQueueSizes.add(size);
+            queueSize += size;
+            queueCapacity += shard.queue.getCapacity();
+            rejected += shard.queue.getRejectedCount();
+            dropped += shard.queue.getDroppedCount();
+            expired += shard.queue.getExpiredCount();
+            AdmissionController admission = shard.queue.getAdmissionController();
+            if (admission != null) {
+                shed += admission.getShedCount();
+                shedding |= admission.isShedding();
+            }
+            dispatched += shard.dispatcher.getDispatchedCount();
+            batches += shard.dispatcher.getBatchCount();
+        }
+        int[] shardSpokeCounts = new int[currentShards.length];
+        assignedShards.forEach(shard -> shardSpokeCounts[shard]++);
+        stats.put("messageQueueSize", queueSize);
+        stats.put("messageQueueCapacity", queueCapacity);
+        stats.put("backpressurePolicy", backpressurePolicy);
+        stats.put("rejectedMessages", rejected);
+        stats.put("droppedMessages", dropped);
+        stats.put("expiredMessages", expired);
+        stats.put("shedMessages", shed);
+        stats.put("admissionShedding", shedding);
+        Map<Message.MessagePriority, Double> laneWaitMillis = new EnumMap<>(Message.MessagePriority.class);
+        laneDequeued.forEach((lane, count) ->
+            laneWaitMillis.put(lane, count == 0 ? 0.0 : laneWaitMicros.get(lane) / 1000.0 / count));
+        stats.put("laneDepths", laneDepths);
+        stats.put("laneWaitMillis", laneWaitMillis);
+        stats.put("dispatcherThreads", dispatcherThreads * currentShards.length);
+        stats.put("dispatchedMessages", dispatched);
+        stats.put("dispatchedBatches", batches);
+        stats.put("shards", currentShards.length);
+        stats.put("shardQueueSizes", shardQueueSizes);
+        stats.put("shardSpokeCounts", Arrays.stream(shardSpokeCounts).boxed().collect(Collectors.toList()));
+        stats.put("shardRebalanceMoves", shardRebalanceMoves.get());
+        stats.put("pendingRequests", pendingRequests.size());
+        stats.put("completedRequests", pendingRequests.getCompletedCount());
+        stats.put("timedOutRequests", pendingRequests.getTimedOutCount());
+        stats.put("circuitStates", circuitBreakers.getStates());
+        stats.put("shortCircuitedMessages", shortCircuitedMessages.get());
+        IdempotencyFilter filter = idempotencyFilter;
+        stats.put("duplicateMessages", filter != null ? filter.getDuplicateCount() : 0L);
+        stats.put("replayedResponses", replayedResponses.get());
+        stats.put("mailboxWorkers", mailboxes.getWorkerCount());
+        stats.put("pendingMailboxMessages", mailboxes.getPendingCount());
+        stats.put("mailboxCapacity", mailboxes.getCapacity());
+        stats.put("agentLoads", loadBalancer.getLoads());
+        stats.put("agentInFlight", loadBalancer.getInFlight());
+        stats.put("agentLatencyMillis", loadBalancer.getLatencyEwmaMillis());
         stats.put("hubAgentId", hubAgent != null ? hubAgent.getId() : null);
-        stats.put("loadBalancingStrategy", loadBalancingStrategy);
+        stats.put("loadBalancingStrategy", loadBalancer.getStrategy());
         return stats;
     }
 
@@ -245,23 +714,31 @@ public class HubMesh implements Mesh {
     }
 
     @Override
-    public void stop() {
+    public synchronized void stop() {
         state.setStatus(MeshState.Status.STOPPING);
         
-        // Shutdown executors
-        executorService.shutdown();
+        // Shutdown dispatchers and executors
+        pendingRequests.cancelAll();
+        for (HubShard shard : shards) {
+            shard.queue.close();
+            shard.dispatcher.shutdown();
+        }
         scheduledExecutor.shutdown();
         
         try {
-            // Wait for tasks to complete
-            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
+            // Wait for the dispatchers to stop feeding mailboxes, then let them drain
+            for (HubShard shard : shards) {
+                shard.dispatcher.awaitTermination(60, TimeUnit.SECONDS);
+            }
+            mailboxes.shutdown();
+            if (!mailboxes.awaitTermination(60, TimeUnit.SECONDS)) {
+                mailboxes.shutdownNow();
             }
             if (!scheduledExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
                 scheduledExecutor.shutdownNow();
             }
         } catch (InterruptedException e) {
-            executorService.shutdownNow();
+            mailboxes.shutdownNow();
             scheduledExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
@@ -294,6 +771,7 @@ public class HubMesh implements Mesh {
             throw new IllegalArgumentException("Agent not found: " + agentId);
         }
         this.hubAgent = newHub;
+        refreshSpokes();
     }
 
     /**
@@ -304,4 +782,21 @@ public class HubMesh implements Mesh {
         spokes.remove(hubAgent);
         return spokes;
     }
+
+    private void refreshSpokes() {
+        loadBalancer.rebuild(getSpokeAgents());
+    }
+
+    /**
+     * One routing shard: an ingress queue and the dispatcher threads draining it
+     */
+    private static final class HubShard {
+        private final IngressQueue queue;
+        private final MessageDispatcher dispatcher;
+
+        HubShard(IngressQueue queue, MessageDispatcher dispatcher) {
+            this.queue = queue;
+            this.dispatcher = dispatcher;
+        }
+    }
 }
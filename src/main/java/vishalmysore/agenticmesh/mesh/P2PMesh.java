@@ -1,36 +1,130 @@
 package vishalmysore.agenticmesh.mesh;
 
+import vishalmysore.agenticmesh.config.ConfigurationManager;
+import vishalmysore.agenticmesh.core.AgentState;
 import vishalmysore.agenticmesh.core.MeshParticipantAgent;
 import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.dispatch.PendingRequests;
 import vishalmysore.agenticmesh.events.Event;
 import vishalmysore.agenticmesh.events.EventBus;
+import vishalmysore.agenticmesh.resilience.CircuitBreaker;
+import vishalmysore.agenticmesh.resilience.CircuitBreakerRegistry;
+import vishalmysore.agenticmesh.resilience.IdempotencyFilter;
+import vishalmysore.agenticmesh.topology.EdgeTrafficTable;
+import vishalmysore.agenticmesh.topology.RoutingTable;
+import vishalmysore.agenticmesh.topology.TopologyGraph;
+import vishalmysore.agenticmesh.topology.TopologyOptimizer;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * Implementation of a Peer-to-Peer mesh pattern where agents communicate directly with each other
+ * Implementation of a Peer-to-Peer mesh pattern where agents communicate directly with each other.
+ * Messages between agents that are not peers are forwarded hop by hop along shortest paths, looking
+ * up the next hop at every relay so a message in flight follows topology changes. Broadcasts spread
+ * by gossip over the peer connections. Pairs that exchange a lot of relayed traffic get direct
+ * shortcut links, which are retired once they go cold; any link is dropped only after staying idle
+ * for several monitoring rounds in a row. Deliveries to each agent go through a circuit breaker, so
+ * a failing agent is not called again until probes show it recovered.
  */
 public class P2PMesh implements Mesh {
+    // Covers two network monitoring periods, so an edge is judged on its traffic since the previous check
+    private static final Duration TRAFFIC_WINDOW = Duration.ofSeconds(60);
+    private static final int TRAFFIC_BUCKETS = 12;
+    // A tree per destination costs two ints per agent, so meshes up to this size keep every tree cached
+    private static final int DEFAULT_ROUTING_CACHE_DESTINATIONS = 1024;
+    private static final int DEMAND_SEGMENTS = 16;
+    // Relayed pairs tracked at most; a new pair in a full table replaces the quietest one
+    private static final int DEMAND_PAIRS = 4096;
+    // Shortest paths never get this long in practice; the limit only stops a message circling while peers churn
+    private static final int MAX_HOPS = 64;
+    // A relayed pair averaging a message a second gets a shortcut; it goes after three checks below 0.2/s.
+    // Any other link goes after three checks without traffic, so a short lull never drops it.
+    private static final double SHORTCUT_PROMOTE_RATE = 1.0;
+    private static final double SHORTCUT_DEMOTE_RATE = 0.2;
+    private static final int COLD_ROUNDS = 3;
+    private static final int MAX_TOPOLOGY_CHANGES_PER_ROUND = 64;
+    // Fan-out ln(N) + c reaches everyone with probability about exp(-exp(-c)); c = 2 gives ~87% of broadcasts
+    private static final int GOSSIP_FANOUT_MARGIN = 2;
+
     private final String id;
     private final Map<String, MeshParticipantAgent> agents;
-    private final Map<String, Set<String>> connections;
+    private final TopologyGraph topology;
     private final MeshState state;
     private final ExecutorService executorService;
+    private final ExecutorService gossipExecutor;
     private final ScheduledExecutorService scheduledExecutor;
-    private final Map<String, Integer> messageCounter;
+    private final EdgeTrafficTable traffic;
+    private final RoutingTable routing;
+    private final EdgeTrafficTable pairDemand;
+    private final TopologyOptimizer optimizer;
     private final EventBus eventBus;
+    private final PendingRequests pendingRequests;
+    private final AtomicLong expiredMessages;
+    private final AtomicLong shortCircuitedMessages;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private volatile IdempotencyFilter idempotencyFilter;
+    private final AtomicLong replayedResponses;
+    private final AtomicLong deliveredHops;
+    private final AtomicLong routedDeliveries;
+    private final AtomicLong relayedDeliveries;
+    private final AtomicLong relayedHops;
+    private final AtomicLong relayedShortestHops;
+    private final AtomicInteger maxHops;
+    private final AtomicLong unroutableMessages;
+    private final Map<String, Broadcast> activeBroadcasts;
+    private final AtomicLong completedBroadcasts;
+    private final AtomicLong gossipPushes;
+    private final AtomicLong gossipDuplicates;
+    private final AtomicLong broadcastTargets;
+    private final AtomicLong broadcastReached;
+    private final AtomicLong broadcastLatencyNanos;
+    private volatile double lastBroadcastCoverage;
+    private volatile int gossipFanout;
+    private volatile int gossipTtl;
+    // Link, keyed by its packed node pair, to the consecutive health checks it has been idle.
+    // Only the network monitoring thread touches it.
+    private Map<Long, Integer> idleLinkRounds = new HashMap<>();
 
     public P2PMesh(String id) {
         this.id = id;
         this.agents = new ConcurrentHashMap<>();
-        this.connections = new ConcurrentHashMap<>();
+        this.topology = new TopologyGraph();
         this.state = new MeshState(id, "p2p");
         this.executorService = Executors.newCachedThreadPool();
+        // Bounded, unlike the delivery pool: one broadcast fans out into tasks for every agent at once
+        this.gossipExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         this.scheduledExecutor = Executors.newScheduledThreadPool(1);
-        this.messageCounter = new ConcurrentHashMap<>();
+        this.traffic = new EdgeTrafficTable(TRAFFIC_WINDOW, TRAFFIC_BUCKETS);
+        this.routing = new RoutingTable(topology, ConfigurationManager.getInstance()
+            .getValue("routingCacheDestinations", Integer.class, DEFAULT_ROUTING_CACHE_DESTINATIONS));
+        this.pairDemand = new EdgeTrafficTable(TRAFFIC_WINDOW, TRAFFIC_BUCKETS, DEMAND_SEGMENTS, DEMAND_PAIRS);
+        this.optimizer = new TopologyOptimizer(topology, traffic, pairDemand, SHORTCUT_PROMOTE_RATE,
+            SHORTCUT_DEMOTE_RATE, COLD_ROUNDS, MAX_TOPOLOGY_CHANGES_PER_ROUND);
         this.eventBus = EventBus.getInstance();
+        this.pendingRequests = new PendingRequests();
+        this.expiredMessages = new AtomicLong();
+        this.shortCircuitedMessages = new AtomicLong();
+        this.circuitBreakers = new CircuitBreakerRegistry(this::onCircuitStateChange);
+        this.replayedResponses = new AtomicLong();
+        this.deliveredHops = new AtomicLong();
+        this.routedDeliveries = new AtomicLong();
+        this.relayedDeliveries = new AtomicLong();
+        this.relayedHops = new AtomicLong();
+        this.relayedShortestHops = new AtomicLong();
+        this.maxHops = new AtomicInteger();
+        this.unroutableMessages = new AtomicLong();
+        this.activeBroadcasts = new ConcurrentHashMap<>();
+        this.completedBroadcasts = new AtomicLong();
+        this.gossipPushes = new AtomicLong();
+        this.gossipDuplicates = new AtomicLong();
+        this.broadcastTargets = new AtomicLong();
+        this.broadcastReached = new AtomicLong();
+        this.broadcastLatencyNanos = new AtomicLong();
     }
 
     @Override
@@ -46,7 +140,7 @@ public class P2PMesh implements Mesh {
     @Override
     public void addAgent(MeshParticipantAgent agent) {
         agents.put(agent.getId(), agent);
-        connections.putIfAbsent(agent.getId(), ConcurrentHashMap.newKeySet());
+        topology.addNode(agent.getId());
         state.incrementAgentCount();
     }
 
@@ -54,8 +148,11 @@ public class P2PMesh implements Mesh {
     public void removeAgent(String agentId) {
         if (agents.remove(agentId) != null) {
             // Remove all connections to/from this agent
-            connections.remove(agentId);
-            connections.values().forEach(peers -> peers.remove(agentId));
+            int node = topology.nodeOf(agentId);
+            topology.removeNode(agentId);
+            traffic.removeNode(node);
+            pairDemand.removeNode(node);
+            circuitBreakers.remove(agentId);
             state.decrementAgentCount();
         }
     }
@@ -80,59 +177,58 @@ public class P2PMesh implements Mesh {
             try {
                 checkNetworkHealth();
                 rebalanceConnections();
+                optimizeTopology();
             } catch (Exception e) {
                 System.err.println("Error in network monitoring: " + e.getMessage());
             }
         }, 0, 30, TimeUnit.SECONDS);
     }
 
-    private void checkNetworkHealth() {
-        for (Map.Entry<String, Set<String>> entry : connections.entrySet()) {
-            String agentId = entry.getKey();
-            Set<String> peers = entry.getValue();
-            
+    void checkNetworkHealth() {
+        int minConnections = getMinConnections();
+        Map<Long, Integer> idleLinks = new HashMap<>();
+        for (String agentId : agents.keySet()) {
             // Check if agent has minimum required connections
-            if (peers.size() < getMinConnections()) {
+            if (topology.degree(agentId) < minConnections) {
                 findNewPeers(agentId);
             }
             
             // Check connection quality
-            checkConnectionQuality(agentId, peers);
+            checkConnectionQuality(agentId, topology.copyPeers(agentId), idleLinks);
         }
+        // Links that carried traffic or disappeared drop out of the count
+        idleLinkRounds = idleLinks;
     }
 
     private void findNewPeers(String agentId) {
-        Set<String> currentPeers = connections.get(agentId);
-        int needed = getMinConnections() - currentPeers.size();
-        
-        // Find potential new peers
-        List<String> availablePeers = agents.keySet().stream()
-            .filter(id -> !id.equals(agentId))
-            .filter(id -> !currentPeers.contains(id))
-            .collect(Collectors.toList());
+        int needed = getMinConnections() - topology.degree(agentId);
         
-        // Randomly select new peers
-        Collections.shuffle(availablePeers);
-        availablePeers.stream()
-            .limit(needed)
-            .forEach(peerId -> connect(agentId, peerId));
-    }
-
-    private void checkConnectionQuality(String agentId, Set<String> peers) {
-        peers.forEach(peerId -> {
-            int messageCount = messageCounter.getOrDefault(agentId + "-" + peerId, 0);
-            if (messageCount == 0) {
-                // No recent communication, consider removing connection
+        // Randomly select new peers by sampling node ids rather than shuffling every agent
+        topology.sampleNonPeers(agentId, needed).forEach(peerId -> connect(agentId, peerId));
+    }
+
+    private void checkConnectionQuality(String agentId, String[] peers, Map<Long, Integer> idleLinks) {
+        int node = topology.nodeOf(agentId);
+        for (String peerId : peers) {
+            int peer = topology.nodeOf(peerId);
+            // Each link is judged once, from its lower node id
+            if (peer < 0 || peer < node || recentTraffic(agentId, peerId) > 0) {
+                continue;
+            }
+            long link = ((long) node << 32) | (peer & 0xFFFFFFFFL);
+            int rounds = idleLinkRounds.getOrDefault(link, 0) + 1;
+            if (rounds >= COLD_ROUNDS) {
+                // No communication for several checks in a row, so remove the connection
                 disconnect(agentId, peerId);
+            } else {
+                idleLinks.put(link, rounds);
             }
-        });
+        }
     }
 
     private void rebalanceConnections() {
         // Find overloaded and underloaded agents
-        Map<String, Integer> connectionCounts = new HashMap<>();
-        connections.forEach((agentId, peers) -> 
-            connectionCounts.put(agentId, peers.size()));
+        Map<String, Integer> connectionCounts = topology.getDegrees();
         
         double avgConnections = connectionCounts.values().stream()
             .mapToInt(Integer::intValue)
@@ -150,16 +246,29 @@ public class P2PMesh implements Mesh {
         });
     }
 
+    /**
+     * Lets the optimizer add shortcuts for hot relayed pairs and retire cold ones. The degree budget
+     * stays below the level at which rebalanceConnections starts removing links.
+     */
+    private void optimizeTopology() {
+        int agentCount = agents.size();
+        if (agentCount < 3) {
+            return;
+        }
+        double avgConnections = 2.0 * topology.getEdgeCount() / agentCount;
+        optimizer.optimize(Math.max(getMinConnections() + 1, (int) (avgConnections * 1.5)));
+    }
+
     private void removeExcessConnections(String agentId, int excessCount) {
-        Set<String> peers = connections.get(agentId);
-        if (peers == null || peers.isEmpty()) return;
+        String[] peers = topology.copyPeers(agentId);
+        if (peers.length == 0) return;
 
         // Remove least active connections
-        peers.stream()
+        Arrays.stream(peers)
             .sorted((p1, p2) -> {
-                int count1 = messageCounter.getOrDefault(agentId + "-" + p1, 0);
-                int count2 = messageCounter.getOrDefault(agentId + "-" + p2, 0);
-                return Integer.compare(count1, count2);
+                long count1 = recentTraffic(agentId, p1);
+                long count2 = recentTraffic(agentId, p2);
+                return Long.compare(count1, count2);
             })
             .limit(excessCount)
             .forEach(peerId -> disconnect(agentId, peerId));
@@ -169,20 +278,28 @@ public class P2PMesh implements Mesh {
         if (!agents.containsKey(agentId1) || !agents.containsKey(agentId2)) {
             throw new IllegalArgumentException("One or both agents not found");
         }
-        connections.get(agentId1).add(agentId2);
-        connections.get(agentId2).add(agentId1);
+        topology.connect(agentId1, agentId2);
     }
 
     public void disconnect(String agentId1, String agentId2) {
-        if (connections.containsKey(agentId1)) {
-            connections.get(agentId1).remove(agentId2);
-        }
-        if (connections.containsKey(agentId2)) {
-            connections.get(agentId2).remove(agentId1);
+        int node1 = topology.nodeOf(agentId1);
+        int node2 = topology.nodeOf(agentId2);
+        if (topology.disconnect(agentId1, agentId2)) {
+            // Otherwise every link that ever existed would keep its counters
+            traffic.remove(node1, node2);
+            traffic.remove(node2, node1);
         }
     }
 
     public void sendMessage(Message message) {
+        recordResponse(message);
+        if (pendingRequests.complete(message)) {
+            return; // Response consumed by a caller waiting in request()
+        }
+        if (message.getReceiverId() == null) {
+            broadcast(message);
+            return;
+        }
         String senderId = message.getSenderId();
         String receiverId = message.getReceiverId();
 
@@ -190,74 +307,579 @@ public class P2PMesh implements Mesh {
             throw new IllegalArgumentException("Invalid sender or receiver");
         }
 
-        if (!connections.get(senderId).contains(receiverId)) {
-            throw new IllegalStateException("No connection between agents");
+        if (topology.isConnected(senderId, receiverId)) {
+            executorService.submit(() -> {
+                recordRoute(1, 1, 1);
+                deliver(message, senderId);
+            });
+        } else {
+            forward(message, senderId, requireRoute(senderId, receiverId), 0);
         }
+    }
 
+    /**
+     * Gets the hop count of the shortest path between the two agents
+     *
+     * @throws IllegalStateException if the receiver cannot be reached from the sender
+     */
+    private int requireRoute(String senderId, String receiverId) {
+        int distance = routing.distance(senderId, receiverId);
+        if (distance == RoutingTable.UNREACHABLE) {
+            throw new IllegalStateException("No route between agents");
+        }
+        return distance;
+    }
+
+    /**
+     * Moves a message one hop closer to its receiver on an executor task, delivering it once the next
+     * hop is the receiver. The next hop is looked up at every relay rather than fixed at send time.
+     * A relay whose circuit breaker is open is not used: the message is short-circuited as if it
+     * were addressed to that agent.
+     */
+    private void forward(Message message, String currentId, int shortestHops, int hops) {
         executorService.submit(() -> {
+            if (message.isExpired()) {
+                expiredMessages.incrementAndGet();
+                return;
+            }
+            String receiverId = message.getReceiverId();
+            String nextId = routing.nextHop(currentId, receiverId);
+            if (nextId == null || hops + 1 > MAX_HOPS) {
+                unroutableMessages.incrementAndGet();
+                pendingRequests.fail(message.getId(),
+                    new IllegalStateException("No route from agent " + currentId + " to agent " + receiverId));
+                return;
+            }
+            if (nextId.equals(receiverId)) {
+                recordRoute(1, hops + 1, shortestHops);
+                optimizer.recordDemand(topology.nodeOf(message.getSenderId()), topology.nodeOf(receiverId), 1);
+                deliver(message, currentId);
+            } else if (circuitBreakers.get(nextId).isOpen()) {
+                shortCircuit(nextId, List.of(message));
+            } else {
+                recordTraffic(currentId, nextId, 1);
+                forward(message, nextId, shortestHops, hops + 1);
+            }
+        });
+    }
+
+    /**
+     * Hands a message that reached its last hop to the receiver through its circuit breaker
+     */
+    private void deliver(Message message, String previousHopId) {
+        if (message.isExpired()) {
+            expiredMessages.incrementAndGet(); // The sender's deadline passed while the task was queued
+            return;
+        }
+        String receiverId = message.getReceiverId();
+        List<Message> single = dropDuplicates(receiverId, List.of(message));
+        if (single.isEmpty()) {
+            return;
+        }
+        CircuitBreaker breaker = circuitBreakers.get(receiverId);
+        if (!breaker.tryAcquire()) {
+            shortCircuit(receiverId, single);
+            forgetUnprocessed(receiverId, single);
+            return;
+        }
+        try {
+            breaker.execute(() -> agents.get(receiverId).processMessage(message));
+            recordTraffic(previousHopId, receiverId, 1);
+        } catch (Exception e) {
+            forgetUnprocessed(receiverId, single);
+            System.err.println("Error sending message: " + e.getMessage());
+        }
+    }
+
+    private void recordRoute(int messages, int hops, int shortestHops) {
+        routedDeliveries.addAndGet(messages);
+        deliveredHops.addAndGet((long) messages * hops);
+        maxHops.accumulateAndGet(hops, Math::max);
+        if (hops > 1) {
+            relayedDeliveries.addAndGet(messages);
+            relayedHops.addAndGet((long) messages * hops);
+            relayedShortestHops.addAndGet((long) messages * shortestHops);
+        }
+    }
+
+    /**
+     * Sends a request and returns a future completed by the first RESPONSE sent through this mesh
+     * whose correlation id equals the request id. The future fails with a TimeoutException if no
+     * response arrives in time, or with the send error if the request cannot be delivered.
+     */
+    public CompletableFuture<Message> request(Message message, Duration timeout) {
+        CompletableFuture<Message> response = pendingRequests.register(message.getId(), timeout);
+        try {
+            sendMessage(message);
+        } catch (RuntimeException e) {
+            pendingRequests.fail(message.getId(), e);
+        }
+        return response;
+    }
+
+    /**
+     * Sends a batch of direct messages. All messages are validated before any is sent; messages
+     * for the same receiver are then delivered together through
+     * {@link MeshParticipantAgent#processBatch(List)} on a single task. Messages for agents that are
+     * not peers of their sender are forwarded one by one.
+     */
+    public void sendMessages(Collection<Message> messages) {
+        Map<String, List<Message>> byReceiver = new LinkedHashMap<>();
+        List<Message> relayed = new ArrayList<>();
+        List<Integer> shortestHops = new ArrayList<>();
+        for (Message message : messages) {
+            recordResponse(message);
+            if (pendingRequests.complete(message)) {
+                continue;
+            }
+            String senderId = message.getSenderId();
+            String receiverId = message.getReceiverId();
+            if (!agents.containsKey(senderId) || !agents.containsKey(receiverId)) {
+                throw new IllegalArgumentException("Invalid sender or receiver");
+            }
+            if (!topology.isConnected(senderId, receiverId)) {
+                shortestHops.add(requireRoute(senderId, receiverId));
+                relayed.add(message);
+                continue;
+            }
+            byReceiver.computeIfAbsent(receiverId, k -> new ArrayList<>()).add(message);
+        }
+
+        for (int i = 0; i < relayed.size(); i++) {
+            forward(relayed.get(i), relayed.get(i).getSenderId(), shortestHops.get(i), 0);
+        }
+
+        byReceiver.forEach((receiverId, messagesForReceiver) -> executorService.submit(() -> {
+            List<Message> batch = dropDuplicates(receiverId, dropExpired(messagesForReceiver));
+            if (batch.isEmpty()) {
+                return;
+            }
+            CircuitBreaker breaker = circuitBreakers.get(receiverId);
+            if (!breaker.tryAcquire()) {
+                shortCircuit(receiverId, batch);
+                forgetUnprocessed(receiverId, batch);
+                return;
+            }
             try {
-                agents.get(receiverId).processMessage(message);
-                // Update message counter
-                String key = senderId + "-" + receiverId;
-                messageCounter.merge(key, 1, Integer::sum);
+                breaker.execute(() -> agents.get(receiverId).processBatch(batch));
+                recordRoute(batch.size(), 1, 1);
+                // Update traffic once per run of messages from the same sender
+                int run = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    run++;
+                    String senderId = batch.get(i).getSenderId();
+                    if (i + 1 == batch.size() || !senderId.equals(batch.get(i + 1).getSenderId())) {
+                        recordTraffic(senderId, receiverId, run);
+                        run = 0;
+                    }
+                }
             } catch (Exception e) {
-                System.err.println("Error sending message: " + e.getMessage());
+                forgetUnprocessed(receiverId, batch);
+                System.err.println("Error sending message batch: " + e.getMessage());
             }
-        });
+        }));
     }
 
-    private void processMessage(Message message) {
-        if (message.getReceiverId() == null) {
-            // Broadcast message to all spokes
-            broadcastToSpokes(message);
-            // Notify event bus of broadcast
-            eventBus.publish(new Event("message.broadcast", message.getSenderId(), 
-                Map.of("messageId", message.getId()), Event.EventPriority.MEDIUM));
-        } else {
-            // Route to specific agent
-            MeshParticipantAgent targetAgent = agents.get(message.getReceiverId());
-            if (targetAgent != null) {
-                sendToAgent(targetAgent, message);
-                // Notify event bus of direct message
-                eventBus.publish(new Event("message.direct", message.getSenderId(),
-                    Map.of("messageId", message.getId(), 
-                          "receiverId", message.getReceiverId()), 
-                    Event.EventPriority.MEDIUM));
+    private List<Message> dropExpired(List<Message> messages) {
+        List<Message> live = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (message.isExpired()) {
+                expiredMessages.incrementAndGet();
+            } else {
+                live.add(message);
             }
         }
+        return live;
+    }
+
+    /**
+     * Gets the messages the receiver has not been handed yet, marking them, when duplicate suppression is on
+     */
+    private List<Message> dropDuplicates(String receiverId, List<Message> messages) {
+        IdempotencyFilter filter = idempotencyFilter;
+        return filter != null && !messages.isEmpty()
+            ? filter.markFirst(receiverId, messages, this::replayResponse) : messages;
+    }
+
+    /**
+     * Clears the marks of messages that were never processed, so retries still get through
+     */
+    private void forgetUnprocessed(String receiverId, List<Message> messages) {
+        IdempotencyFilter filter = idempotencyFilter;
+        if (filter != null) {
+            filter.forgetAll(receiverId, messages);
+        }
     }
 
-    private void broadcastToSpokes(Message message) {
-        agents.values().stream()
-            .filter(agent -> !agent.getId().equals(message.getSenderId()))
-            .forEach(agent -> 
-                executorService.submit(() -> sendToAgent(agent, message))
-            );
+    private void recordResponse(Message message) {
+        IdempotencyFilter filter = idempotencyFilter;
+        if (filter != null && message.getType() == Message.MessageType.RESPONSE) {
+            filter.recordResponse(message);
+        }
     }
 
-    private void sendToAgent(MeshParticipantAgent agent, Message message) {
+    /**
+     * Answers a duplicate QUERY with the response the agent gave to the original. The replay goes out
+     * under a fresh id, since the requester's own filter has already marked the original response.
+     */
+    private void replayResponse(Message response) {
+        // Counted first, so a caller woken by the replayed response already sees it
+        replayedResponses.incrementAndGet();
         try {
-            agent.processMessage(message);
-            String key = message.getSenderId() + "-" + agent.getId();
-            messageCounter.merge(key, 1, Integer::sum);
-            // Notify successful message delivery
-            eventBus.publish(new Event("message.delivered", message.getSenderId(),
-                Map.of("messageId", message.getId(), 
-                      "receiverId", agent.getId()),
-                Event.EventPriority.LOW));
+            sendMessage(response.withId(UUID.randomUUID().toString()));
+        } catch (RuntimeException e) {
+            replayedResponses.decrementAndGet();
+            System.err.println("Error replaying cached response " + response.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards messages for an agent whose breaker is open, failing any request waiting on them at once
+     */
+    private void shortCircuit(String receiverId, List<Message> messages) {
+        shortCircuitedMessages.addAndGet(messages.size());
+        for (Message message : messages) {
+            pendingRequests.fail(message.getId(),
+                new RejectedExecutionException("Circuit breaker for agent " + receiverId + " is open"));
+        }
+    }
+
+    private void onCircuitStateChange(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+        MeshParticipantAgent agent = agents.get(breaker.getName());
+        if (agent != null) {
+            if (to == CircuitBreaker.State.OPEN) {
+                agent.getState().setStatus(AgentState.Status.ERROR);
+            } else if (to == CircuitBreaker.State.CLOSED && agent.getState().getStatus() == AgentState.Status.ERROR) {
+                agent.getState().setStatus(AgentState.Status.ACTIVE);
+            }
+        }
+        eventBus.publish(HubMesh.circuitEvent(id, breaker.getName(), from, to));
+    }
+
+    /**
+     * Gets the circuit breaker state of each agent that has received messages
+     */
+    public Map<String, CircuitBreaker.State> getCircuitStates() {
+        return circuitBreakers.getStates();
+    }
+
+    /**
+     * Suppresses messages, broadcasts included, whose id an agent was already handed within the
+     * retention. Messages that fail or are short-circuited are forgotten again, so retries still get
+     * through. With cacheResponses a duplicate QUERY is answered with the cached RESPONSE to the
+     * original. A null retention turns suppression off.
+     *
+     * @see IdempotencyFilter#IdempotencyFilter(Duration, int, boolean)
+     */
+    public void setIdempotency(Duration retention, int maxEntries, boolean cacheResponses) {
+        idempotencyFilter = retention != null ? new IdempotencyFilter(retention, maxEntries, cacheResponses) : null;
+    }
+
+    /**
+     * Gets the number of messages discarded because the receiver's circuit breaker was open
+     */
+    public long getShortCircuitedMessageCount() {
+        return shortCircuitedMessages.get();
+    }
+
+    private void recordTraffic(String senderId, String receiverId, int messages) {
+        traffic.record(topology.nodeOf(senderId), topology.nodeOf(receiverId), messages);
+    }
+
+    /**
+     * Messages exchanged in either direction between two agents within the traffic window
+     */
+    private long recentTraffic(String agentId1, String agentId2) {
+        int node1 = topology.nodeOf(agentId1);
+        int node2 = topology.nodeOf(agentId2);
+        return traffic.windowCount(node1, node2) + traffic.windowCount(node2, node1);
+    }
+
+    /**
+     * Gets the messages per second recently delivered from one agent to another
+     */
+    public double getTrafficRate(String senderId, String receiverId) {
+        return traffic.rate(topology.nodeOf(senderId), topology.nodeOf(receiverId));
+    }
+
+    /**
+     * Gets the number of messages discarded because their deadline passed before delivery
+     */
+    public long getExpiredMessageCount() {
+        return expiredMessages.get();
+    }
+
+    /**
+     * Gets the agents on a current shortest path between two agents, both ends included, or an empty
+     * list if there is none
+     */
+    public List<String> getRoute(String senderId, String receiverId) {
+        return routing.path(senderId, receiverId);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long delivered = routedDeliveries.get();
+        long relayedShortest = relayedShortestHops.get();
+        stats.put("totalAgents", agents.size());
+        stats.put("connections", topology.getEdgeCount());
+        stats.put("trafficEdges", traffic.size());
+        stats.put("averageDegree", agents.isEmpty() ? 0.0 : 2.0 * topology.getEdgeCount() / agents.size());
+        stats.put("routedMessages", delivered);
+        stats.put("relayedMessages", relayedDeliveries.get());
+        stats.put("unroutableMessages", unroutableMessages.get());
+        stats.put("averageHops", delivered == 0 ? 0.0 : (double) deliveredHops.get() / delivered);
+        stats.put("maxHops", maxHops.get());
+        // Hops travelled over the shortest path at send time; above 1 when routes changed in flight
+        stats.put("pathStretch", relayedShortest == 0 ? 1.0 : (double) relayedHops.get() / relayedShortest);
+        stats.put("routingCachedDestinations", routing.getCachedDestinations());
+        stats.put("routingCacheMisses", routing.getMissCount());
+        stats.put("routingTreeBuilds", routing.getBuildCount());
+        stats.put("routingRelaxations", routing.getRelaxationCount());
+        stats.put("routingRepairs", routing.getRepairCount());
+        stats.put("routingInvalidations", routing.getInvalidationCount());
+        stats.put("demandPairs", pairDemand.size());
+        stats.put("demandEvictions", pairDemand.getEvictionCount());
+        stats.put("shortcutCandidates", optimizer.getCandidateCount());
+        stats.put("shortcutLinks", optimizer.getShortcutCount());
+        stats.put("shortcutPromotions", optimizer.getPromotionCount());
+        stats.put("shortcutDemotions", optimizer.getDemotionCount());
+        stats.put("expiredMessages", expiredMessages.get());
+        stats.put("shortCircuitedMessages", shortCircuitedMessages.get());
+        IdempotencyFilter filter = idempotencyFilter;
+        stats.put("duplicateMessages", filter != null ? filter.getDuplicateCount() : 0L);
+        stats.put("replayedResponses", replayedResponses.get());
+        stats.put("circuitStates", circuitBreakers.getStates());
+        long targets = broadcastTargets.get();
+        long broadcasts = completedBroadcasts.get();
+        stats.put("broadcasts", broadcasts);
+        stats.put("activeBroadcasts", activeBroadcasts.size());
+        stats.put("gossipPushes", gossipPushes.get());
+        stats.put("gossipDuplicates", gossipDuplicates.get());
+        stats.put("averageBroadcastCoverage", targets == 0 ? 1.0 : (double) broadcastReached.get() / targets);
+        stats.put("lastBroadcastCoverage", lastBroadcastCoverage);
+        stats.put("averageBroadcastLatencyMillis",
+            broadcasts == 0 ? 0.0 : broadcastLatencyNanos.get() / 1e6 / broadcasts);
+        stats.put("gossipFanout", effectiveGossipFanout(agents.size()));
+        stats.put("gossipTtl", effectiveGossipTtl(agents.size()));
+        return stats;
+    }
+
+    /**
+     * Broadcasts a message from its sender to every other agent by push gossip. The sender and every
+     * agent that receives the message for the first time forward it to a random subset of their peers
+     * until the message has travelled the configured number of hops, so each agent sends O(fan-out)
+     * copies. Agents reached again are recognised by a per-broadcast bitmap over node ids and neither
+     * process nor forward the duplicate.
+     * <p>
+     * Gossip is probabilistic: with the default fan-out of ln(N) + 2 most broadcasts reach every agent
+     * that is connected to the sender, and the rest miss a few. Broadcasting a message id that is still
+     * spreading returns the running broadcast.
+     *
+     * @return a future completed, once the broadcast stops spreading and every copy has been handed to
+     * its agent, with the fraction of the other agents it reached
+     */
+    public CompletableFuture<Double> broadcast(Message message) {
+        String senderId = message.getSenderId();
+        int origin = topology.nodeOf(senderId);
+        if (origin < 0 || !agents.containsKey(senderId)) {
+            throw new IllegalArgumentException("Invalid sender");
+        }
+        int agentCount = agents.size();
+        Broadcast broadcast = new Broadcast(message, topology.getNodeIdLimit(), agentCount - 1,
+            effectiveGossipFanout(agentCount), effectiveGossipTtl(agentCount));
+        Broadcast running = activeBroadcasts.putIfAbsent(message.getId(), broadcast);
+        if (running != null) {
+            return running.coverage;
+        }
+        broadcast.markSeen(origin);
+        try {
+            gossip(broadcast, origin, -1, 1);
+        } finally {
+            finishGossipTask(broadcast);
+        }
+        return broadcast.coverage;
+    }
+
+    /**
+     * Sets the gossip fan-out and the number of hops a broadcast may travel
+     *
+     * @param fanout peers each agent forwards a broadcast to, or 0 for ln(N) + 2
+     * @param ttl    hops after which a broadcast stops, or 0 for log2(N) + 4
+     */
+    public void setGossipSettings(int fanout, int ttl) {
+        if (fanout < 0 || ttl < 0) {
+            throw new IllegalArgumentException("Fanout and TTL must not be negative");
+        }
+        this.gossipFanout = fanout;
+        this.gossipTtl = ttl;
+    }
+
+    private int effectiveGossipFanout(int agentCount) {
+        int fanout = gossipFanout;
+        return fanout > 0 ? fanout : (int) Math.ceil(Math.log(Math.max(2, agentCount))) + GOSSIP_FANOUT_MARGIN;
+    }
+
+    private int effectiveGossipTtl(int agentCount) {
+        int ttl = gossipTtl;
+        // Push gossip needs about log2(N) rounds to reach most agents and a few more to mop up the rest
+        return ttl > 0 ? ttl : 32 - Integer.numberOfLeadingZeros(Math.max(1, agentCount)) + 4;
+    }
+
+    /**
+     * Forwards a broadcast from an agent to up to fan-out of its peers, skipping the peer it came from
+     */
+    private void gossip(Broadcast broadcast, int node, int cameFrom, int hops) {
+        int[] targets = new int[broadcast.fanout];
+        int count = topology.samplePeers(node, broadcast.fanout, cameFrom, targets);
+        for (int i = 0; i < count; i++) {
+            int target = targets[i];
+            traffic.record(node, target, 1);
+            gossipPushes.incrementAndGet();
+            broadcast.pending.incrementAndGet();
+            try {
+                gossipExecutor.execute(() -> receiveGossip(broadcast, target, node, hops));
+            } catch (RejectedExecutionException e) {
+                finishGossipTask(broadcast); // Mesh is stopping
+            }
+        }
+    }
+
+    private void receiveGossip(Broadcast broadcast, int node, int cameFrom, int hops) {
+        try {
+            if (!broadcast.markSeen(node)) {
+                gossipDuplicates.incrementAndGet();
+                return;
+            }
+            String agentId = topology.nameOf(node);
+            MeshParticipantAgent agent = agentId != null ? agents.get(agentId) : null;
+            if (agent == null) {
+                return;
+            }
+            Message message = broadcast.message;
+            if (message.isExpired()) {
+                expiredMessages.incrementAndGet(); // Stops this branch of the broadcast as well
+                return;
+            }
+            broadcast.reached.incrementAndGet();
+            broadcast.lastDeliveryNanos = System.nanoTime();
+            // Forward first and deliver on the delivery pool, like direct messages, so a slow agent holds up
+            // neither the spread nor the copies of other agents
+            if (hops < broadcast.ttl) {
+                gossip(broadcast, node, cameFrom, hops + 1);
+            }
+            broadcast.pending.incrementAndGet();
+            try {
+                executorService.execute(() -> {
+                    try {
+                        deliverBroadcast(agent, message);
+                    } finally {
+                        finishGossipTask(broadcast);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                finishGossipTask(broadcast); // Mesh is stopping
+            }
+        } finally {
+            finishGossipTask(broadcast);
+        }
+    }
+
+    /**
+     * Delivers one copy of a broadcast; the agent keeps relaying even if it fails to process it
+     */
+    private void deliverBroadcast(MeshParticipantAgent agent, Message message) {
+        // The broadcast's bitmap stops copies within one broadcast; this stops a resubmitted broadcast
+        List<Message> single = dropDuplicates(agent.getId(), List.of(message));
+        if (single.isEmpty()) {
+            return;
+        }
+        CircuitBreaker breaker = circuitBreakers.get(agent.getId());
+        if (!breaker.tryAcquire()) {
+            shortCircuitedMessages.incrementAndGet();
+            forgetUnprocessed(agent.getId(), single);
+            return;
+        }
+        try {
+            breaker.execute(() -> agent.processMessage(message));
         } catch (Exception e) {
-            System.err.println("Error sending message to agent " + agent.getId() + ": " + e.getMessage());
-            // Notify message delivery failure
-            eventBus.publish(new Event("message.failed", message.getSenderId(),
-                Map.of("messageId", message.getId(), 
-                      "receiverId", agent.getId(),
-                      "error", e.getMessage()),
-                Event.EventPriority.HIGH));
+            forgetUnprocessed(agent.getId(), single);
+            System.err.println("Error delivering broadcast to agent " + agent.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private void finishGossipTask(Broadcast broadcast) {
+        if (broadcast.pending.decrementAndGet() != 0) {
+            return;
         }
+        activeBroadcasts.remove(broadcast.message.getId(), broadcast);
+        int reached = broadcast.reached.get();
+        double coverage = broadcast.targets == 0 ? 1.0 : (double) reached / broadcast.targets;
+        long latency = reached == 0 ? 0 : broadcast.lastDeliveryNanos - broadcast.startNanos;
+        completedBroadcasts.incrementAndGet();
+        broadcastTargets.addAndGet(broadcast.targets);
+        broadcastReached.addAndGet(reached);
+        broadcastLatencyNanos.addAndGet(latency);
+        lastBroadcastCoverage = coverage;
+        eventBus.publish(new Event("message.broadcast", broadcast.message.getSenderId(),
+            Map.of("messageId", broadcast.message.getId(),
+                  "coverage", coverage,
+                  "latencyMillis", TimeUnit.NANOSECONDS.toMillis(latency)),
+            Event.EventPriority.MEDIUM));
+        broadcast.coverage.complete(coverage);
     }
 
+    /**
+     * State of one broadcast while it spreads. The seen filter is a bitmap over the node ids that
+     * existed when it started: one bit per agent instead of a set of message ids per agent.
+     */
+    private static final class Broadcast {
+        private final Message message;
+        private final AtomicLongArray seen;
+        private final int targets;
+        private final int fanout;
+        private final int ttl;
+        private final long startNanos;
+        // Gossip and delivery tasks not yet finished, plus one for the broadcast call itself
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger reached = new AtomicInteger();
+        private final CompletableFuture<Double> coverage = new CompletableFuture<>();
+        private volatile long lastDeliveryNanos;
+
+        Broadcast(Message message, int nodeIdLimit, int targets, int fanout, int ttl) {
+            this.message = message;
+            this.seen = new AtomicLongArray((nodeIdLimit + 63) >>> 6);
+            this.targets = targets;
+            this.fanout = fanout;
+            this.ttl = ttl;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * @return false if the node had the message already, or joined after the broadcast started
+         */
+        boolean markSeen(int node) {
+            int word = node >>> 6;
+            if (word >= seen.length()) {
+                return false;
+            }
+            long bit = 1L << node;
+            long current;
+            do {
+                current = seen.get(word);
+                if ((current & bit) != 0) {
+                    return false;
+                }
+            } while (!seen.compareAndSet(word, current, current | bit));
+            return true;
+        }
+    }
+
+    /**
+     * Gets a live read-only view of the agent's peers
+     */
     public Set<String> getPeers(String agentId) {
-        return new HashSet<>(connections.getOrDefault(agentId, Collections.emptySet()));
+        return topology.getPeers(agentId);
     }
 
     private int getMinConnections() {
@@ -272,9 +894,15 @@ public class P2PMesh implements Mesh {
     @Override
     public void stop() {
         state.setStatus(MeshState.Status.STOPPING);
-        executorService.shutdown();
+        pendingRequests.cancelAll();
+        gossipExecutor.shutdown();
         scheduledExecutor.shutdown();
         try {
+            // Gossip first, since gossip tasks hand broadcast copies to the delivery pool
+            if (!gossipExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                gossipExecutor.shutdownNow();
+            }
+            executorService.shutdown();
             if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
                 executorService.shutdownNow();
             }
@@ -283,6 +911,7 @@ public class P2PMesh implements Mesh {
             }
         } catch (InterruptedException e) {
             executorService.shutdownNow();
+            gossipExecutor.shutdownNow();
             scheduledExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
@@ -1,25 +1,65 @@
 package vishalmysore.agenticmesh.mesh;
 
+import vishalmysore.agenticmesh.config.ConfigurationManager;
 import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.persistence.PersistenceManager;
+import vishalmysore.agenticmesh.pipeline.PipelineCheckpoint;
+import vishalmysore.agenticmesh.pipeline.PipelineRuntime;
+
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Implementation of a pipeline mesh pattern where agents process data sequentially
  */
 public class PipelineMesh implements Mesh {
+    private static final int DEFAULT_STAGE_QUEUE_CAPACITY = 256;
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
     private final String id;
     private final Map<String, MeshParticipantAgent> agents;
+    private final int stageQueueCapacity;
     private MeshState state;
     private List<String> pipelineOrder;
+    // Agent id to its position in the pipeline order
+    private Map<String, Integer> positions;
+    // Replica, ordering, batching and fusion settings by stage agent id, applied whenever the pipeline starts
+    private final Map<String, StageSettings> stageSettings;
+    private Duration checkpointInterval;
+    private PersistenceManager checkpointStore;
+    private Duration autoscalingInterval;
+    private double lowUtilization;
+    private double highUtilization;
+    private volatile PipelineRuntime runtime;
 
     public PipelineMesh(String id) {
+        this(id, ConfigurationManager.getInstance()
+            .getValue("pipelineQueueCapacity", Integer.class, DEFAULT_STAGE_QUEUE_CAPACITY));
+    }
+
+    /**
+     * @param stageQueueCapacity messages each stage may have waiting before the stage in front of it blocks
+     */
+    public PipelineMesh(String id, int stageQueueCapacity) {
+        if (stageQueueCapacity < 1) {
+            throw new IllegalArgumentException("Stage queue capacity must be positive");
+        }
         this.id = id;
         this.agents = new LinkedHashMap<>();
+        this.stageQueueCapacity = stageQueueCapacity;
         this.state = new MeshState(id, "pipeline");
         this.pipelineOrder = new ArrayList<>();
+        this.positions = new HashMap<>();
+        this.stageSettings = new HashMap<>();
     }
 
     @Override
@@ -34,15 +74,19 @@ public class PipelineMesh implements Mesh {
 
     @Override
     public void addAgent(MeshParticipantAgent agent) {
-        agents.put(agent.getId(), agent);
-        pipelineOrder.add(agent.getId());
-        state.incrementAgentCount();
+        if (agents.put(agent.getId(), agent) == null) {
+            pipelineOrder.add(agent.getId());
+            indexPositions();
+            state.incrementAgentCount();
+        }
     }
 
     @Override
     public void removeAgent(String agentId) {
         if (agents.remove(agentId) != null) {
             pipelineOrder.remove(agentId);
+            stageSettings.remove(agentId);
+            indexPositions();
             state.decrementAgentCount();
         }
     }
@@ -65,15 +109,65 @@ public class PipelineMesh implements Mesh {
         state.setStatus(MeshState.Status.INITIALIZED);
     }
 
+    /**
+     * Starts the stages in the current pipeline order, fusing adjacent lightweight agents that have
+     * neither replicas, replica limits nor batching into one stage. Changes to the agents, their order
+     * or whether they are lightweight take effect on the next start.
+     */
     @Override
     public void start() {
+        if (runtime != null) {
+            return;
+        }
+        Set<String> fusible = new HashSet<>();
+        stageSettings.forEach((agentId, settings) -> {
+            if (settings.lightweight && settings.replicas == 1 && settings.maxReplicas == 1
+                && settings.batchSize == 1) {
+                fusible.add(agentId);
+            }
+        });
+        PipelineRuntime started = new PipelineRuntime(id, getAgents(), stageQueueCapacity, fusible);
+        if (autoscalingInterval != null) {
+            started.enableAutoscaling(lowUtilization, highUtilization, autoscalingInterval);
+        }
+        stageSettings.forEach((agentId, settings) -> {
+            if (fusible.contains(agentId)) {
+                return;
+            }
+            int stage = started.getStageIndex(agentId);
+            started.setOrdered(stage, settings.ordered);
+            started.setReplicas(stage, settings.replicas, settings.replicaFactory);
+            started.setBatching(stage, settings.batchSize, settings.maxLinger);
+            if (autoscalingInterval != null && settings.limited) {
+                started.setReplicaLimits(stage, settings.minReplicas, settings.maxReplicas);
+            }
+        });
+        if (checkpointInterval != null) {
+            PersistenceManager persistence = checkpointStore != null
+                ? checkpointStore : PersistenceManager.getInstance();
+            started.enableCheckpoints(persistence, getCheckpointKey(), checkpointInterval);
+        }
+        started.start();
+        runtime = started;
         state.setStatus(MeshState.Status.RUNNING);
-        // Start pipeline processing
     }
 
     @Override
     public void stop() {
         state.setStatus(MeshState.Status.STOPPING);
+        PipelineRuntime stopping = runtime;
+        if (stopping != null) {
+            try {
+                if (!stopping.stop(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println("Pipeline " + id + " stopped before its stages drained");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Cleared only after the drain, so results can still be taken while the stages finish
+                runtime = null;
+            }
+        }
         for (MeshParticipantAgent agent : agents.values()) {
             agent.shutdown();
         }
@@ -85,6 +179,206 @@ public class PipelineMesh implements Mesh {
         return state;
     }
 
+    /**
+     * Feeds a message into the first stage, blocking while the pipeline is backed up
+     *
+     * @throws IllegalStateException if the mesh has not been started
+     */
+    public void submit(Message message) {
+        requireRuntime().submit(message);
+    }
+
+    /**
+     * Feeds a message into the first stage, waiting at most the timeout while the pipeline is backed up
+     *
+     * @return false if the first stage was still full
+     * @throws IllegalStateException if the mesh is not running
+     */
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        return requireRuntime().offer(message, timeout, unit);
+    }
+
+    /**
+     * Waits for the next message that came out of the last stage
+     */
+    public Message takeResult() throws InterruptedException {
+        return requireRuntime().takeResult();
+    }
+
+    /**
+     * Waits at most the timeout for the next message that came out of the last stage
+     *
+     * @return the message, or null if none arrived in time
+     */
+    public Message pollResult(long timeout, TimeUnit unit) throws InterruptedException {
+        return requireRuntime().pollResult(timeout, unit);
+    }
+
+    private PipelineRuntime requireRuntime() {
+        PipelineRuntime current = runtime;
+        if (current == null) {
+            throw new IllegalStateException("Pipeline " + id + " is not running");
+        }
+        return current;
+    }
+
+    /**
+     * Lets several agents process a stage in parallel: the stage's own agent plus replicas made by the
+     * factory. While the pipeline runs the change applies at once, so replicas can be added to the stage
+     * whose occupancy in {@link #getStatistics()} is close to 1.
+     *
+     * @param factory creates replica agents; may be null if one was given before or no replica is added
+     * @throws IllegalStateException if the running pipeline fused the agent with its neighbours
+     */
+    public void setStageReplicas(String agentId, int replicas, Supplier<? extends MeshParticipantAgent> factory) {
+        StageSettings settings = settingsOf(agentId);
+        if (replicas < 1) {
+            throw new IllegalArgumentException("A stage needs at least one replica");
+        }
+        Supplier<? extends MeshParticipantAgent> replicaFactory = factory != null ? factory : settings.replicaFactory;
+        if (replicas > 1 && replicaFactory == null) {
+            throw new IllegalArgumentException("Adding replicas to stage " + agentId + " needs a replica factory");
+        }
+        settings.replicas = replicas;
+        settings.replicaFactory = replicaFactory;
+        PipelineRuntime current = runtime;
+        if (current != null) {
+            current.setReplicas(current.getStageIndex(agentId), replicas, replicaFactory);
+        }
+    }
+
+    /**
+     * Sets whether a stage with replicas keeps messages in the order it received them, which is the
+     * default. Unordered stages pass each message on as soon as a replica is done with it. Takes effect
+     * on the next start.
+     */
+    public void setStageOrdered(String agentId, boolean ordered) {
+        settingsOf(agentId).ordered = ordered;
+    }
+
+    /**
+     * Lets a stage take up to batchSize messages at once, handed to the agent's
+     * {@link MeshParticipantAgent#transformBatch(List)}. A batch goes as soon as it is full or maxLinger
+     * after its first message; a longer linger means larger batches but more latency.
+     */
+    public void setStageBatching(String agentId, int batchSize, Duration maxLinger) {
+        if (batchSize < 1 || maxLinger.isNegative()) {
+            throw new IllegalArgumentException("Batch size must be positive and linger time not negative");
+        }
+        StageSettings settings = settingsOf(agentId);
+        settings.batchSize = batchSize;
+        settings.maxLinger = maxLinger;
+        PipelineRuntime current = runtime;
+        if (current != null) {
+            current.setBatching(current.getStageIndex(agentId), batchSize, maxLinger);
+        }
+    }
+
+    /**
+     * Lets the autoscaler move a stage's replicas between the limits, creating added ones with the
+     * factory. Applies at once while the pipeline runs with autoscaling.
+     *
+     * @param factory creates replica agents; may be null if one was given before or max is 1
+     */
+    public void setStageReplicaLimits(String agentId, int minReplicas, int maxReplicas,
+                                      Supplier<? extends MeshParticipantAgent> factory) {
+        StageSettings settings = settingsOf(agentId);
+        if (minReplicas < 1 || maxReplicas < minReplicas) {
+            throw new IllegalArgumentException("Replica limits must satisfy 1 <= min <= max");
+        }
+        Supplier<? extends MeshParticipantAgent> replicaFactory = factory != null ? factory : settings.replicaFactory;
+        if (maxReplicas > 1 && replicaFactory == null) {
+            throw new IllegalArgumentException("Scaling stage " + agentId + " needs a replica factory");
+        }
+        settings.replicaFactory = replicaFactory;
+        settings.minReplicas = minReplicas;
+        settings.maxReplicas = maxReplicas;
+        settings.limited = true;
+        PipelineRuntime current = runtime;
+        if (current != null && autoscalingInterval != null) {
+            int stage = current.getStageIndex(agentId);
+            current.setReplicas(stage, current.getReplicas(stage), replicaFactory);
+            current.setReplicaLimits(stage, minReplicas, maxReplicas);
+        }
+    }
+
+    /**
+     * Resizes stages that have replica limits every interval, so the bottleneck stage's utilization
+     * stays between the bounds; {@link #getStatistics()} shows which stage that is and how busy each
+     * one is. A null interval turns autoscaling off. Takes effect on the next start.
+     */
+    public void setAutoscaling(double lowUtilization, double highUtilization, Duration interval) {
+        if (interval != null && (lowUtilization <= 0 || highUtilization > 1 || lowUtilization >= highUtilization)) {
+            throw new IllegalArgumentException("Utilization band must satisfy 0 < low < high <= 1");
+        }
+        this.lowUtilization = lowUtilization;
+        this.highUtilization = highUtilization;
+        this.autoscalingInterval = interval;
+    }
+
+    /**
+     * Gets the agent id of the running stage with the highest utilization, or null if not running.
+     * A fused stage is named by its agents' ids joined with "+".
+     */
+    public String getBottleneckStage() {
+        PipelineRuntime current = runtime;
+        return current != null ? current.getBottleneckStage() : null;
+    }
+
+    /**
+     * Marks an agent as a cheap in-process transform that never blocks. Adjacent lightweight agents
+     * run as one stage on one thread, without a queue between them; agents that call remote services
+     * or otherwise block should stay unmarked so they keep a stage of their own. Takes effect on the
+     * next start.
+     */
+    public void setStageLightweight(String agentId, boolean lightweight) {
+        settingsOf(agentId).lightweight = lightweight;
+    }
+
+    /**
+     * Checkpoints the pipeline's in-flight messages at the interval through the persistence manager,
+     * so a pipeline with the same id and stages resumes them when it next starts, also after a crash.
+     * Null turns checkpoints off. Takes effect on the next start.
+     */
+    public void setCheckpointInterval(Duration interval) {
+        setCheckpointInterval(interval, null);
+    }
+
+    /**
+     * Checkpoints the pipeline at the interval through the given persistence manager, or the shared
+     * one if null. Takes effect on the next start.
+     */
+    public void setCheckpointInterval(Duration interval, PersistenceManager persistence) {
+        if (interval != null && (interval.isNegative() || interval.isZero())) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.checkpointInterval = interval;
+        this.checkpointStore = persistence;
+    }
+
+    /**
+     * Takes a checkpoint of the running pipeline now
+     *
+     * @throws IllegalStateException if the pipeline is not running or checkpoints are off
+     */
+    public PipelineCheckpoint checkpoint() {
+        return requireRuntime().checkpoint();
+    }
+
+    /**
+     * Gets the persistence key the pipeline's checkpoints are stored under
+     */
+    public String getCheckpointKey() {
+        return "pipeline-" + id + "-checkpoint";
+    }
+
+    private StageSettings settingsOf(String agentId) {
+        if (!agents.containsKey(agentId)) {
+            throw new IllegalArgumentException("Unknown pipeline stage: " + agentId);
+        }
+        return stageSettings.computeIfAbsent(agentId, key -> new StageSettings());
+    }
+
     /**
      * Sets the order of agents in the pipeline
      */
@@ -93,16 +387,49 @@ public class PipelineMesh implements Mesh {
             throw new IllegalArgumentException("Invalid pipeline order");
         }
         this.pipelineOrder = new ArrayList<>(order);
+        indexPositions();
+    }
+
+    private void indexPositions() {
+        Map<String, Integer> indexed = new HashMap<>();
+        for (int i = 0; i < pipelineOrder.size(); i++) {
+            indexed.put(pipelineOrder.get(i), i);
+        }
+        positions = indexed;
     }
 
     /**
      * Gets the next agent in the pipeline
      */
     public MeshParticipantAgent getNextAgent(String currentAgentId) {
-        int currentIndex = pipelineOrder.indexOf(currentAgentId);
-        if (currentIndex < 0 || currentIndex >= pipelineOrder.size() - 1) {
+        Integer currentIndex = positions.get(currentAgentId);
+        if (currentIndex == null || currentIndex >= pipelineOrder.size() - 1) {
             return null;
         }
         return agents.get(pipelineOrder.get(currentIndex + 1));
     }
+
+    /**
+     * Gets pipeline statistics, with per-stage counters while the pipeline is running
+     */
+    public Map<String, Object> getStatistics() {
+        PipelineRuntime current = runtime;
+        Map<String, Object> stats = current != null ? current.getStatistics() : new HashMap<>();
+        stats.put("totalAgents", agents.size());
+        stats.put("stageQueueCapacity", stageQueueCapacity);
+        stats.put("running", current != null);
+        return stats;
+    }
+
+    private static class StageSettings {
+        private int replicas = 1;
+        private boolean limited;
+        private int minReplicas = 1;
+        private int maxReplicas = 1;
+        private Supplier<? extends MeshParticipantAgent> replicaFactory;
+        private boolean ordered = true;
+        private int batchSize = 1;
+        private Duration maxLinger = Duration.ZERO;
+        private boolean lightweight;
+    }
 }
@@ -0,0 +1,291 @@
+package vishalmysore.agenticmesh.mesh;
+
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spoke selection for {@link HubMesh}. Keeps a copy-on-write snapshot of the spokes that is only
+ * rebuilt when membership changes, so picking the next agent is O(1) and does not allocate.
+ * Besides lifetime load it tracks live signals per spoke: messages in flight (queued or being
+ * processed) and a peak-sensitive moving average of processing latency. Spokes can be suspended,
+ * for example while their circuit breaker is open, and are skipped until the suspension ends.
+ */
+public class SpokeLoadBalancer {
+    private static final Snapshot EMPTY = new Snapshot(new MeshParticipantAgent[0], new HashMap<>(), new SpokeStats[0]);
+    private static final long DEFAULT_LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<String, SpokeStats> stats;
+    private final AtomicInteger cursor;
+    private final AtomicInteger suspendedCount;
+    private volatile Snapshot snapshot;
+    private volatile HubMesh.LoadBalancingStrategy strategy;
+    private volatile long latencyDecayNanos;
+
+    public SpokeLoadBalancer(HubMesh.LoadBalancingStrategy strategy) {
+        this.stats = new ConcurrentHashMap<>();
+        this.cursor = new AtomicInteger();
+        this.suspendedCount = new AtomicInteger();
+        this.snapshot = EMPTY;
+        this.strategy = strategy;
+        this.latencyDecayNanos = DEFAULT_LATENCY_DECAY_NANOS;
+    }
+
+    /**
+     * Replaces the set of spokes. Counters of spokes that remain are kept; new spokes start with the
+     * mean latency of the others, so PEAK_EWMA does not see them as free until their first sample.
+     */
+    public synchronized void rebuild(Collection<MeshParticipantAgent> spokes) {
+        MeshParticipantAgent[] array = spokes.toArray(new MeshParticipantAgent[0]);
+        Map<String, Integer> positions = new HashMap<>(array.length * 2);
+        SpokeStats[] spokeStats = new SpokeStats[array.length];
+        double seedNanos = meanLatencyNanos();
+        for (int i = 0; i < array.length; i++) {
+            String agentId = array[i].getId();
+            positions.put(agentId, i);
+            spokeStats[i] = stats.computeIfAbsent(agentId, k -> new SpokeStats(seedNanos));
+        }
+        stats.forEach((agentId, spoke) -> {
+            if (!positions.containsKey(agentId)) {
+                resume(agentId);
+            }
+        });
+        stats.keySet().retainAll(positions.keySet());
+        snapshot = new Snapshot(array, positions, spokeStats);
+    }
+
+    /**
+     * Picks the spoke that should receive the next message
+     *
+     * @param currentAgentId the agent that handled the previous message, used by ROUND_ROBIN; may be null
+     * @return the chosen spoke, or null if there are no spokes or all of them are suspended
+     */
+    public MeshParticipantAgent next(String currentAgentId) {
+        Snapshot current = snapshot;
+        int size = current.spokes.length;
+        if (size == 0) return null;
+        // Suspension checks are skipped entirely while no spoke is suspended
+        long now = suspendedCount.get() > 0 ? System.nanoTime() : 0;
+        if (size == 1) return available(current.stats[0], now) ? current.spokes[0] : null;
+
+        switch (strategy) {
+            case ROUND_ROBIN:
+                Integer position = currentAgentId != null ? current.positions.get(currentAgentId) : null;
+                int index = position != null ? position + 1 : cursor.getAndIncrement() & Integer.MAX_VALUE;
+                return firstAvailable(current, index % size, now);
+
+            case LEAST_LOADED:
+            case LEAST_IN_FLIGHT:
+            case PEAK_EWMA:
+                // Power of two choices: nearly as good as a full scan at a constant cost
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(size);
+                int second = random.nextInt(size - 1);
+                if (second >= first) second++;
+                boolean firstAvailable = available(current.stats[first], now);
+                boolean secondAvailable = available(current.stats[second], now);
+                if (firstAvailable && secondAvailable) {
+                    return cost(current.stats[first]) <= cost(current.stats[second])
+                        ? current.spokes[first] : current.spokes[second];
+                }
+                if (secondAvailable) return current.spokes[second];
+                return firstAvailable(current, first, now);
+
+            case RANDOM:
+                return firstAvailable(current, ThreadLocalRandom.current().nextInt(size), now);
+
+            default:
+                return firstAvailable(current, 0, now);
+        }
+    }
+
+    /**
+     * Returns the first spoke that is not suspended, scanning from the given index
+     */
+    private static MeshParticipantAgent firstAvailable(Snapshot current, int start, long now) {
+        int size = current.spokes.length;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (available(current.stats[index], now)) {
+                return current.spokes[index];
+            }
+        }
+        return null;
+    }
+
+    private static boolean available(SpokeStats spoke, long now) {
+        long until = spoke.suspendedUntilNanos;
+        return until == 0 || now - until >= 0;
+    }
+
+    /**
+     * Skips the spoke when picking the next agent until the given time has elapsed or it is resumed
+     */
+    public void suspend(String agentId, long duration, TimeUnit unit) {
+        SpokeStats spoke = stats.get(agentId);
+        if (spoke != null) {
+            synchronized (spoke) {
+                if (spoke.suspendedUntilNanos == 0) {
+                    suspendedCount.incrementAndGet();
+                }
+                // Zero marks "not suspended", so never store it as a deadline
+                spoke.suspendedUntilNanos = (System.nanoTime() + unit.toNanos(duration)) | 1;
+            }
+        }
+    }
+
+    /**
+     * Ends a suspension started by {@link #suspend}
+     */
+    public void resume(String agentId) {
+        SpokeStats spoke = stats.get(agentId);
+        if (spoke != null) {
+            synchronized (spoke) {
+                if (spoke.suspendedUntilNanos != 0) {
+                    spoke.suspendedUntilNanos = 0;
+                    suspendedCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private double meanLatencyNanos() {
+        double sum = 0;
+        int sampled = 0;
+        for (SpokeStats spoke : stats.values()) {
+            double latency = spoke.latencyEwmaNanos();
+            if (latency > 0) {
+                sum += latency;
+                sampled++;
+            }
+        }
+        return sampled == 0 ? 0 : sum / sampled;
+    }
+
+    private double cost(SpokeStats spoke) {
+        switch (strategy) {
+            case LEAST_IN_FLIGHT:
+                return spoke.inFlight.get();
+            case PEAK_EWMA:
+                // Expected wait: latency estimate scaled by the work already queued ahead. The floor keeps
+                // the backlog counting before any spoke has a latency sample.
+                return Math.max(1.0, spoke.latencyEwmaNanos()) * (spoke.inFlight.get() + 1);
+            default:
+                return spoke.load.get();
+        }
+    }
+
+    /**
+     * Records messages handed to a spoke that have not been processed yet
+     */
+    public void onDispatch(String agentId, int messages) {
+        SpokeStats spoke = stats.get(agentId);
+        if (spoke != null) {
+            spoke.inFlight.addAndGet(messages);
+        }
+    }
+
+    /**
+     * Records that a spoke finished processing messages previously passed to {@link #onDispatch}
+     *
+     * @param elapsedNanos time the spoke spent processing all of the messages
+     */
+    public void onComplete(String agentId, int messages, long elapsedNanos) {
+        SpokeStats spoke = stats.get(agentId);
+        if (spoke != null) {
+            spoke.inFlight.addAndGet(-messages);
+            spoke.load.addAndGet(messages);
+            spoke.observeLatency(elapsedNanos / Math.max(1, messages), System.nanoTime(), latencyDecayNanos);
+        }
+    }
+
+    /**
+     * Adds delivered messages to a spoke's lifetime load counter
+     */
+    public void recordLoad(String agentId, int messages) {
+        SpokeStats spoke = stats.get(agentId);
+        if (spoke != null) {
+            spoke.load.addAndGet(messages);
+        }
+    }
+
+    public Map<String, Integer> getLoads() {
+        Map<String, Integer> result = new HashMap<>();
+        stats.forEach((agentId, spoke) -> result.put(agentId, spoke.load.get()));
+        return result;
+    }
+
+    public Map<String, Integer> getInFlight() {
+        Map<String, Integer> result = new HashMap<>();
+        stats.forEach((agentId, spoke) -> result.put(agentId, spoke.inFlight.get()));
+        return result;
+    }
+
+    public Map<String, Double> getLatencyEwmaMillis() {
+        Map<String, Double> result = new HashMap<>();
+        stats.forEach((agentId, spoke) -> result.put(agentId, spoke.latencyEwmaNanos() / 1_000_000.0));
+        return result;
+    }
+
+    /**
+     * Sets how quickly the latency average forgets old samples once latency improves
+     */
+    public void setLatencyDecay(long decay, TimeUnit unit) {
+        this.latencyDecayNanos = unit.toNanos(decay);
+    }
+
+    public int getSpokeCount() { return snapshot.spokes.length; }
+    public HubMesh.LoadBalancingStrategy getStrategy() { return strategy; }
+    public void setStrategy(HubMesh.LoadBalancingStrategy strategy) { this.strategy = strategy; }
+
+    private static final class Snapshot {
+        private final MeshParticipantAgent[] spokes;
+        private final Map<String, Integer> positions;
+        private final SpokeStats[] stats;
+
+        Snapshot(MeshParticipantAgent[] spokes, Map<String, Integer> positions, SpokeStats[] stats) {
+            this.spokes = spokes;
+            this.positions = positions;
+            this.stats = stats;
+        }
+    }
+
+    private static final class SpokeStats {
+        private final AtomicInteger load = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double ewmaNanos;
+        private volatile long suspendedUntilNanos; // 0 when not suspended
+        private long lastSampleNanos;
+        private boolean sampled;
+
+        SpokeStats(double seedNanos) {
+            this.ewmaNanos = seedNanos;
+        }
+
+        /**
+         * Peak EWMA: a slower sample replaces the average at once, faster samples are blended
+         * in with a weight that grows with the time since the previous sample. The first sample
+         * replaces the seeded estimate outright.
+         */
+        synchronized void observeLatency(long latencyNanos, long now, long decayNanos) {
+            if (!sampled || latencyNanos > ewmaNanos) {
+                ewmaNanos = latencyNanos;
+                sampled = true;
+            } else {
+                double weight = Math.exp(-(now - lastSampleNanos) / (double) decayNanos);
+                ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+            }
+            lastSampleNanos = now;
+        }
+
+        double latencyEwmaNanos() {
+            return ewmaNanos;
+        }
+    }
+}
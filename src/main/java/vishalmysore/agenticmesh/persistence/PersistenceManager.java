@@ -16,8 +16,15 @@ public class PersistenceManager {
     private final Map<String, Object> memoryCache;
 
     private PersistenceManager() {
+        this(Paths.get(System.getProperty("user.home"), ".agenticmesh"));
+    }
+
+    /**
+     * Creates a manager that keeps its files in the given directory instead of the shared one
+     */
+    public PersistenceManager(Path storageDir) {
         this.objectMapper = new ObjectMapper();
-        this.storageDir = Paths.get(System.getProperty("user.home"), ".agenticmesh");
+        this.storageDir = storageDir;
         this.memoryCache = new ConcurrentHashMap<>();
         initializeStorage();
     }
@@ -37,13 +44,28 @@ public class PersistenceManager {
         }
     }
 
+    /**
+     * Writes the value to a temporary file and renames it over the old one, so a crash mid-write
+     * leaves the previous value in place rather than a truncated file
+     */
     public void store(String key, Object value) {
+        Path temp = null;
         try {
             Path file = storageDir.resolve(key + ".json");
-            objectMapper.writeValue(file.toFile(), value);
+            temp = Files.createTempFile(storageDir, key, ".tmp");
+            objectMapper.writeValue(temp.toFile(), value);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
             memoryCache.put(key, value);
         } catch (IOException e) {
             throw new RuntimeException("Failed to store value for key: " + key, e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete temporary file " + temp + ": " + e.getMessage());
+                }
+            }
         }
     }
 
@@ -0,0 +1,49 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Several adjacent lightweight agents run as one pipeline stage: each message goes through all of
+ * them in turn on the stage's thread, with no queue in between. The member agents' lifecycle stays
+ * with the mesh.
+ */
+final class FusedStageAgent implements MeshParticipantAgent {
+    private final List<MeshParticipantAgent> members;
+    private final String id;
+    private final AgentState state;
+
+    FusedStageAgent(List<MeshParticipantAgent> members) {
+        this.members = List.copyOf(members);
+        this.id = members.stream().map(MeshParticipantAgent::getId).collect(Collectors.joining("+"));
+        this.state = new AgentState(id);
+    }
+
+    @Override
+    public Message transform(Message message) {
+        Message current = message;
+        for (int i = 0; i < members.size() && current != null; i++) {
+            current = members.get(i).transform(current);
+        }
+        return current;
+    }
+
+    @Override
+    public void processMessage(Message message) {
+        transform(message);
+    }
+
+    List<MeshParticipantAgent> getMembers() {
+        return members;
+    }
+
+    @Override public String getId() { return id; }
+    @Override public String getType() { return "fused"; }
+    @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+    @Override public AgentState getState() { return state; }
+    @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+}
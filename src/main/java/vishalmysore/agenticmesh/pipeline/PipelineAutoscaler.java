@@ -0,0 +1,143 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds and removes stage replicas while the pipeline runs, so the bottleneck stage stays inside a
+ * utilization band.
+ * <p>
+ * Every interval all stages are sampled and the one with the highest utilization is the bottleneck.
+ * Above the band it gets as many replicas as would bring it to the middle of the band, at least one
+ * more, within its limit. A stage below the band gives up one replica at a time, and only if the
+ * remaining replicas would not be pushed above the band. Only stages with replica limits are scaled.
+ */
+final class PipelineAutoscaler {
+    private final String pipeline;
+    private final List<PipelineStage> stages;
+    // Own sampling windows, so statistics reads do not shorten the ones the decisions are based on
+    private final PipelineStage.SampleCursor[] cursors;
+    private final double lowUtilization;
+    private final double highUtilization;
+    private final Duration interval;
+    // Stage index to {min, max} replicas
+    private final Map<Integer, int[]> limits;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong scaleUps;
+    private final AtomicLong scaleDowns;
+    private volatile int bottleneck = -1;
+    private volatile double bottleneckUtilization;
+
+    PipelineAutoscaler(String pipeline, List<PipelineStage> stages, double lowUtilization, double highUtilization,
+                       Duration interval) {
+        if (lowUtilization <= 0 || highUtilization > 1 || lowUtilization >= highUtilization) {
+            throw new IllegalArgumentException("Utilization band must satisfy 0 < low < high <= 1");
+        }
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Autoscaling interval must be positive");
+        }
+        this.pipeline = pipeline;
+        this.stages = stages;
+        this.cursors = new PipelineStage.SampleCursor[stages.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = new PipelineStage.SampleCursor();
+        }
+        this.lowUtilization = lowUtilization;
+        this.highUtilization = highUtilization;
+        this.interval = interval;
+        this.limits = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, pipeline + "-autoscaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scaleUps = new AtomicLong();
+        this.scaleDowns = new AtomicLong();
+    }
+
+    void setLimits(int stage, int minReplicas, int maxReplicas) {
+        limits.put(stage, new int[]{minReplicas, maxReplicas});
+    }
+
+    void start() {
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::adjustQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void adjustQuietly() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to autoscale pipeline " + pipeline + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Samples every stage and resizes the bottleneck, or stages that are over-provisioned
+     */
+    synchronized void adjust() {
+        StageLoad[] loads = new StageLoad[stages.size()];
+        int busiest = 0;
+        for (int i = 0; i < loads.length; i++) {
+            loads[i] = stages.get(i).sample(cursors[i]);
+            StageLoad top = loads[busiest];
+            if (loads[i].utilization > top.utilization
+                || (loads[i].utilization == top.utilization && loads[i].queueDepth > top.queueDepth)) {
+                busiest = i;
+            }
+        }
+        bottleneck = busiest;
+        bottleneckUtilization = loads[busiest].utilization;
+
+        double target = (lowUtilization + highUtilization) / 2;
+        for (int i = 0; i < loads.length; i++) {
+            int[] limit = limits.get(i);
+            if (limit == null) {
+                continue;
+            }
+            StageLoad load = loads[i];
+            // Replicas' worth of work the stage did over the window
+            double demand = load.utilization * load.replicas;
+            if (i == busiest && load.utilization > highUtilization && load.replicas < limit[1]) {
+                int replicas = Math.min(limit[1], Math.max(load.replicas + 1, (int) Math.ceil(demand / target)));
+                stages.get(i).setReplicas(replicas, null);
+                scaleUps.incrementAndGet();
+            } else if (load.utilization < lowUtilization && load.replicas > limit[0]
+                && demand / (load.replicas - 1) <= highUtilization) {
+                stages.get(i).setReplicas(load.replicas - 1, null);
+                scaleDowns.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Gets the index of the stage that was busiest at the last adjustment, or -1 before the first
+     */
+    int getBottleneck() {
+        return bottleneck;
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lowUtilization", lowUtilization);
+        stats.put("highUtilization", highUtilization);
+        stats.put("intervalMillis", interval.toMillis());
+        stats.put("scaleUps", scaleUps.get());
+        stats.put("scaleDowns", scaleDowns.get());
+        int stage = bottleneck;
+        stats.put("bottleneckStage", stage >= 0 ? stages.get(stage).getAgentId() : null);
+        stats.put("bottleneckUtilization", bottleneckUtilization);
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of a pipeline at one point in time: every message that was submitted but not yet taken
+ * as a result, with the stages it had already passed and the message those stages produced.
+ * Stored as JSON through the persistence manager, so message payloads come back as JSON values.
+ */
+public class PipelineCheckpoint {
+    private String pipeline;
+    private long checkpointId;
+    private long takenAtMillis;
+    // Stage agent ids in pipeline order; a restore needs the same layout
+    private List<String> stages = new ArrayList<>();
+    // One entry per message: sequence, completedStages and the message fields
+    private List<Map<String, Object>> messages = new ArrayList<>();
+
+    public String getPipeline() { return pipeline; }
+    public void setPipeline(String pipeline) { this.pipeline = pipeline; }
+    public long getCheckpointId() { return checkpointId; }
+    public void setCheckpointId(long checkpointId) { this.checkpointId = checkpointId; }
+    public long getTakenAtMillis() { return takenAtMillis; }
+    public void setTakenAtMillis(long takenAtMillis) { this.takenAtMillis = takenAtMillis; }
+    public List<String> getStages() { return stages; }
+    public void setStages(List<String> stages) { this.stages = stages; }
+    public List<Map<String, Object>> getMessages() { return messages; }
+    public void setMessages(List<Map<String, Object>> messages) { this.messages = messages; }
+}
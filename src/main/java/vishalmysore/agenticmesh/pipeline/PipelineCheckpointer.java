@@ -0,0 +1,205 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.persistence.PersistenceManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes periodic checkpoints of a running pipeline on a background thread.
+ * <p>
+ * Stages are stateless, so a pipeline's progress is fully described by its in-flight messages and
+ * how many stages each has passed. Every submitted message is registered here until it is taken as a
+ * result or dropped, and stages advance a message's stage count together with its content. A
+ * checkpoint copies that state message by message while the stream keeps flowing and stores it
+ * through the persistence manager; the messages on the hot path only pay for the registration and
+ * an uncontended lock per stage.
+ */
+final class PipelineCheckpointer {
+    private final String pipeline;
+    private final PersistenceManager persistence;
+    private final String key;
+    private final Duration interval;
+    private final List<String> stageIds;
+    private final Map<Long, PipelineItem> inFlight;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong checkpointCount;
+    private final AtomicLong totalCheckpointNanos;
+    private volatile long lastCheckpointNanos;
+    private volatile int lastCheckpointMessages;
+    private volatile int restoredMessages;
+    private long nextCheckpointId;
+
+    PipelineCheckpointer(String pipeline, PersistenceManager persistence, String key, Duration interval,
+                         List<String> stageIds) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.pipeline = pipeline;
+        this.persistence = persistence;
+        this.key = key;
+        this.interval = interval;
+        this.stageIds = List.copyOf(stageIds);
+        this.inFlight = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, pipeline + "-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointCount = new AtomicLong();
+        this.totalCheckpointNanos = new AtomicLong();
+    }
+
+    void track(PipelineItem item) {
+        inFlight.put(item.sequence, item);
+    }
+
+    void untrack(PipelineItem item) {
+        inFlight.remove(item.sequence);
+    }
+
+    /**
+     * Loads the last stored checkpoint of this pipeline
+     *
+     * @return the checkpoint, or null if there is none or it cannot be read
+     * @throws IllegalStateException if it was taken with different stages
+     */
+    PipelineCheckpoint load() {
+        PipelineCheckpoint checkpoint;
+        try {
+            checkpoint = persistence.load(key, PipelineCheckpoint.class);
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring unreadable checkpoint of pipeline " + pipeline + ": " + e.getMessage());
+            return null;
+        }
+        if (checkpoint != null && !checkpoint.getStages().equals(stageIds)) {
+            throw new IllegalStateException("Checkpoint of pipeline " + pipeline + " was taken with stages "
+                + checkpoint.getStages() + ", not " + stageIds);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Runs the restore first, then checkpoints at the configured interval
+     */
+    void start(Runnable restore) {
+        if (restore != null) {
+            scheduler.execute(restore);
+        }
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to checkpoint pipeline " + pipeline + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the progress of every in-flight message and stores it
+     */
+    synchronized PipelineCheckpoint checkpoint() {
+        long started = System.nanoTime();
+        List<PipelineItem> items = new ArrayList<>(inFlight.values());
+        items.sort(Comparator.comparingLong(item -> item.sequence));
+        List<Map<String, Object>> entries = new ArrayList<>(items.size());
+        for (PipelineItem item : items) {
+            Message message;
+            int completedStages;
+            synchronized (item) {
+                message = item.message;
+                completedStages = item.completedStages;
+            }
+            entries.add(toEntry(item.sequence, completedStages, message));
+        }
+        PipelineCheckpoint checkpoint = new PipelineCheckpoint();
+        checkpoint.setPipeline(pipeline);
+        checkpoint.setCheckpointId(nextCheckpointId++);
+        checkpoint.setTakenAtMillis(System.currentTimeMillis());
+        checkpoint.setStages(stageIds);
+        checkpoint.setMessages(entries);
+        persistence.store(key, checkpoint);
+
+        long elapsed = System.nanoTime() - started;
+        lastCheckpointNanos = elapsed;
+        lastCheckpointMessages = entries.size();
+        totalCheckpointNanos.addAndGet(elapsed);
+        checkpointCount.incrementAndGet();
+        return checkpoint;
+    }
+
+    /**
+     * Stops checkpointing. The last checkpoint is kept while messages are still in flight, for example
+     * results nobody took yet; otherwise it is deleted so the next start begins empty.
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(interval.toMillis() + 1_000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (inFlight.isEmpty()) {
+            persistence.delete(key);
+        } else {
+            checkpoint();
+        }
+    }
+
+    void setRestoredMessages(int restoredMessages) {
+        this.restoredMessages = restoredMessages;
+    }
+
+    void addStatistics(Map<String, Object> stats) {
+        long checkpoints = checkpointCount.get();
+        stats.put("checkpoints", checkpoints);
+        stats.put("lastCheckpointMillis", lastCheckpointNanos / 1e6);
+        stats.put("averageCheckpointMillis", checkpoints == 0 ? 0.0 : totalCheckpointNanos.get() / 1e6 / checkpoints);
+        stats.put("lastCheckpointMessages", lastCheckpointMessages);
+        stats.put("trackedMessages", inFlight.size());
+        stats.put("restoredMessages", restoredMessages);
+    }
+
+    private static Map<String, Object> toEntry(long sequence, int completedStages, Message message) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("sequence", sequence);
+        entry.put("completedStages", completedStages);
+        entry.put("id", message.getId());
+        entry.put("senderId", message.getSenderId());
+        entry.put("receiverId", message.getReceiverId());
+        entry.put("protocol", message.getProtocol());
+        entry.put("payload", message.getPayload());
+        entry.put("type", message.getType().name());
+        entry.put("correlationId", message.getCorrelationId());
+        entry.put("priority", message.getPriority().name());
+        entry.put("deadline", message.getDeadline() != null ? message.getDeadline().toEpochMilli() : null);
+        return entry;
+    }
+
+    static PipelineItem fromEntry(Map<String, Object> entry) {
+        Message message = new Message((String) entry.get("id"), (String) entry.get("senderId"),
+            (String) entry.get("receiverId"), (String) entry.get("protocol"), entry.get("payload"),
+            Message.MessageType.valueOf((String) entry.get("type")), (String) entry.get("correlationId"))
+            .withPriority(Message.MessagePriority.valueOf((String) entry.get("priority")));
+        Object deadline = entry.get("deadline");
+        if (deadline != null) {
+            message = message.withDeadline(Instant.ofEpochMilli(((Number) deadline).longValue()));
+        }
+        return new PipelineItem(((Number) entry.get("sequence")).longValue(), message,
+            ((Number) entry.get("completedStages")).intValue());
+    }
+}
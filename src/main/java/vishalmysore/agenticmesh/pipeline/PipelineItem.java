@@ -0,0 +1,36 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import vishalmysore.agenticmesh.core.Message;
+
+/**
+ * A message travelling through the pipeline together with its submission order and time
+ */
+final class PipelineItem {
+    // Passed down the stages after the last submitted item to let each stage finish and exit
+    static final PipelineItem END = new PipelineItem(-1, null);
+
+    final long sequence;
+    final long submittedNanos;
+    // Both written under the item's lock, so a checkpoint never sees one without the other
+    Message message;
+    int completedStages;
+
+    PipelineItem(long sequence, Message message) {
+        this(sequence, message, 0);
+    }
+
+    PipelineItem(long sequence, Message message, int completedStages) {
+        this.sequence = sequence;
+        this.submittedNanos = System.nanoTime();
+        this.message = message;
+        this.completedStages = completedStages;
+    }
+
+    /**
+     * Records that a stage is done with the item and what it passes on
+     */
+    synchronized void advance(Message result) {
+        message = result;
+        completedStages++;
+    }
+}
@@ -0,0 +1,535 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.persistence.PersistenceManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Streaming execution of a pipeline: every stage runs on its own threads and the stages are connected
+ * by bounded queues.
+ * <p>
+ * Messages enter through {@link #submit(Message)} and leave the last stage through
+ * {@link #takeResult()}, minus the ones a stage dropped or failed on. All stages work at the same
+ * time on different messages, so throughput is set by the slowest stage rather than by the sum of
+ * all stages; a slow stage can be given replicas that work in parallel. Messages come out in
+ * submission order unless a stage is set to unordered. When a stage falls behind, the queues in
+ * front of it fill up and submitters block.
+ * <p>
+ * Adjacent agents marked lightweight are fused into one stage, so cheap in-process transforms do not
+ * each pay a queue hop and a thread handoff.
+ * <p>
+ * With checkpoints enabled, the messages in flight and the stages each has passed are stored
+ * periodically without pausing the stream. A pipeline started with the same stages picks up from
+ * the last checkpoint: every message re-enters at the stage it was waiting for or being processed
+ * by. Delivery is at least once; results taken after the last checkpoint are produced again.
+ * <p>
+ * Every stage reports its utilization, arrival rate, queue depth and service time histogram; the
+ * stage with the highest utilization is the bottleneck. An optional autoscaler resizes stages with
+ * replica limits to keep the bottleneck inside a utilization band.
+ */
+public class PipelineRuntime {
+    // How long a blocked submitter waits for room before it rechecks whether the pipeline stopped
+    private static final long SUBMIT_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final String name;
+    private final List<PipelineStage> stages;
+    // Agent id to the index of the stage that runs it
+    private final Map<String, Integer> stageIndex;
+    private final BlockingQueue<PipelineItem> results;
+    private final AtomicLong sequence;
+    private final AtomicLong completedCount;
+    private final AtomicLong totalLatencyNanos;
+    private final CountDownLatch restored;
+    // Submitters hold the read side while they put; stop() takes the write side to close the input
+    private final ReadWriteLock inputGate;
+    private PipelineCheckpointer checkpointer;
+    private PipelineAutoscaler autoscaler;
+    private volatile boolean running;
+
+    /**
+     * @param agents        the stages in pipeline order
+     * @param queueCapacity messages each stage's input queue and the results queue hold at most
+     */
+    public PipelineRuntime(String name, List<MeshParticipantAgent> agents, int queueCapacity) {
+        this(name, agents, queueCapacity, Set.of());
+    }
+
+    /**
+     * @param agents        the agents in pipeline order
+     * @param queueCapacity messages each stage's input queue and the results queue hold at most
+     * @param lightweight   ids of agents that are cheap and never block; each run of adjacent ones is
+     *                      fused into a single stage that calls them in turn on one thread
+     */
+    public PipelineRuntime(String name, List<MeshParticipantAgent> agents, int queueCapacity, Set<String> lightweight) {
+        if (agents.isEmpty() || queueCapacity < 1) {
+            throw new IllegalArgumentException("Pipeline needs at least one agent and a positive queue capacity");
+        }
+        this.name = name;
+        this.results = new ArrayBlockingQueue<>(queueCapacity);
+        this.stageIndex = new HashMap<>();
+        List<MeshParticipantAgent> stageAgents = fuse(agents, lightweight);
+        this.stages = new ArrayList<>(stageAgents.size());
+        // Built back to front so every stage knows the queue it feeds
+        PipelineStage[] built = new PipelineStage[stageAgents.size()];
+        BlockingQueue<PipelineItem> output = results;
+        for (int i = stageAgents.size() - 1; i >= 0; i--) {
+            built[i] = new PipelineStage(stageAgents.get(i), queueCapacity, output, i == stageAgents.size() - 1);
+            output = built[i].input();
+        }
+        this.stages.addAll(List.of(built));
+        this.sequence = new AtomicLong();
+        this.completedCount = new AtomicLong();
+        this.totalLatencyNanos = new AtomicLong();
+        this.restored = new CountDownLatch(1);
+        this.inputGate = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Groups each run of adjacent lightweight agents into one fused stage agent
+     */
+    private List<MeshParticipantAgent> fuse(List<MeshParticipantAgent> agents, Set<String> lightweight) {
+        List<MeshParticipantAgent> stageAgents = new ArrayList<>();
+        List<MeshParticipantAgent> run = new ArrayList<>();
+        for (MeshParticipantAgent agent : agents) {
+            if (lightweight.contains(agent.getId())) {
+                run.add(agent);
+                continue;
+            }
+            addStage(stageAgents, run);
+            run.clear();
+            stageIndex.put(agent.getId(), stageAgents.size());
+            stageAgents.add(agent);
+        }
+        addStage(stageAgents, run);
+        return stageAgents;
+    }
+
+    private void addStage(List<MeshParticipantAgent> stageAgents, List<MeshParticipantAgent> run) {
+        if (run.isEmpty()) {
+            return;
+        }
+        for (MeshParticipantAgent agent : run) {
+            stageIndex.put(agent.getId(), stageAgents.size());
+        }
+        stageAgents.add(run.size() == 1 ? run.get(0) : new FusedStageAgent(run));
+    }
+
+    /**
+     * Gets the index of the stage that runs the agent; fused agents share one stage
+     *
+     * @throws IllegalArgumentException if the agent is not part of the pipeline
+     */
+    public int getStageIndex(String agentId) {
+        Integer index = stageIndex.get(agentId);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown pipeline agent: " + agentId);
+        }
+        return index;
+    }
+
+    /**
+     * Stores the pipeline's progress under the key at the given interval, and restores it from there
+     * on start
+     *
+     * @throws IllegalStateException if the pipeline was started already
+     */
+    public synchronized void enableCheckpoints(PersistenceManager persistence, String key, Duration interval) {
+        if (running || checkpointer != null) {
+            throw new IllegalStateException("Checkpoints of pipeline " + name + " are set up before it starts");
+        }
+        List<String> stageIds = new ArrayList<>(stages.size());
+        for (PipelineStage stage : stages) {
+            stageIds.add(stage.getAgentId());
+        }
+        PipelineCheckpointer created = new PipelineCheckpointer(name, persistence, key, interval, stageIds);
+        for (PipelineStage stage : stages) {
+            stage.setDropListener(created::untrack);
+        }
+        checkpointer = created;
+    }
+
+    /**
+     * Lets an autoscaler resize stages every interval, keeping the bottleneck stage's utilization
+     * between the two bounds. Only stages given limits with {@link #setReplicaLimits} are resized.
+     *
+     * @throws IllegalStateException if the pipeline was started already
+     */
+    public synchronized void enableAutoscaling(double lowUtilization, double highUtilization, Duration interval) {
+        if (running || autoscaler != null) {
+            throw new IllegalStateException("Autoscaling of pipeline " + name + " is set up before it starts");
+        }
+        autoscaler = new PipelineAutoscaler(name, stages, lowUtilization, highUtilization, interval);
+    }
+
+    /**
+     * Sets the replicas the autoscaler may give a stage and moves the current count inside them.
+     * Adding replicas uses the factory given to {@link #setReplicas} before.
+     *
+     * @throws IllegalStateException    if autoscaling is not enabled, or the stage is fused and max is above 1
+     * @throws IllegalArgumentException if the stage has no replica factory and max is above 1
+     */
+    public synchronized void setReplicaLimits(int stage, int minReplicas, int maxReplicas) {
+        if (autoscaler == null) {
+            throw new IllegalStateException("Autoscaling of pipeline " + name + " is not enabled");
+        }
+        if (minReplicas < 1 || maxReplicas < minReplicas) {
+            throw new IllegalArgumentException("Replica limits must satisfy 1 <= min <= max");
+        }
+        PipelineStage target = stages.get(stage);
+        if (maxReplicas > 1 && target.isFused()) {
+            throw new IllegalStateException("Stage " + target.getAgentId() + " is fused and cannot have replicas");
+        }
+        if (maxReplicas > 1 && !target.hasReplicaFactory()) {
+            throw new IllegalArgumentException("Scaling stage " + target.getAgentId() + " needs a replica factory");
+        }
+        target.setReplicas(Math.max(minReplicas, Math.min(maxReplicas, target.getReplicas())), null);
+        autoscaler.setLimits(stage, minReplicas, maxReplicas);
+    }
+
+    /**
+     * Gets the agent id of the stage with the highest utilization since the previous sample
+     */
+    public String getBottleneckStage() {
+        PipelineStage busiest = null;
+        double highest = -1;
+        for (PipelineStage stage : stages) {
+            double utilization = stage.sample().utilization;
+            if (utilization > highest) {
+                busiest = stage;
+                highest = utilization;
+            }
+        }
+        return busiest.getAgentId();
+    }
+
+    /**
+     * Starts the replica threads of every stage. With checkpoints enabled, the messages of the last
+     * checkpoint are put back in the background first; submit waits until they are.
+     *
+     * @throws IllegalStateException if the checkpoint was taken with different stages
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        PipelineCheckpoint checkpoint = checkpointer != null ? checkpointer.load() : null;
+        running = true;
+        for (int i = 0; i < stages.size(); i++) {
+            stages.get(i).start(name + "-stage-" + i);
+        }
+        if (autoscaler != null) {
+            autoscaler.start();
+        }
+        if (checkpointer == null) {
+            restored.countDown();
+            return;
+        }
+        List<PipelineItem> items = new ArrayList<>();
+        if (checkpoint != null) {
+            for (Map<String, Object> entry : checkpoint.getMessages()) {
+                items.add(PipelineCheckpointer.fromEntry(entry));
+            }
+        }
+        // New messages continue after the restored ones
+        items.forEach(item -> sequence.getAndUpdate(next -> Math.max(next, item.sequence + 1)));
+        checkpointer.setRestoredMessages(items.size());
+        checkpointer.start(() -> restore(items));
+    }
+
+    /**
+     * Puts restored items back, the ones furthest along first so no queue waits on one behind it
+     */
+    private void restore(List<PipelineItem> items) {
+        items.sort(Comparator.<PipelineItem>comparingInt(item -> item.completedStages).reversed()
+            .thenComparingLong(item -> item.sequence));
+        // All tracked up front, so a stop during the restore still checkpoints the ones not put back
+        items.forEach(checkpointer::track);
+        try {
+            for (PipelineItem item : items) {
+                if (item.completedStages >= stages.size()) {
+                    results.put(item);
+                } else {
+                    stages.get(item.completedStages).input().put(item);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            restored.countDown();
+        }
+    }
+
+    /**
+     * Takes a checkpoint now instead of waiting for the next interval
+     *
+     * @throws IllegalStateException if checkpoints are not enabled
+     */
+    public PipelineCheckpoint checkpoint() {
+        if (checkpointer == null) {
+            throw new IllegalStateException("Checkpoints of pipeline " + name + " are not enabled");
+        }
+        return checkpointer.checkpoint();
+    }
+
+    /**
+     * Sets how many agents process a stage's messages in parallel. Can be changed while the pipeline
+     * runs; added replicas are created by the factory and initialized, removed ones finish their
+     * current message and are shut down.
+     *
+     * @param factory creates replica agents; may be null if one was given before or no replica is added
+     */
+    public void setReplicas(int stage, int replicas, Supplier<? extends MeshParticipantAgent> factory) {
+        stages.get(stage).setReplicas(replicas, factory);
+    }
+
+    public int getReplicas(int stage) {
+        return stages.get(stage).getReplicas();
+    }
+
+    /**
+     * Sets whether a stage passes messages on in the order it received them, which is the default.
+     * An unordered stage with several replicas passes each message on as soon as it is done.
+     *
+     * @throws IllegalStateException if the pipeline was started already
+     */
+    public void setOrdered(int stage, boolean ordered) {
+        stages.get(stage).setOrdered(ordered);
+    }
+
+    /**
+     * Lets a stage's replicas take up to batchSize messages at once and hand them to
+     * {@link MeshParticipantAgent#transformBatch(List)}. A batch is handed over as soon as it is full
+     * or maxLinger after its first message arrived; zero linger takes only what is already queued.
+     * Can be changed while the pipeline runs.
+     */
+    public void setBatching(int stage, int batchSize, Duration maxLinger) {
+        stages.get(stage).setBatching(batchSize, maxLinger.toNanos());
+    }
+
+    /**
+     * Gets the share of time a stage's replicas spent processing, between 0 and 1
+     */
+    public double getOccupancy(int stage) {
+        return stages.get(stage).getOccupancy();
+    }
+
+    /**
+     * Hands a message to the first stage, waiting while its queue is full
+     *
+     * @throws IllegalStateException      if the pipeline is not running or stops while waiting
+     * @throws RejectedExecutionException if interrupted while waiting
+     */
+    public void submit(Message message) {
+        checkRunning();
+        try {
+            restored.await();
+            enqueue(message, Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for pipeline capacity", e);
+        }
+    }
+
+    /**
+     * Hands a message to the first stage, waiting at most the timeout for room in its queue
+     *
+     * @return false if the first stage was still full
+     * @throws IllegalStateException if the pipeline is not running or stops while waiting
+     */
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        checkRunning();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!restored.await(timeout, unit)) {
+            return false;
+        }
+        return enqueue(message, deadline - System.nanoTime());
+    }
+
+    /**
+     * Puts a new item into the first stage's queue, rechecking between short waits that the pipeline
+     * still runs. The check and the put happen under the input gate, so no item lands behind the END
+     * marker that stop() sends down the pipeline.
+     */
+    private boolean enqueue(Message message, long timeoutNanos) throws InterruptedException {
+        // Wraps around for Long.MAX_VALUE, which the subtraction below undoes
+        long deadline = System.nanoTime() + timeoutNanos;
+        BlockingQueue<PipelineItem> input = stages.get(0).input();
+        PipelineItem item = null;
+        boolean accepted = false;
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                inputGate.readLock().lockInterruptibly();
+                try {
+                    checkRunning();
+                    if (item == null) {
+                        item = track(new PipelineItem(sequence.getAndIncrement(), message));
+                    }
+                    if (input.offer(item, Math.max(0, Math.min(remaining, SUBMIT_RECHECK_NANOS)),
+                        TimeUnit.NANOSECONDS)) {
+                        accepted = true;
+                        return true;
+                    }
+                } finally {
+                    inputGate.readLock().unlock();
+                }
+                if (remaining <= SUBMIT_RECHECK_NANOS) {
+                    return false;
+                }
+            }
+        } finally {
+            if (!accepted && item != null) {
+                untrack(item);
+            }
+        }
+    }
+
+    private PipelineItem track(PipelineItem item) {
+        if (checkpointer != null) {
+            checkpointer.track(item);
+        }
+        return item;
+    }
+
+    private void untrack(PipelineItem item) {
+        if (checkpointer != null) {
+            checkpointer.untrack(item);
+        }
+    }
+
+    /**
+     * Waits for the next message out of the last stage
+     */
+    public Message takeResult() throws InterruptedException {
+        return complete(results.take());
+    }
+
+    /**
+     * Waits at most the timeout for the next message out of the last stage
+     *
+     * @return the message, or null if none arrived in time
+     */
+    public Message pollResult(long timeout, TimeUnit unit) throws InterruptedException {
+        PipelineItem item = results.poll(timeout, unit);
+        return item != null ? complete(item) : null;
+    }
+
+    /**
+     * Moves the messages waiting at the end of the pipeline into the collection without blocking
+     *
+     * @return the number of messages moved
+     */
+    public int drainResults(Collection<? super Message> into, int maxMessages) {
+        int drained = 0;
+        PipelineItem item;
+        while (drained < maxMessages && (item = results.poll()) != null) {
+            into.add(complete(item));
+            drained++;
+        }
+        return drained;
+    }
+
+    private Message complete(PipelineItem item) {
+        untrack(item);
+        completedCount.incrementAndGet();
+        totalLatencyNanos.addAndGet(System.nanoTime() - item.submittedNanos);
+        return item.message;
+    }
+
+    /**
+     * Stops accepting messages and lets the stages finish what was submitted before, as long as
+     * results are being taken. Submitters still waiting for room are turned away. Stages still busy
+     * when the timeout runs out are interrupted. With checkpoints enabled, a final checkpoint keeps
+     * whatever is still in flight, results not taken yet included; if nothing is, the stored
+     * checkpoint is deleted.
+     *
+     * @return true if every stage finished its queue before the timeout
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            if (!running) {
+                return true;
+            }
+            // Waits out submitters in the middle of a put; later ones see the pipeline stopped
+            inputGate.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                inputGate.writeLock().unlock();
+            }
+        }
+        if (autoscaler != null) {
+            autoscaler.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = stages.get(0).input().offer(PipelineItem.END, timeout, unit);
+        for (PipelineStage stage : stages) {
+            if (!drained) {
+                break;
+            }
+            drained = stage.awaitExit(deadline);
+        }
+        if (checkpointer != null) {
+            // Before halting, so interrupted messages are kept at the stage they were in
+            checkpointer.shutdown();
+        }
+        if (!drained) {
+            stages.forEach(PipelineStage::halt);
+        }
+        return drained;
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new IllegalStateException("Pipeline " + name + " is not running");
+        }
+    }
+
+    public boolean isRunning() { return running; }
+    public int getStageCount() { return stages.size(); }
+    public long getSubmittedCount() { return sequence.get(); }
+    public long getCompletedCount() { return completedCount.get(); }
+
+    /**
+     * Gets pipeline totals, the bottleneck stage and, under "stages", the counters of every stage in order
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long completed = completedCount.get();
+        stats.put("submittedMessages", sequence.get());
+        stats.put("completedMessages", completed);
+        stats.put("pendingResults", results.size());
+        stats.put("averageLatencyMillis", completed == 0 ? 0.0 : totalLatencyNanos.get() / 1e6 / completed);
+        if (checkpointer != null) {
+            checkpointer.addStatistics(stats);
+        }
+        if (autoscaler != null) {
+            stats.put("autoscaler", autoscaler.getStatistics());
+        }
+        List<Map<String, Object>> stageStats = new ArrayList<>(stages.size());
+        for (PipelineStage stage : stages) {
+            stageStats.add(stage.getStatistics());
+        }
+        stats.put("stages", stageStats);
+        stats.put("bottleneckStage", getBottleneckStage());
+        return stats;
+    }
+}
@@ -0,0 +1,576 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One agent of the pipeline with its bounded input queue and the replica threads that drain it.
+ * <p>
+ * Each replica thread takes an item, lets its agent transform it and puts the result into the output
+ * queue, which is the next stage's input or the pipeline's results. A full output queue blocks the
+ * thread, so its own input fills up in turn and a slow stage pushes back all the way to the submitter.
+ * With batching, a replica takes up to the batch size at once, waiting at most the linger time for
+ * the batch to fill, and hands the whole batch to its agent in one call.
+ * <p>
+ * With several replicas the batches finish out of order. An ordered stage numbers batches as they are
+ * taken and holds finished ones in a reorder buffer until all earlier batches have left. The buffer
+ * is bounded by the queue capacity: a replica does not take a new batch while that many are
+ * outstanding.
+ */
+final class PipelineStage {
+    // Samples closer together than this return the previous load instead of a noisy window
+    private static final long MIN_SAMPLE_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final MeshParticipantAgent agent;
+    private final BlockingQueue<PipelineItem> input;
+    private final BlockingQueue<PipelineItem> output;
+    private final boolean last;
+    // Threads still running, retired ones included until they exit
+    private final List<Worker> workers;
+    // Workers that are not retired, oldest first; guarded by this
+    private final List<Worker> active;
+    private final ReentrantLock takeLock;
+    private final ReentrantLock emitLock;
+    private final Semaphore reorderWindow;
+    private final Map<Long, List<PipelineItem>> reorderBuffer;
+    private final AtomicLong processedCount;
+    private final AtomicLong failedCount;
+    private final AtomicLong filteredCount;
+    private final AtomicLong batchCount;
+    private final AtomicLong busyNanos;
+    private final AtomicLong exitedWorkerNanos;
+    private final AtomicLong takenCount;
+    private final ServiceTimeHistogram serviceTimes;
+    // Window of the statistics and bottleneck reads; the autoscaler samples through a cursor of its own
+    private final SampleCursor statisticsCursor;
+    private Supplier<? extends MeshParticipantAgent> replicaFactory;
+    // Told about items that leave the pipeline here because they failed or were filtered out
+    private volatile Consumer<PipelineItem> dropListener;
+    private int replicas;
+    private boolean ordered;
+    private volatile int batchSize;
+    private volatile long maxLingerNanos;
+    private String threadName;
+    private int nextWorkerId;
+    private boolean finishing;
+    private volatile boolean halted;
+    // Guarded by takeLock
+    private long nextTicket;
+    // Guarded by emitLock
+    private long nextToEmit;
+
+    /**
+     * @param output the next stage's input, or the results queue for the last stage
+     */
+    PipelineStage(MeshParticipantAgent agent, int queueCapacity, BlockingQueue<PipelineItem> output, boolean last) {
+        this.agent = agent;
+        this.input = new ArrayBlockingQueue<>(queueCapacity);
+        this.output = output;
+        this.last = last;
+        this.workers = new CopyOnWriteArrayList<>();
+        this.active = new ArrayList<>();
+        this.takeLock = new ReentrantLock();
+        this.emitLock = new ReentrantLock();
+        this.reorderWindow = new Semaphore(queueCapacity);
+        this.reorderBuffer = new HashMap<>();
+        this.processedCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.filteredCount = new AtomicLong();
+        this.batchCount = new AtomicLong();
+        this.busyNanos = new AtomicLong();
+        this.exitedWorkerNanos = new AtomicLong();
+        this.takenCount = new AtomicLong();
+        this.serviceTimes = new ServiceTimeHistogram();
+        this.statisticsCursor = new SampleCursor();
+        this.replicas = 1;
+        this.ordered = true;
+        this.batchSize = 1;
+    }
+
+    synchronized void start(String threadName) {
+        this.threadName = threadName;
+        adjustWorkers();
+    }
+
+    /**
+     * Sets the number of replicas. Added replicas are created by the factory and initialized; removed
+     * ones finish their current item and are shut down. The stage's own agent is never removed.
+     *
+     * @param factory creates replica agents; may be null if one was given before or no replica is added
+     */
+    synchronized void setReplicas(int replicas, Supplier<? extends MeshParticipantAgent> factory) {
+        if (replicas < 1) {
+            throw new IllegalArgumentException("A stage needs at least one replica");
+        }
+        if (factory != null) {
+            replicaFactory = factory;
+        }
+        if (replicas > 1 && agent instanceof FusedStageAgent) {
+            throw new IllegalStateException("Stage " + agent.getId() + " is fused and cannot have replicas");
+        }
+        if (replicas > 1 && replicaFactory == null) {
+            throw new IllegalArgumentException(
+                "Adding replicas to stage " + agent.getId() + " needs a replica factory");
+        }
+        this.replicas = replicas;
+        if (threadName != null) {
+            adjustWorkers();
+        }
+    }
+
+    synchronized void setOrdered(boolean ordered) {
+        if (threadName != null) {
+            throw new IllegalStateException("Output order of stage " + agent.getId() + " is fixed once it starts");
+        }
+        this.ordered = ordered;
+    }
+
+    /**
+     * Sets how many items a replica takes at once and how long it waits for a batch to fill
+     */
+    void setBatching(int batchSize, long maxLingerNanos) {
+        if (batchSize < 1 || maxLingerNanos < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and linger time not negative");
+        }
+        this.batchSize = batchSize;
+        this.maxLingerNanos = maxLingerNanos;
+    }
+
+    private void adjustWorkers() {
+        if (finishing) {
+            return;
+        }
+        while (active.size() < replicas) {
+            MeshParticipantAgent replica = agent;
+            if (!active.isEmpty()) {
+                replica = replicaFactory.get();
+                replica.initialize();
+            }
+            Worker worker = new Worker(replica);
+            worker.thread = new Thread(() -> run(worker), threadName + "-" + nextWorkerId++);
+            worker.thread.setDaemon(true);
+            active.add(worker);
+            workers.add(worker);
+            worker.thread.start();
+        }
+        while (active.size() > replicas) {
+            active.remove(active.size() - 1).retire();
+        }
+    }
+
+    private void run(Worker worker) {
+        List<PipelineItem> batch = new ArrayList<>();
+        try {
+            while (!worker.retired) {
+                long ticket = -1;
+                if (ordered) {
+                    reorderWindow.acquire();
+                    try {
+                        takeLock.lockInterruptibly();
+                        try {
+                            takeBatch(batch);
+                            ticket = nextTicket++;
+                        } finally {
+                            takeLock.unlock();
+                        }
+                    } catch (InterruptedException e) {
+                        reorderWindow.release();
+                        throw e;
+                    }
+                } else {
+                    takeBatch(batch);
+                }
+                // The end marker is the last item ever submitted, so it can only close a batch
+                boolean end = batch.get(batch.size() - 1) == PipelineItem.END;
+                if (end) {
+                    batch.remove(batch.size() - 1);
+                }
+                takenCount.addAndGet(batch.size());
+                worker.markBusy();
+                List<PipelineItem> results = batch.isEmpty() ? List.of() : process(worker, batch);
+                if (ordered) {
+                    emitInOrder(ticket, results);
+                } else {
+                    for (PipelineItem result : results) {
+                        output.put(result);
+                    }
+                }
+                worker.markIdle();
+                batch.clear();
+                if (end) {
+                    finish(worker);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Retired while idle, or stopped without draining
+        } finally {
+            exit(worker);
+        }
+    }
+
+    /**
+     * Waits for an item, then adds whatever else is queued up to the batch size. With a linger time
+     * the batch waits that long after its first item for more items to fill it.
+     */
+    private void takeBatch(List<PipelineItem> batch) throws InterruptedException {
+        batch.add(input.take());
+        int size = batchSize;
+        if (size == 1 || batch.get(0) == PipelineItem.END) {
+            return;
+        }
+        long deadline = System.nanoTime() + maxLingerNanos;
+        input.drainTo(batch, size - batch.size());
+        while (batch.size() < size && batch.get(batch.size() - 1) != PipelineItem.END) {
+            long remaining = deadline - System.nanoTime();
+            PipelineItem item;
+            try {
+                item = remaining > 0 ? input.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            } catch (InterruptedException e) {
+                // The items taken so far are processed before the interrupt is acted on
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (item == null) {
+                return;
+            }
+            batch.add(item);
+            input.drainTo(batch, size - batch.size());
+        }
+    }
+
+    /**
+     * @return the items to pass on, without the ones that failed or were filtered out
+     */
+    private List<PipelineItem> process(Worker worker, List<PipelineItem> batch) {
+        MeshParticipantAgent replica = worker.replica;
+        long started = System.nanoTime();
+        worker.processingSince = started;
+        batchCount.incrementAndGet();
+        try {
+            if (batchSize == 1 && batch.size() == 1) {
+                PipelineItem item = batch.get(0);
+                return passOn(item, replica.transform(item.message)) ? List.of(item) : List.of();
+            }
+            List<Message> messages = new ArrayList<>(batch.size());
+            for (PipelineItem item : batch) {
+                messages.add(item.message);
+            }
+            List<Message> transformed = replica.transformBatch(messages);
+            if (transformed.size() != batch.size()) {
+                throw new IllegalStateException("transformBatch returned " + transformed.size()
+                    + " results for " + batch.size() + " messages");
+            }
+            List<PipelineItem> results = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (passOn(batch.get(i), transformed.get(i))) {
+                    results.add(batch.get(i));
+                }
+            }
+            return results;
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            batch.forEach(this::dropped);
+            System.err.println("Error in pipeline stage " + agent.getId() + ": " + e.getMessage());
+            return List.of();
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            busyNanos.addAndGet(elapsed);
+            worker.processingSince = 0;
+            serviceTimes.record(elapsed / batch.size(), batch.size());
+        }
+    }
+
+    private boolean passOn(PipelineItem item, Message result) {
+        processedCount.incrementAndGet();
+        if (result == null) {
+            filteredCount.incrementAndGet();
+            dropped(item);
+            return false;
+        }
+        item.advance(result);
+        return true;
+    }
+
+    private void dropped(PipelineItem item) {
+        Consumer<PipelineItem> listener = dropListener;
+        if (listener != null) {
+            listener.accept(item);
+        }
+    }
+
+    void setDropListener(Consumer<PipelineItem> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    String getAgentId() {
+        return agent.getId();
+    }
+
+    boolean isFused() {
+        return agent instanceof FusedStageAgent;
+    }
+
+    synchronized boolean hasReplicaFactory() {
+        return replicaFactory != null;
+    }
+
+    /**
+     * Buffers a batch's results under its ticket and passes on every batch whose predecessors have left
+     */
+    private void emitInOrder(long ticket, List<PipelineItem> results) throws InterruptedException {
+        emitLock.lockInterruptibly();
+        try {
+            reorderBuffer.put(ticket, results);
+            List<PipelineItem> next;
+            while ((next = reorderBuffer.remove(nextToEmit)) != null) {
+                nextToEmit++;
+                reorderWindow.release();
+                for (PipelineItem item : next) {
+                    output.put(item);
+                }
+            }
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * Handles the end marker: lets the other replicas finish their items, then passes the marker on
+     */
+    private void finish(Worker worker) throws InterruptedException {
+        synchronized (this) {
+            finishing = true;
+            for (Worker other : active) {
+                if (other != worker) {
+                    other.retire();
+                }
+            }
+        }
+        for (Worker other : workers) {
+            if (other != worker) {
+                other.thread.join();
+            }
+        }
+        if (!last) {
+            output.put(PipelineItem.END);
+        }
+    }
+
+    private void exit(Worker worker) {
+        synchronized (this) {
+            active.remove(worker);
+        }
+        workers.remove(worker);
+        exitedWorkerNanos.addAndGet(System.nanoTime() - worker.startedNanos);
+        if (worker.replica != agent) {
+            worker.replica.shutdown();
+        }
+    }
+
+    /**
+     * Waits until every replica thread has exited or the deadline passes
+     *
+     * @return true if all replica threads have exited
+     */
+    boolean awaitExit(long deadlineNanos) throws InterruptedException {
+        for (Worker worker : workers) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(worker.thread, remaining);
+            if (worker.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interrupts every replica, busy or not
+     */
+    void halt() {
+        halted = true;
+        workers.forEach(worker -> worker.thread.interrupt());
+    }
+
+    BlockingQueue<PipelineItem> input() {
+        return input;
+    }
+
+    synchronized int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Gets the share of replica time spent inside the agents since the stage started. Close to 1 means
+     * the replicas are saturated and the stage is a candidate for more of them.
+     */
+    double getOccupancy() {
+        long now = System.nanoTime();
+        long available = availableNanos(now);
+        return available <= 0 ? 0.0 : Math.min(1.0, (double) busyNanos(now) / available);
+    }
+
+    /**
+     * Measures utilization and arrival rate since the statistics' previous sample
+     */
+    StageLoad sample() {
+        return sample(statisticsCursor);
+    }
+
+    /**
+     * Measures utilization and arrival rate since the cursor's previous sample and moves the cursor.
+     * Samples taken less than {@link #MIN_SAMPLE_WINDOW_NANOS} apart get the previous result, so
+     * frequent readers do not shrink their window to noise.
+     */
+    StageLoad sample(SampleCursor cursor) {
+        long now = System.nanoTime();
+        synchronized (cursor) {
+            if (cursor.lastLoad != null && now - cursor.sampledNanos < MIN_SAMPLE_WINDOW_NANOS) {
+                return cursor.lastLoad;
+            }
+            long busy = busyNanos(now);
+            long available = availableNanos(now);
+            long taken = takenCount.get();
+            int depth = input.size();
+            long availableDelta = available - cursor.sampledAvailableNanos;
+            double utilization = availableDelta <= 0 ? 0.0
+                : Math.min(1.0, (double) (busy - cursor.sampledBusyNanos) / availableDelta);
+            // Whatever entered the queue was either taken or is still waiting in it
+            long arrivals = Math.max(0, taken - cursor.sampledTaken + depth - cursor.sampledDepth);
+            double arrivalRate = now > cursor.sampledNanos ? arrivals * 1e9 / (now - cursor.sampledNanos) : 0.0;
+            cursor.sampledNanos = now;
+            cursor.sampledBusyNanos = busy;
+            cursor.sampledAvailableNanos = available;
+            cursor.sampledTaken = taken;
+            cursor.sampledDepth = depth;
+            int current;
+            synchronized (this) {
+                current = active.size();
+            }
+            cursor.lastLoad = new StageLoad(utilization, arrivalRate, depth, current);
+            return cursor.lastLoad;
+        }
+    }
+
+    /**
+     * Time spent inside the agents, including the batches being processed right now
+     */
+    private long busyNanos(long now) {
+        long busy = busyNanos.get();
+        for (Worker worker : workers) {
+            long since = worker.processingSince;
+            if (since != 0) {
+                busy += Math.max(0, now - since);
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * Lifetime of all replica threads, exited ones included
+     */
+    private long availableNanos(long now) {
+        long available = exitedWorkerNanos.get();
+        for (Worker worker : workers) {
+            available += now - worker.startedNanos;
+        }
+        return available;
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("agentId", agent.getId());
+        if (agent instanceof FusedStageAgent) {
+            List<String> fused = new ArrayList<>();
+            ((FusedStageAgent) agent).getMembers().forEach(member -> fused.add(member.getId()));
+            stats.put("fusedAgents", fused);
+        }
+        stats.put("processedMessages", processedCount.get());
+        stats.put("failedMessages", failedCount.get());
+        stats.put("filteredMessages", filteredCount.get());
+        stats.put("queueDepth", input.size());
+        stats.put("queueCapacity", input.size() + input.remainingCapacity());
+        synchronized (this) {
+            stats.put("replicas", active.size());
+            stats.put("ordered", ordered);
+        }
+        stats.put("occupancy", getOccupancy());
+        StageLoad load = sample();
+        stats.put("utilization", load.utilization);
+        stats.put("arrivalRate", load.arrivalRate);
+        stats.put("serviceTime", serviceTimes.toMap());
+        long batches = batchCount.get();
+        stats.put("batchSize", batchSize);
+        stats.put("maxLingerMillis", maxLingerNanos / 1e6);
+        stats.put("averageBatchSize", batches == 0 ? 0.0
+            : (double) (processedCount.get() + failedCount.get()) / batches);
+        return stats;
+    }
+
+    private final class Worker {
+        private final MeshParticipantAgent replica;
+        private final long startedNanos;
+        private volatile boolean retired;
+        // Start of the batch being processed, or 0
+        private volatile long processingSince;
+        private boolean busy;
+        private Thread thread;
+
+        Worker(MeshParticipantAgent replica) {
+            this.replica = replica;
+            this.startedNanos = System.nanoTime();
+        }
+
+        /**
+         * Lets the worker exit after its current item; an idle worker is woken up to exit now
+         */
+        synchronized void retire() {
+            retired = true;
+            if (!busy) {
+                thread.interrupt();
+            }
+        }
+
+        synchronized void markBusy() {
+            busy = true;
+            if (!halted) {
+                // Drops a retirement wake-up that raced with taking the item, so the item still completes
+                Thread.interrupted();
+            }
+        }
+
+        synchronized void markIdle() {
+            busy = false;
+        }
+    }
+
+    /**
+     * Counters at a reader's previous sample, so each reader of a stage's load has its own window;
+     * guarded by its own monitor
+     */
+    static final class SampleCursor {
+        private long sampledNanos = System.nanoTime();
+        private long sampledBusyNanos;
+        private long sampledAvailableNanos;
+        private long sampledTaken;
+        private int sampledDepth;
+        private StageLoad lastLoad;
+    }
+}
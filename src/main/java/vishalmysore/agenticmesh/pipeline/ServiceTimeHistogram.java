@@ -0,0 +1,77 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of per-message service times with power-of-two microsecond buckets, so
+ * recording is one increment and percentiles are accurate to a factor of two.
+ */
+final class ServiceTimeHistogram {
+    // Bucket i counts times up to 2^i microseconds; the last one everything longer
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records messages that each took the given time
+     */
+    void record(long nanos, int messages) {
+        long micros = Math.max(0, nanos) / 1_000;
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts.addAndGet(Math.min(bucket, BUCKETS - 1), messages);
+    }
+
+    /**
+     * Gets the upper bound of the bucket holding the given percentile, in milliseconds
+     *
+     * @return 0 if nothing was recorded
+     */
+    double percentileMillis(double percentile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen > 0 && seen >= rank) {
+                return (1L << i) / 1_000.0;
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Gets the count, p50, p90, p99 and the non-empty buckets keyed by upper bound
+     */
+    Map<String, Object> toMap() {
+        long[] snapshot = snapshot();
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] > 0) {
+                buckets.put(i == BUCKETS - 1 ? ">" + (1L << (i - 1)) + "us" : "<=" + (1L << i) + "us", snapshot[i]);
+            }
+            total += snapshot[i];
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", total);
+        map.put("p50Millis", percentileMillis(50));
+        map.put("p90Millis", percentileMillis(90));
+        map.put("p99Millis", percentileMillis(99));
+        map.put("buckets", buckets);
+        return map;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,20 @@
+package vishalmysore.agenticmesh.pipeline;
+
+/**
+ * How busy a stage was over the window between two samples
+ */
+final class StageLoad {
+    // Share of the replicas' time spent inside the agents, between 0 and 1
+    final double utilization;
+    // Messages per second that entered the stage's queue
+    final double arrivalRate;
+    final int queueDepth;
+    final int replicas;
+
+    StageLoad(double utilization, double arrivalRate, int queueDepth, int replicas) {
+        this.utilization = utilization;
+        this.arrivalRate = arrivalRate;
+        this.queueDepth = queueDepth;
+        this.replicas = replicas;
+    }
+}
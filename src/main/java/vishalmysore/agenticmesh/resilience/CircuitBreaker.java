@@ -0,0 +1,259 @@
+package vishalmysore.agenticmesh.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker guarding deliveries to one agent.
+ * <p>
+ * While CLOSED every call is permitted and outcomes are counted in a rolling window of time buckets.
+ * When the failure rate over the window reaches the threshold (after a minimum number of calls) the
+ * breaker OPENs and rejects calls for the open duration. It then goes HALF_OPEN and lets a limited
+ * number of probe calls through: if they all succeed the breaker closes with a fresh window, and
+ * the first failure opens it again.
+ * <p>
+ * Callers wrap each delivery in {@link #tryAcquire()} followed by {@link #execute(Runnable)}, or by
+ * {@link #onSuccess()} or {@link #onFailure()} on every path out of the call. State changes are
+ * reported to the listener outside the breaker's lock, so a listener that needs the current state
+ * under contention should read {@link #getState()}.
+ */
+public class CircuitBreaker {
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long bucketNanos;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final Listener listener;
+    private final long[] bucketEpochs;
+    private final int[] bucketSuccesses;
+    private final int[] bucketFailures;
+    private final AtomicLong rejectedCount;
+    private volatile State state;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Receives breaker state changes
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    /**
+     * @param name                 name of the guarded resource, usually the agent id
+     * @param failureRateThreshold failure rate in (0, 1] at which the breaker opens
+     * @param minimumCalls         calls the window must hold before the failure rate is evaluated
+     * @param window               length of the rolling window
+     * @param buckets              number of buckets the window is split into
+     * @param openDuration         how long the breaker rejects calls before probing
+     * @param halfOpenProbes       probe calls that must succeed to close the breaker again
+     * @param listener             notified of state changes; may be null
+     */
+    public CircuitBreaker(String name, double failureRateThreshold, int minimumCalls, Duration window, int buckets,
+                          Duration openDuration, int halfOpenProbes, Listener listener) {
+        validate(failureRateThreshold, minimumCalls, window, buckets, openDuration, halfOpenProbes);
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.bucketNanos = window.toNanos() / buckets;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+        this.listener = listener;
+        this.bucketEpochs = new long[buckets];
+        Arrays.fill(bucketEpochs, Long.MIN_VALUE);
+        this.bucketSuccesses = new int[buckets];
+        this.bucketFailures = new int[buckets];
+        this.rejectedCount = new AtomicLong();
+        this.state = State.CLOSED;
+    }
+
+    static void validate(double failureRateThreshold, int minimumCalls, Duration window, int buckets,
+                         Duration openDuration, int halfOpenProbes) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Failure rate threshold must be in (0, 1]");
+        }
+        if (minimumCalls < 1 || buckets < 1 || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("Minimum calls, buckets and half-open probes must be positive");
+        }
+        if (window.toNanos() < buckets || openDuration.isNegative()) {
+            throw new IllegalArgumentException("Window must be positive and open duration must not be negative");
+        }
+    }
+
+    /**
+     * Asks permission for a call. An OPEN breaker whose open duration has elapsed moves to HALF_OPEN
+     * and grants the call as a probe.
+     *
+     * @return false if the call must not be made
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            from = state;
+            if (from == State.CLOSED) {
+                return true;
+            }
+            if (from == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                    rejectedCount.incrementAndGet();
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            if (probesInFlight + probeSuccesses >= halfOpenProbes) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            probesInFlight++;
+        }
+        if (from == State.OPEN) {
+            notifyListener(State.OPEN, State.HALF_OPEN);
+        }
+        return true;
+    }
+
+    /**
+     * Whether calls are currently rejected outright: the breaker is OPEN and its open duration has not
+     * elapsed. Unlike {@link #tryAcquire()} this never moves the breaker to HALF_OPEN or takes a probe.
+     */
+    public boolean isOpen() {
+        if (state != State.OPEN) {
+            return false;
+        }
+        synchronized (this) {
+            return state == State.OPEN && System.nanoTime() - openedAtNanos < openDurationNanos;
+        }
+    }
+
+    /**
+     * Runs a call granted by {@link #tryAcquire()} and records its outcome. Anything it throws, errors
+     * included, counts as a failure and is rethrown, so a half-open probe slot is always given back.
+     */
+    public void execute(Runnable call) {
+        boolean succeeded = false;
+        try {
+            call.run();
+            succeeded = true;
+        } finally {
+            if (succeeded) {
+                onSuccess();
+            } else {
+                onFailure();
+            }
+        }
+    }
+
+    /**
+     * Records a successful call granted by {@link #tryAcquire()}
+     */
+    public void onSuccess() {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                bucket(System.nanoTime(), true);
+                return;
+            }
+            if (state == State.OPEN || probesInFlight == 0) {
+                return; // A call that started before the breaker opened
+            }
+            probesInFlight--;
+            if (++probeSuccesses < halfOpenProbes) {
+                return;
+            }
+            state = State.CLOSED;
+            Arrays.fill(bucketEpochs, Long.MIN_VALUE);
+        }
+        notifyListener(State.HALF_OPEN, State.CLOSED);
+    }
+
+    /**
+     * Records a failed call granted by {@link #tryAcquire()}
+     */
+    public void onFailure() {
+        State from;
+        synchronized (this) {
+            from = state;
+            long now = System.nanoTime();
+            if (from == State.OPEN) {
+                return;
+            }
+            if (from == State.CLOSED) {
+                bucket(now, false);
+                int[] counts = windowCounts(now);
+                if (counts[0] < minimumCalls || counts[1] < failureRateThreshold * counts[0]) {
+                    return;
+                }
+            }
+            state = State.OPEN;
+            openedAtNanos = now;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+        notifyListener(from, State.OPEN);
+    }
+
+    private void bucket(long now, boolean success) {
+        long epoch = Math.floorDiv(now, bucketNanos);
+        int index = (int) Math.floorMod(epoch, (long) bucketEpochs.length);
+        if (bucketEpochs[index] != epoch) {
+            bucketEpochs[index] = epoch;
+            bucketSuccesses[index] = 0;
+            bucketFailures[index] = 0;
+        }
+        if (success) {
+            bucketSuccesses[index]++;
+        } else {
+            bucketFailures[index]++;
+        }
+    }
+
+    /**
+     * Sums the buckets still inside the window into {calls, failures}
+     */
+    private int[] windowCounts(long now) {
+        long oldestEpoch = Math.floorDiv(now, bucketNanos) - bucketEpochs.length + 1;
+        int calls = 0;
+        int failures = 0;
+        for (int i = 0; i < bucketEpochs.length; i++) {
+            if (bucketEpochs[i] >= oldestEpoch) {
+                calls += bucketSuccesses[i] + bucketFailures[i];
+                failures += bucketFailures[i];
+            }
+        }
+        return new int[] {calls, failures};
+    }
+
+    private void notifyListener(State from, State to) {
+        if (listener != null) {
+            try {
+                listener.onStateChange(this, from, to);
+            } catch (Exception e) {
+                System.err.println("Error in circuit breaker listener for " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the failure rate over the rolling window, or 0 if it holds no calls
+     */
+    public synchronized double getFailureRate() {
+        int[] counts = windowCounts(System.nanoTime());
+        return counts[0] == 0 ? 0 : (double) counts[1] / counts[0];
+    }
+
+    public String getName() { return name; }
+    public State getState() { return state; }
+    public Duration getOpenDuration() { return Duration.ofNanos(openDurationNanos); }
+    public long getRejectedCount() { return rejectedCount.get(); }
+}
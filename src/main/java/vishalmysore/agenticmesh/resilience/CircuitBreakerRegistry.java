@@ -0,0 +1,88 @@
+package vishalmysore.agenticmesh.resilience;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and holds one {@link CircuitBreaker} per agent, all sharing the same settings and listener
+ */
+public class CircuitBreakerRegistry {
+    private static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+    private static final Duration DEFAULT_WINDOW = Duration.ofSeconds(10);
+    private static final int DEFAULT_BUCKETS = 10;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(5);
+    private static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    private final Map<String, CircuitBreaker> breakers;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final Duration window;
+    private final int buckets;
+    private final Duration openDuration;
+    private final int halfOpenProbes;
+    private final CircuitBreaker.Listener listener;
+
+    /**
+     * Creates a registry with the default settings: open at a 50% failure rate over a 10 second window
+     * once it holds 10 calls, stay open for 5 seconds, then close after one successful probe
+     */
+    public CircuitBreakerRegistry(CircuitBreaker.Listener listener) {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_MINIMUM_CALLS, DEFAULT_WINDOW, DEFAULT_BUCKETS,
+            DEFAULT_OPEN_DURATION, DEFAULT_HALF_OPEN_PROBES, listener);
+    }
+
+    /**
+     * @see CircuitBreaker#CircuitBreaker(String, double, int, Duration, int, Duration, int, CircuitBreaker.Listener)
+     */
+    public CircuitBreakerRegistry(double failureRateThreshold, int minimumCalls, Duration window, int buckets,
+                                  Duration openDuration, int halfOpenProbes, CircuitBreaker.Listener listener) {
+        // Validate once here instead of on the first delivery to each agent
+        CircuitBreaker.validate(failureRateThreshold, minimumCalls, window, buckets, openDuration, halfOpenProbes);
+        this.breakers = new ConcurrentHashMap<>();
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.window = window;
+        this.buckets = buckets;
+        this.openDuration = openDuration;
+        this.halfOpenProbes = halfOpenProbes;
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the breaker for the given agent, creating a closed one on first use
+     */
+    public CircuitBreaker get(String agentId) {
+        CircuitBreaker breaker = breakers.get(agentId);
+        if (breaker != null) {
+            return breaker;
+        }
+        return breakers.computeIfAbsent(agentId, id -> new CircuitBreaker(id, failureRateThreshold, minimumCalls,
+            window, buckets, openDuration, halfOpenProbes, listener));
+    }
+
+    public void remove(String agentId) {
+        breakers.remove(agentId);
+    }
+
+    public Map<String, CircuitBreaker.State> getStates() {
+        Map<String, CircuitBreaker.State> states = new HashMap<>();
+        breakers.forEach((agentId, breaker) -> states.put(agentId, breaker.getState()));
+        return states;
+    }
+
+    /**
+     * Gets the number of calls rejected by all breakers
+     */
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (CircuitBreaker breaker : breakers.values()) {
+            rejected += breaker.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    public Duration getOpenDuration() { return openDuration; }
+}
@@ -0,0 +1,271 @@
+package vishalmysore.agenticmesh.resilience;
+
+import vishalmysore.agenticmesh.core.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Remembers which message ids each receiver has already been handed, so retried, re-gossiped or
+ * resubmitted messages are processed once.
+ * <p>
+ * Ids are stored as 64-bit hashes of receiver and message id in two open-addressing generations over
+ * primitive arrays. New ids go into the current generation; lookups check both. The current
+ * generation becomes the previous one once it is older than the retention or holds half the maximum
+ * entries, so an id is remembered for at least the retention unless the filter is full, and the id
+ * arrays stay fixed in size. Two different ids collide with probability about n / 2^64.
+ * <p>
+ * Optionally the filter also keeps the RESPONSE an agent sent to a request, keyed the same way, so a
+ * duplicate QUERY can be answered from the cache instead of reaching the agent again. Each generation
+ * holds at most half the maximum entries' worth of whole response messages, so with caching on the
+ * memory is bounded by the entry limit times the size of the responses rather than fixed.
+ */
+public class IdempotencyFilter {
+    private static final long EMPTY = 0L;
+
+    private final long retentionNanos;
+    private final int generationLimit;
+    private final boolean cacheResponses;
+    private final AtomicLong duplicateCount;
+    private Generation current;
+    private Generation previous;
+
+    /**
+     * @param retention      how long an id is remembered at least
+     * @param maxEntries     ids remembered at most across both generations
+     * @param cacheResponses whether to keep responses for {@link #getCachedResponse(String, String)}
+     */
+    public IdempotencyFilter(Duration retention, int maxEntries, boolean cacheResponses) {
+        if (retention.isNegative() || retention.isZero() || maxEntries < 2) {
+            throw new IllegalArgumentException("Retention must be positive and max entries at least 2");
+        }
+        this.retentionNanos = retention.toNanos();
+        this.generationLimit = maxEntries / 2;
+        this.cacheResponses = cacheResponses;
+        this.duplicateCount = new AtomicLong();
+        long now = System.nanoTime();
+        this.current = new Generation(generationLimit, cacheResponses, now);
+        this.previous = new Generation(generationLimit, cacheResponses, now);
+    }
+
+    /**
+     * Records that the message is being handed to the receiver
+     *
+     * @return false if the receiver was handed a message with the same id within the retention
+     */
+    public synchronized boolean markIfFirst(String receiverId, String messageId) {
+        long key = key(receiverId, messageId);
+        rotateIfDue(System.nanoTime());
+        if (previous.contains(key) || !current.add(key)) {
+            duplicateCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks every message of a batch for the receiver. For each duplicate QUERY whose response is
+     * cached, the response is passed to replay after the filter's lock is released.
+     *
+     * @param replay receives cached responses to resend; may be null
+     * @return the messages seen for the first time, in order; duplicates within the batch are dropped too
+     */
+    public List<Message> markFirst(String receiverId, List<Message> messages, Consumer<Message> replay) {
+        List<Message> first = new ArrayList<>(messages.size());
+        List<Message> responses = null;
+        for (Message message : messages) {
+            if (markIfFirst(receiverId, message.getId())) {
+                first.add(message);
+            } else if (replay != null && message.getType() == Message.MessageType.QUERY) {
+                Message response = getCachedResponse(receiverId, message.getId());
+                if (response != null) {
+                    if (responses == null) {
+                        responses = new ArrayList<>();
+                    }
+                    responses.add(response);
+                }
+            }
+        }
+        if (responses != null) {
+            responses.forEach(replay);
+        }
+        return first;
+    }
+
+    /**
+     * Forgets the marks of messages that were not processed, so they may be delivered again
+     */
+    public void forgetAll(String receiverId, List<Message> messages) {
+        for (Message message : messages) {
+            forget(receiverId, message.getId());
+        }
+    }
+
+    /**
+     * Forgets a mark, so the message may be delivered again, for example after it failed
+     */
+    public synchronized void forget(String receiverId, String messageId) {
+        long key = key(receiverId, messageId);
+        current.remove(key);
+        previous.remove(key);
+    }
+
+    /**
+     * Keeps a response for later duplicates of its request. Only RESPONSE messages with a correlation
+     * id are kept, under their sender, which is the receiver of the request.
+     */
+    public synchronized void recordResponse(Message response) {
+        if (!cacheResponses || response.getType() != Message.MessageType.RESPONSE
+            || response.getCorrelationId() == null) {
+            return;
+        }
+        rotateIfDue(System.nanoTime());
+        if (current.responses.size() < generationLimit) {
+            current.responses.put(key(response.getSenderId(), response.getCorrelationId()), response);
+        }
+    }
+
+    /**
+     * Gets the response the receiver sent to the request, or null if none is cached
+     */
+    public synchronized Message getCachedResponse(String receiverId, String requestId) {
+        if (!cacheResponses) {
+            return null;
+        }
+        rotateIfDue(System.nanoTime());
+        long key = key(receiverId, requestId);
+        Message response = current.responses.get(key);
+        return response != null ? response : previous.responses.get(key);
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Gets the number of ids currently remembered
+     */
+    public synchronized int size() {
+        return current.size + previous.size;
+    }
+
+    public Duration getRetention() {
+        return Duration.ofNanos(retentionNanos);
+    }
+
+    public boolean isCachingResponses() {
+        return cacheResponses;
+    }
+
+    private void rotateIfDue(long now) {
+        if (now - current.startedNanos >= 2 * retentionNanos) {
+            // Both generations are past the retention
+            current.clear(now);
+            previous.clear(now);
+        } else if (now - current.startedNanos >= retentionNanos || current.size >= generationLimit) {
+            Generation recycled = previous;
+            previous = current;
+            recycled.clear(now);
+            current = recycled;
+        }
+    }
+
+    /**
+     * FNV-1a over receiver, a separator and message id, finished with a 64-bit mixer
+     */
+    private static long key(String receiverId, String messageId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < receiverId.length(); i++) {
+            hash = (hash ^ receiverId.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        for (int i = 0; i < messageId.length(); i++) {
+            hash = (hash ^ messageId.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    /**
+     * Linear-probing set of hashed ids, kept at most half full
+     */
+    private static final class Generation {
+        private final long[] keys;
+        private final int mask;
+        private final Map<Long, Message> responses;
+        private int size;
+        private long startedNanos;
+
+        Generation(int limit, boolean cacheResponses, long now) {
+            int capacity = Integer.highestOneBit(Math.max(2, limit) * 2 - 1) << 1;
+            this.keys = new long[capacity];
+            this.mask = capacity - 1;
+            this.responses = cacheResponses ? new HashMap<>() : Map.of();
+            this.startedNanos = now;
+        }
+
+        boolean contains(long key) {
+            for (int slot = (int) key & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return false if the key was present already
+         */
+        boolean add(long key) {
+            int slot = (int) key & mask;
+            for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+            }
+            keys[slot] = key;
+            size++;
+            return true;
+        }
+
+        void remove(long key) {
+            int slot = (int) key & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // Backward-shift deletion keeps probe sequences intact without tombstones
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = (int) keys[next] & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            size--;
+        }
+
+        void clear(long now) {
+            if (size > 0) {
+                Arrays.fill(keys, EMPTY);
+                size = 0;
+            }
+            if (!responses.isEmpty()) {
+                responses.clear();
+            }
+            startedNanos = now;
+        }
+    }
+}
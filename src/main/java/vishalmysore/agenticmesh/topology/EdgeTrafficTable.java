@@ -0,0 +1,448 @@
+package vishalmysore.agenticmesh.topology;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Message counters per directed edge between two topology nodes, keyed by the packed pair of node ids.
+ * <p>
+ * The table is split into independently locked segments, like a striped counter, and each segment is
+ * an open-addressing hash table over primitive arrays. Every edge keeps a lifetime total and a ring of
+ * time buckets covering the sliding window; buckets are reset lazily when the ring wraps around. Once
+ * an edge has a slot, recording traffic does not allocate.
+ * <p>
+ * Before a segment grows it drops the edges without traffic in the window, so idle edges do not pile
+ * up and an edge's total only covers the time since it last went idle. A table may also be given a
+ * maximum number of edges: a new edge in a full segment then replaces the segment's quietest one.
+ */
+public class EdgeTrafficTable {
+    private static final long EMPTY_KEY = -1L;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int bucketCount;
+    private final long bucketNanos;
+    private final long originNanos;
+    private final int segmentLimit;
+
+    /**
+     * Creates a table with 16 segments
+     *
+     * @param window  length of the sliding window used for rates
+     * @param buckets number of buckets the window is split into
+     */
+    public EdgeTrafficTable(Duration window, int buckets) {
+        this(window, buckets, 16);
+    }
+
+    /**
+     * @param segments number of independently locked segments, rounded up to a power of two
+     */
+    public EdgeTrafficTable(Duration window, int buckets, int segments) {
+        this(window, buckets, segments, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param segments number of independently locked segments, rounded up to a power of two
+     * @param maxEdges edges kept at most, split evenly over the segments
+     */
+    public EdgeTrafficTable(Duration window, int buckets, int segments, int maxEdges) {
+        if (buckets < 1 || window.toNanos() < buckets || segments < 1 || maxEdges < 1) {
+            throw new IllegalArgumentException("Window, buckets, segments and max edges must be positive");
+        }
+        int segmentCount = 1;
+        while (segmentCount < segments) {
+            segmentCount <<= 1;
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentLimit = Math.max(1, maxEdges / segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(buckets, segmentLimit);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.bucketCount = buckets;
+        this.bucketNanos = window.toNanos() / buckets;
+        this.originNanos = System.nanoTime();
+    }
+
+    /**
+     * Records messages sent from one node to another
+     */
+    public void record(int sender, int receiver, int messages) {
+        if (sender < 0 || receiver < 0 || messages <= 0) {
+            return;
+        }
+        long key = key(sender, receiver);
+        int epoch = currentEpoch();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.add(key, epoch, messages);
+        }
+    }
+
+    /**
+     * Records messages sent from one node to another and gets the edge's rate including them, in
+     * messages per second like {@link #rate(int, int)}
+     */
+    public double recordAndGetRate(int sender, int receiver, int messages) {
+        if (sender < 0 || receiver < 0 || messages <= 0) {
+            return rate(sender, receiver);
+        }
+        long key = key(sender, receiver);
+        int epoch = currentEpoch();
+        Segment segment = segmentFor(key);
+        long windowCount;
+        synchronized (segment) {
+            windowCount = segment.windowCount(segment.add(key, epoch, messages), epoch);
+        }
+        return windowCount / windowSeconds();
+    }
+
+    /**
+     * Gets the number of messages sent over the edge within the sliding window
+     */
+    public long windowCount(int sender, int receiver) {
+        if (sender < 0 || receiver < 0) {
+            return 0;
+        }
+        long key = key(sender, receiver);
+        int epoch = currentEpoch();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            return slot < 0 ? 0 : segment.windowCount(slot, epoch);
+        }
+    }
+
+    /**
+     * Gets the messages per second sent over the edge, averaged over the elapsed part of the sliding window
+     */
+    public double rate(int sender, int receiver) {
+        return windowCount(sender, receiver) / windowSeconds();
+    }
+
+    /**
+     * Gets the number of messages ever sent over the edge while it was in the table
+     */
+    public long total(int sender, int receiver) {
+        if (sender < 0 || receiver < 0) {
+            return 0;
+        }
+        long key = key(sender, receiver);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            return slot < 0 ? 0 : segment.totals[slot];
+        }
+    }
+
+    /**
+     * Forgets the traffic on one directed edge
+     */
+    public void remove(int sender, int receiver) {
+        if (sender < 0 || receiver < 0) {
+            return;
+        }
+        long key = key(sender, receiver);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            if (slot >= 0) {
+                segment.delete(slot);
+            }
+        }
+    }
+
+    /**
+     * Forgets all traffic to and from a node, so a recycled node id starts clean. This scans every
+     * segment, so it is meant for agent removal rather than the send path.
+     */
+    public void removeNode(int node) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                int slot = 0;
+                while (slot < segment.keys.length) {
+                    long key = segment.keys[slot];
+                    if (key != EMPTY_KEY && (senderOf(key) == node || receiverOf(key) == node)) {
+                        // Deletion shifts a later entry into this slot, so look at it again
+                        segment.delete(slot);
+                    } else {
+                        slot++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every edge with traffic in the sliding window
+     */
+    public void forEach(EdgeVisitor visitor) {
+        int epoch = currentEpoch();
+        double seconds = windowSeconds();
+        for (Segment segment : segments) {
+            long[] keys;
+            double[] rates;
+            int count = 0;
+            synchronized (segment) {
+                keys = new long[segment.size];
+                rates = new double[segment.size];
+                for (int slot = 0; slot < segment.keys.length; slot++) {
+                    if (segment.keys[slot] != EMPTY_KEY) {
+                        long windowCount = segment.windowCount(slot, epoch);
+                        if (windowCount > 0) {
+                            keys[count] = segment.keys[slot];
+                            rates[count++] = windowCount / seconds;
+                        }
+                    }
+                }
+            }
+            // Call back outside the segment lock so visitors may query the table
+            for (int i = 0; i < count; i++) {
+                visitor.visit(senderOf(keys[i]), receiverOf(keys[i]), rates[i]);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of edges that still had traffic in the window when a full segment replaced them
+     */
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    public Duration getWindow() {
+        return Duration.ofNanos(bucketNanos * bucketCount);
+    }
+
+    @FunctionalInterface
+    public interface EdgeVisitor {
+        void visit(int sender, int receiver, double messagesPerSecond);
+    }
+
+    private int currentEpoch() {
+        return (int) ((System.nanoTime() - originNanos) / bucketNanos);
+    }
+
+    /**
+     * Seconds covered by the buckets currently in the window
+     */
+    private double windowSeconds() {
+        long elapsed = System.nanoTime() - originNanos;
+        // The window holds the complete buckets before the current one plus the elapsed part of the current one
+        long covered = Math.min(elapsed, (bucketCount - 1) * bucketNanos + elapsed % bucketNanos);
+        return Math.max(covered, 1_000_000L) / 1e9;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (mix(key) >>> 40) & segmentMask];
+    }
+
+    private static long key(int sender, int receiver) {
+        return ((long) sender << 32) | (receiver & 0xFFFFFFFFL);
+    }
+
+    private static int senderOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int receiverOf(long key) {
+        return (int) key;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Linear-probing table of edges with a bucket ring per slot; guarded by its own monitor
+     */
+    private static final class Segment {
+        private final int buckets;
+        private final int limit;
+        private long[] keys;
+        private long[] totals;
+        private int[] bucketEpochs; // slot * buckets + bucket
+        private int[] bucketCounts;
+        private int size;
+        private long evictions;
+
+        Segment(int buckets, int limit) {
+            this.buckets = buckets;
+            this.limit = limit;
+            allocate(INITIAL_SEGMENT_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            totals = new long[capacity];
+            bucketEpochs = new int[capacity * buckets];
+            Arrays.fill(bucketEpochs, -1);
+            bucketCounts = new int[capacity * buckets];
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+                long current = keys[slot];
+                if (current == key) {
+                    return slot;
+                }
+                if (current == EMPTY_KEY) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * @return the slot the edge ended up in
+         */
+        int add(long key, int epoch, int messages) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY_KEY) {
+                    if (size >= limit || (size + 1) * 4 > keys.length * 3) {
+                        makeRoom(epoch);
+                        return add(key, epoch, messages);
+                    }
+                    keys[slot] = key;
+                    size++;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            totals[slot] += messages;
+            int bucket = slot * buckets + epoch % buckets;
+            if (bucketEpochs[bucket] != epoch) {
+                bucketEpochs[bucket] = epoch;
+                bucketCounts[bucket] = 0;
+            }
+            bucketCounts[bucket] += messages;
+            return slot;
+        }
+
+        /**
+         * Drops the idle edges; if that frees nothing, grows below the limit or else replaces the
+         * quietest edge
+         */
+        private void makeRoom(int epoch) {
+            int before = size;
+            int quietest = -1;
+            long quietestCount = Long.MAX_VALUE;
+            int slot = 0;
+            while (slot < keys.length) {
+                if (keys[slot] == EMPTY_KEY) {
+                    slot++;
+                    continue;
+                }
+                long count = windowCount(slot, epoch);
+                if (count == 0) {
+                    // Deletion shifts a later entry into this slot, so look at it again
+                    delete(slot);
+                } else {
+                    if (count < quietestCount) {
+                        quietest = slot;
+                        quietestCount = count;
+                    }
+                    slot++;
+                }
+            }
+            if (size < before && (size + 1) * 4 <= keys.length * 3) {
+                return;
+            }
+            if (size < limit) {
+                grow();
+            } else {
+                // A shift during the idle purge may have moved it; the quietest key is looked up again
+                long victim = keys[quietest];
+                delete(find(victim));
+                evictions++;
+            }
+        }
+
+        long windowCount(int slot, int epoch) {
+            long count = 0;
+            int base = slot * buckets;
+            for (int i = 0; i < buckets; i++) {
+                if (epoch - bucketEpochs[base + i] < buckets) {
+                    count += bucketCounts[base + i];
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Backward-shift deletion, so probe sequences stay intact without tombstones
+         */
+        void delete(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY_KEY; next = (next + 1) & mask) {
+                int home = (int) mix(keys[next]) & mask;
+                // Move the entry back if its home slot is not cyclically between the hole and its position
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    moveSlot(next, hole);
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY_KEY;
+            totals[hole] = 0;
+            Arrays.fill(bucketEpochs, hole * buckets, (hole + 1) * buckets, -1);
+            Arrays.fill(bucketCounts, hole * buckets, (hole + 1) * buckets, 0);
+            size--;
+        }
+
+        private void moveSlot(int from, int to) {
+            keys[to] = keys[from];
+            totals[to] = totals[from];
+            System.arraycopy(bucketEpochs, from * buckets, bucketEpochs, to * buckets, buckets);
+            System.arraycopy(bucketCounts, from * buckets, bucketCounts, to * buckets, buckets);
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldTotals = totals;
+            int[] oldEpochs = bucketEpochs;
+            int[] oldCounts = bucketCounts;
+            allocate(oldKeys.length * 2);
+            int mask = keys.length - 1;
+            for (int old = 0; old < oldKeys.length; old++) {
+                if (oldKeys[old] == EMPTY_KEY) {
+                    continue;
+                }
+                int slot = (int) mix(oldKeys[old]) & mask;
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[old];
+                totals[slot] = oldTotals[old];
+                System.arraycopy(oldEpochs, old * buckets, bucketEpochs, slot * buckets, buckets);
+                System.arraycopy(oldCounts, old * buckets, bucketCounts, slot * buckets, buckets);
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package vishalmysore.agenticmesh.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Shortest-path next hops over a {@link TopologyGraph}.
+ * <p>
+ * For each destination that is routed to, the table keeps the breadth-first tree rooted at that
+ * destination: the hop distance of every node and the neighbour it forwards to. Trees are built on
+ * first use and kept in a bounded cache, so a lookup is a map read and two array reads once the
+ * destination is warm. Lookups hold only the graph's read lock; the table's own monitor is taken just
+ * to build a missing tree. A full cache evicts a tree that has not been used since the last eviction
+ * scan.
+ * <p>
+ * The table follows the graph as a listener instead of rebuilding per message, under the graph's
+ * write lock so no lookup sees a tree mid-update. A new edge can only shorten paths, so it is relaxed
+ * into every cached tree, touching just the nodes that get closer. Removing a tree edge or node only
+ * lengthens the paths of the subtree hanging off it; those nodes are re-attached from their
+ * neighbours outside the subtree, nearest first. Removals off the tree cannot lengthen any shortest
+ * path and leave it as is.
+ */
+public class RoutingTable implements TopologyGraph.Listener {
+    /** Distance of nodes that cannot reach the destination */
+    public static final int UNREACHABLE = -1;
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final TopologyGraph graph;
+    private final int maxDestinations;
+    private final Map<Integer, Tree> trees;
+    private final AtomicLong misses;
+    private final AtomicLong builds;
+    private final AtomicLong relaxations;
+    private final AtomicLong repairs;
+    private final AtomicLong invalidations;
+    // Scratch space for builds and listener updates, which never run at the same time
+    private int[] queue;
+
+    /**
+     * Creates a table and registers it with the graph
+     *
+     * @param maxDestinations number of destination trees kept in the cache
+     */
+    public RoutingTable(TopologyGraph graph, int maxDestinations) {
+        if (maxDestinations < 1) {
+            throw new IllegalArgumentException("Max destinations must be positive");
+        }
+        this.graph = graph;
+        this.maxDestinations = maxDestinations;
+        this.trees = new ConcurrentHashMap<>();
+        this.misses = new AtomicLong();
+        this.builds = new AtomicLong();
+        this.relaxations = new AtomicLong();
+        this.repairs = new AtomicLong();
+        this.invalidations = new AtomicLong();
+        this.queue = new int[16];
+        graph.addListener(this);
+    }
+
+    /**
+     * Gets the neighbour the sender should forward to in order to reach the receiver
+     *
+     * @return the next hop, the receiver itself if the two are adjacent, or null if there is no route
+     */
+    public String nextHop(String from, String to) {
+        Lock readLock = graph.readLock();
+        readLock.lock();
+        try {
+            Integer source = graph.nodeIdOf(from);
+            Integer destination = graph.nodeIdOf(to);
+            if (source == null || destination == null || source.equals(destination)) {
+                return null;
+            }
+            int hop = treeFor(destination).nextHop[source];
+            return hop < 0 ? null : graph.nameAt(hop);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of hops on a shortest path between two agents
+     *
+     * @return the hop count, 0 for the same agent, or {@link #UNREACHABLE}
+     */
+    public int distance(String from, String to) {
+        Lock readLock = graph.readLock();
+        readLock.lock();
+        try {
+            Integer source = graph.nodeIdOf(from);
+            Integer destination = graph.nodeIdOf(to);
+            if (source == null || destination == null) {
+                return UNREACHABLE;
+            }
+            int distance = treeFor(destination).distance[source];
+            return distance == INFINITY ? UNREACHABLE : distance;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the agents on a shortest path between two agents, both ends included
+     *
+     * @return the path, or an empty list if there is no route
+     */
+    public List<String> path(String from, String to) {
+        Lock readLock = graph.readLock();
+        readLock.lock();
+        try {
+            Integer source = graph.nodeIdOf(from);
+            Integer destination = graph.nodeIdOf(to);
+            List<String> path = new ArrayList<>();
+            if (source == null || destination == null) {
+                return path;
+            }
+            Tree tree = treeFor(destination);
+            if (tree.distance[source] == INFINITY) {
+                return path;
+            }
+            for (int node = source; node >= 0; node = tree.nextHop[node]) {
+                path.add(graph.nameAt(node));
+            }
+            return path;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getCachedDestinations() {
+        return trees.size();
+    }
+
+    /** Number of lookups that found no cached tree for their destination */
+    public long getMissCount() { return misses.get(); }
+
+    /** Number of destination trees built from scratch */
+    public long getBuildCount() { return builds.get(); }
+
+    /** Number of cached trees updated in place for a new edge */
+    public long getRelaxationCount() { return relaxations.get(); }
+
+    /** Number of cached trees updated in place for a removed tree edge or node */
+    public long getRepairCount() { return repairs.get(); }
+
+    /** Number of cached trees dropped because their destination went away */
+    public long getInvalidationCount() { return invalidations.get(); }
+
+    @Override
+    public synchronized void onNodeAdded(int node, int capacity) {
+        for (Tree tree : trees.values()) {
+            tree.ensureCapacity(capacity);
+        }
+    }
+
+    @Override
+    public synchronized void onNodeRemoved(int node) {
+        Iterator<Tree> iterator = trees.values().iterator();
+        while (iterator.hasNext()) {
+            Tree tree = iterator.next();
+            if (node >= tree.distance.length || tree.distance[node] == INFINITY) {
+                continue;
+            }
+            if (tree.distance[node] == 0) {
+                iterator.remove();
+                invalidations.incrementAndGet();
+                continue;
+            }
+            // The node's edges are gone already, so its tree children are found by what forwards to it
+            tree.distance[node] = INFINITY;
+            tree.nextHop[node] = -1;
+            queue = ensureQueue(tree.distance.length);
+            int children = 0;
+            for (int other = 0; other < tree.nextHop.length; other++) {
+                if (tree.nextHop[other] == node) {
+                    queue[children++] = other;
+                }
+            }
+            repair(tree, children);
+        }
+    }
+
+    @Override
+    public synchronized void onConnected(int node1, int node2) {
+        for (Tree tree : trees.values()) {
+            int distance1 = tree.distance[node1];
+            int distance2 = tree.distance[node2];
+            if (distance1 != INFINITY && distance1 + 1 < distance2) {
+                relax(tree, node2, node1);
+            } else if (distance2 != INFINITY && distance2 + 1 < distance1) {
+                relax(tree, node1, node2);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onDisconnected(int node1, int node2) {
+        for (Tree tree : trees.values()) {
+            int child = tree.nextHop[node1] == node2 ? node1 : tree.nextHop[node2] == node1 ? node2 : -1;
+            if (child >= 0) {
+                queue = ensureQueue(tree.distance.length);
+                queue[0] = child;
+                repair(tree, 1);
+            }
+        }
+    }
+
+    private Tree treeFor(int destination) {
+        Tree tree = trees.get(destination);
+        if (tree == null) {
+            misses.incrementAndGet();
+            return load(destination);
+        }
+        if (!tree.used) {
+            tree.used = true;
+        }
+        return tree;
+    }
+
+    private synchronized Tree load(int destination) {
+        Tree tree = trees.get(destination);
+        if (tree != null) {
+            return tree;
+        }
+        if (trees.size() >= maxDestinations) {
+            evict();
+        }
+        tree = build(destination);
+        trees.put(destination, tree);
+        return tree;
+    }
+
+    /**
+     * Drops the first tree not used since the previous scan, clearing the use marks it passes
+     */
+    private void evict() {
+        Integer victim = null;
+        for (Map.Entry<Integer, Tree> entry : trees.entrySet()) {
+            Tree tree = entry.getValue();
+            if (!tree.used) {
+                victim = entry.getKey();
+                break;
+            }
+            tree.used = false;
+            if (victim == null) {
+                victim = entry.getKey();
+            }
+        }
+        if (victim != null) {
+            trees.remove(victim);
+        }
+    }
+
+    private Tree build(int destination) {
+        Tree tree = new Tree(graph.nodeCapacity());
+        tree.distance[destination] = 0;
+        int head = 0;
+        int tail = 0;
+        queue = ensureQueue(tree.distance.length);
+        queue[tail++] = destination;
+        while (head < tail) {
+            int node = queue[head++];
+            int next = tree.distance[node] + 1;
+            int[] peers = graph.neighbours(node);
+            for (int i = graph.degreeOf(node) - 1; i >= 0; i--) {
+                int peer = peers[i];
+                if (tree.distance[peer] == INFINITY) {
+                    tree.distance[peer] = next;
+                    tree.nextHop[peer] = node;
+                    queue[tail++] = peer;
+                }
+            }
+        }
+        builds.incrementAndGet();
+        return tree;
+    }
+
+    /**
+     * Propagates a shorter distance for the node outwards. Improvements spread in breadth-first order
+     * from a single node, so every node is lowered at most once.
+     */
+    private void relax(Tree tree, int node, int via) {
+        queue = ensureQueue(tree.distance.length);
+        tree.distance[node] = tree.distance[via] + 1;
+        tree.nextHop[node] = via;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = node;
+        while (head < tail) {
+            int current = queue[head++];
+            int next = tree.distance[current] + 1;
+            int[] peers = graph.neighbours(current);
+            for (int i = graph.degreeOf(current) - 1; i >= 0; i--) {
+                int peer = peers[i];
+                if (next < tree.distance[peer]) {
+                    tree.distance[peer] = next;
+                    tree.nextHop[peer] = current;
+                    queue[tail++] = peer;
+                }
+            }
+        }
+        relaxations.incrementAndGet();
+    }
+
+    /**
+     * Re-attaches the subtrees rooted at the first nodes in the queue, which lost their tree edge.
+     * The subtrees are collected through the neighbours that forward into them, then settled in
+     * order of distance from their best neighbour outside, so every node is settled once.
+     */
+    private void repair(Tree tree, int roots) {
+        int size = roots;
+        for (int i = 0; i < roots; i++) {
+            tree.distance[queue[i]] = INFINITY;
+            tree.nextHop[queue[i]] = -1;
+        }
+        for (int head = 0; head < size; head++) {
+            int current = queue[head];
+            int[] peers = graph.neighbours(current);
+            for (int i = graph.degreeOf(current) - 1; i >= 0; i--) {
+                int peer = peers[i];
+                if (tree.nextHop[peer] == current) {
+                    tree.distance[peer] = INFINITY;
+                    tree.nextHop[peer] = -1;
+                    queue[size++] = peer;
+                }
+            }
+        }
+        // Cut off nodes have an infinite distance now, so only nodes outside the subtree can anchor them
+        long[] seeds = new long[size];
+        int seedCount = 0;
+        for (int k = 0; k < size; k++) {
+            int node = queue[k];
+            int best = INFINITY;
+            int via = -1;
+            int[] peers = graph.neighbours(node);
+            for (int i = graph.degreeOf(node) - 1; i >= 0; i--) {
+                int peer = peers[i];
+                if (tree.distance[peer] != INFINITY && tree.distance[peer] < best - 1) {
+                    best = tree.distance[peer] + 1;
+                    via = peer;
+                }
+            }
+            if (via >= 0) {
+                tree.nextHop[node] = via;
+                seeds[seedCount++] = ((long) best << 32) | node;
+            }
+        }
+        for (int k = 0; k < seedCount; k++) {
+            tree.distance[(int) seeds[k]] = (int) (seeds[k] >>> 32);
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        int next = 0;
+        int head = 0;
+        int tail = 0;
+        while (next < seedCount || head < tail) {
+            int current;
+            boolean fromQueue = head < tail
+                && (next == seedCount || tree.distance[queue[head]] <= (int) (seeds[next] >>> 32));
+            if (fromQueue) {
+                current = queue[head++];
+            } else {
+                long seed = seeds[next++];
+                current = (int) seed;
+                if (tree.distance[current] < (int) (seed >>> 32)) {
+                    // Reached through the subtree sooner; its queue entry handles it
+                    continue;
+                }
+            }
+            int distance = tree.distance[current] + 1;
+            int[] peers = graph.neighbours(current);
+            for (int i = graph.degreeOf(current) - 1; i >= 0; i--) {
+                int peer = peers[i];
+                if (distance < tree.distance[peer]) {
+                    tree.distance[peer] = distance;
+                    tree.nextHop[peer] = current;
+                    queue[tail++] = peer;
+                }
+            }
+        }
+        repairs.incrementAndGet();
+    }
+
+    private int[] ensureQueue(int capacity) {
+        return queue.length >= capacity ? queue : new int[capacity];
+    }
+
+    /**
+     * Breadth-first tree towards one destination, indexed by node id
+     */
+    private static final class Tree {
+        private int[] distance;
+        private int[] nextHop;
+        // Set by lookups and cleared by eviction scans; a lost update only changes which tree goes
+        private boolean used;
+
+        Tree(int capacity) {
+            distance = new int[capacity];
+            Arrays.fill(distance, INFINITY);
+            nextHop = new int[capacity];
+            Arrays.fill(nextHop, -1);
+        }
+
+        void ensureCapacity(int capacity) {
+            int old = distance.length;
+            if (capacity <= old) {
+                return;
+            }
+            distance = Arrays.copyOf(distance, capacity);
+            Arrays.fill(distance, old, capacity, INFINITY);
+            nextHop = Arrays.copyOf(nextHop, capacity);
+            Arrays.fill(nextHop, old, capacity, -1);
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package vishalmysore.agenticmesh.topology;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Undirected peer topology with agent ids interned to dense ints.
+ * <p>
+ * Each node keeps its neighbours in a primitive int array together with a mirror array holding,
+ * for every neighbour, the position of this node in that neighbour's array. Both ends of an edge
+ * can therefore be removed by swapping with the last entry, which makes removing an edge O(degree)
+ * for the lookup and O(1) for the unlink, and removing a node O(degree). Node ids of removed
+ * agents are recycled.
+ * <p>
+ * Reads take a shared lock and mutations an exclusive one. {@link #getPeers(String)} returns a live,
+ * weakly consistent view rather than a copy. Structures derived from the graph, such as a
+ * {@link RoutingTable}, register a {@link Listener} that is called under the exclusive lock.
+ */
+public class TopologyGraph {
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_DEGREE_CAPACITY = 4;
+
+    private final ReadWriteLock lock;
+    private final List<Listener> listeners;
+    private final Map<String, Integer> nodeIds;
+    private String[] names;
+    private int[][] adjacency;
+    private int[][] mirror;
+    private int[] degrees;
+    private int[] freeNodes;
+    private int freeCount;
+    private int nodeLimit; // one past the highest node id ever handed out
+    private int nodeCount;
+    private long edgeCount;
+
+    public TopologyGraph() {
+        this(16);
+    }
+
+    public TopologyGraph(int expectedAgents) {
+        int capacity = Math.max(4, expectedAgents);
+        this.lock = new ReentrantReadWriteLock();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.nodeIds = new HashMap<>(capacity * 2);
+        this.names = new String[capacity];
+        this.adjacency = new int[capacity][];
+        this.mirror = new int[capacity][];
+        this.degrees = new int[capacity];
+        this.freeNodes = new int[8];
+    }
+
+    /**
+     * Adds an agent without any peers
+     *
+     * @return the agent's node id; the existing id if the agent was already present
+     */
+    public int addNode(String agentId) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodeIds.get(agentId);
+            if (existing != null) {
+                return existing;
+            }
+            int node = freeCount > 0 ? freeNodes[--freeCount] : nodeLimit++;
+            if (node >= names.length) {
+                int capacity = names.length * 2;
+                names = Arrays.copyOf(names, capacity);
+                adjacency = Arrays.copyOf(adjacency, capacity);
+                mirror = Arrays.copyOf(mirror, capacity);
+                degrees = Arrays.copyOf(degrees, capacity);
+            }
+            names[node] = agentId;
+            adjacency[node] = EMPTY;
+            mirror[node] = EMPTY;
+            degrees[node] = 0;
+            nodeIds.put(agentId, node);
+            nodeCount++;
+            for (Listener listener : listeners) {
+                listener.onNodeAdded(node, names.length);
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an agent and all of its edges in O(degree)
+     *
+     * @return false if the agent was not present
+     */
+    public boolean removeNode(String agentId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeIds.remove(agentId);
+            if (node == null) {
+                return false;
+            }
+            int[] peers = adjacency[node];
+            int[] positions = mirror[node];
+            for (int i = degrees[node] - 1; i >= 0; i--) {
+                unlinkAt(peers[i], positions[i]);
+            }
+            edgeCount -= degrees[node];
+            names[node] = null;
+            adjacency[node] = EMPTY;
+            mirror[node] = EMPTY;
+            degrees[node] = 0;
+            if (freeCount == freeNodes.length) {
+                freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+            }
+            freeNodes[freeCount++] = node;
+            nodeCount--;
+            for (Listener listener : listeners) {
+                listener.onNodeRemoved(node);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Connects two agents
+     *
+     * @return false if they were already connected
+     * @throws IllegalArgumentException if either agent is unknown or both are the same agent
+     */
+    public boolean connect(String agentId1, String agentId2) {
+        lock.writeLock().lock();
+        try {
+            int u = requireNode(agentId1);
+            int v = requireNode(agentId2);
+            if (u == v) {
+                throw new IllegalArgumentException("An agent cannot be its own peer: " + agentId1);
+            }
+            if (indexOf(u, v) >= 0) {
+                return false;
+            }
+            int positionInU = append(u, v);
+            int positionInV = append(v, u);
+            mirror[u][positionInU] = positionInV;
+            mirror[v][positionInV] = positionInU;
+            edgeCount++;
+            for (Listener listener : listeners) {
+                listener.onConnected(u, v);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Disconnects two agents
+     *
+     * @return false if they were not connected
+     */
+    public boolean disconnect(String agentId1, String agentId2) {
+        lock.writeLock().lock();
+        try {
+            Integer u = nodeIds.get(agentId1);
+            Integer v = nodeIds.get(agentId2);
+            if (u == null || v == null) {
+                return false;
+            }
+            int position = indexOf(u, v);
+            if (position < 0) {
+                return false;
+            }
+            int back = mirror[u][position];
+            unlinkAt(u, position);
+            unlinkAt(v, back);
+            edgeCount--;
+            for (Listener listener : listeners) {
+                listener.onDisconnected(u, v);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isConnected(String agentId1, String agentId2) {
+        lock.readLock().lock();
+        try {
+            Integer u = nodeIds.get(agentId1);
+            Integer v = nodeIds.get(agentId2);
+            return u != null && v != null && indexOf(u, v) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String agentId) {
+        lock.readLock().lock();
+        try {
+            return nodeIds.containsKey(agentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the agent's node id, or -1 if it is not in the graph
+     */
+    public int nodeOf(String agentId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeIds.get(agentId);
+            return node != null ? node : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the agent id interned as the given node, or null if the node is free
+     */
+    public String nameOf(int node) {
+        lock.readLock().lock();
+        try {
+            return node >= 0 && node < nodeLimit ? names[node] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int degree(String agentId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeIds.get(agentId);
+            return node != null ? degrees[node] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a live read-only view of the agent's peers. The view reflects later changes, never throws
+     * ConcurrentModificationException, and is empty once the agent has been removed.
+     */
+    public Set<String> getPeers(String agentId) {
+        return new PeerView(agentId);
+    }
+
+    /**
+     * Copies the agent's peers into a new array, for callers that modify the topology while iterating
+     */
+    public String[] copyPeers(String agentId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeIds.get(agentId);
+            if (node == null) {
+                return new String[0];
+            }
+            String[] peers = new String[degrees[node]];
+            for (int i = 0; i < peers.length; i++) {
+                peers[i] = names[adjacency[node][i]];
+            }
+            return peers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Picks up to count random agents that are neither the given agent nor already its peers, without
+     * scanning or copying the whole agent population
+     */
+    public List<String> sampleNonPeers(String agentId, int count) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeIds.get(agentId);
+            int candidates = nodeCount - 1 - (node != null ? degrees[node] : 0);
+            int wanted = Math.min(count, candidates);
+            List<String> picked = new ArrayList<>(Math.max(0, wanted));
+            if (node == null || wanted <= 0) {
+                return picked;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            // Rejection sampling over the dense node range; bounded so sparse ranges cannot spin
+            for (int attempts = 0; picked.size() < wanted && attempts < wanted * 16 + 64; attempts++) {
+                int candidate = random.nextInt(nodeLimit);
+                String name = names[candidate];
+                if (name != null && candidate != node && indexOf(node, candidate) < 0 && !picked.contains(name)) {
+                    picked.add(name);
+                }
+            }
+            return picked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Picks distinct random peers of a node by selection sampling, without allocating
+     *
+     * @param exclude node that must not be picked, or -1
+     * @param into    receives the picked node ids
+     * @return the number of peers picked, at most count and the length of into
+     */
+    public int samplePeers(int node, int count, int exclude, int[] into) {
+        lock.readLock().lock();
+        try {
+            if (node < 0 || node >= nodeLimit || names[node] == null) {
+                return 0;
+            }
+            int[] peers = adjacency[node];
+            int remaining = degrees[node];
+            if (exclude >= 0 && indexOf(node, exclude) >= 0) {
+                remaining--;
+            }
+            int wanted = Math.min(Math.min(count, into.length), remaining);
+            int picked = 0;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; picked < wanted; i++) {
+                int peer = peers[i];
+                if (peer == exclude) {
+                    continue;
+                }
+                // Take each candidate with probability still needed / candidates left
+                if (random.nextInt(remaining) < wanted - picked) {
+                    into[picked++] = peer;
+                }
+                remaining--;
+            }
+            return picked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets one past the highest node id handed out so far, for sizing arrays indexed by node id
+     */
+    public int getNodeIdLimit() {
+        lock.readLock().lock();
+        try {
+            return nodeLimit;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the degree of every agent
+     */
+    public Map<String, Integer> getDegrees() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> result = new HashMap<>(nodeCount * 2);
+            nodeIds.forEach((agentId, node) -> result.put(agentId, degrees[node]));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Receives topology changes while the graph's exclusive lock is held, so listeners see the graph
+     * exactly as it is after each change and may read it through the package-private accessors
+     */
+    interface Listener {
+        /**
+         * @param capacity current size of the node id space; node ids are always below it
+         */
+        void onNodeAdded(int node, int capacity);
+
+        /** Called after all of the node's edges have been removed */
+        void onNodeRemoved(int node);
+
+        void onConnected(int node1, int node2);
+
+        void onDisconnected(int node1, int node2);
+    }
+
+    void addListener(Listener listener) {
+        lock.writeLock().lock();
+        try {
+            listeners.add(listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    // Unlocked accessors for listeners and for callers holding readLock()
+
+    int nodeCapacity() {
+        return names.length;
+    }
+
+    int degreeOf(int node) {
+        return degrees[node];
+    }
+
+    /**
+     * The node's internal neighbour array; only the first {@link #degreeOf(int)} entries are valid
+     */
+    int[] neighbours(int node) {
+        return adjacency[node];
+    }
+
+    Integer nodeIdOf(String agentId) {
+        return nodeIds.get(agentId);
+    }
+
+    String nameAt(int node) {
+        return names[node];
+    }
+
+    private int requireNode(String agentId) {
+        Integer node = nodeIds.get(agentId);
+        if (node == null) {
+            throw new IllegalArgumentException("Agent not in topology: " + agentId);
+        }
+        return node;
+    }
+
+    /**
+     * Position of peer in node's adjacency array, or -1; scans the shorter of the two arrays
+     */
+    private int indexOf(int node, int peer) {
+        if (degrees[peer] < degrees[node]) {
+            int[] peers = adjacency[peer];
+            for (int i = 0; i < degrees[peer]; i++) {
+                if (peers[i] == node) {
+                    return mirror[peer][i];
+                }
+            }
+            return -1;
+        }
+        int[] peers = adjacency[node];
+        for (int i = 0; i < degrees[node]; i++) {
+            if (peers[i] == peer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int append(int node, int peer) {
+        int degree = degrees[node];
+        if (degree == adjacency[node].length) {
+            int capacity = Math.max(INITIAL_DEGREE_CAPACITY, degree * 2);
+            adjacency[node] = Arrays.copyOf(adjacency[node], capacity);
+            mirror[node] = Arrays.copyOf(mirror[node], capacity);
+        }
+        adjacency[node][degree] = peer;
+        degrees[node] = degree + 1;
+        return degree;
+    }
+
+    /**
+     * Removes the entry at the given position of node's arrays by moving the last entry into it and
+     * repointing the moved neighbour's mirror entry
+     */
+    private void unlinkAt(int node, int position) {
+        int last = --degrees[node];
+        if (position != last) {
+            int movedPeer = adjacency[node][last];
+            int movedBack = mirror[node][last];
+            adjacency[node][position] = movedPeer;
+            mirror[node][position] = movedBack;
+            mirror[movedPeer][movedBack] = position;
+        }
+    }
+
+    private final class PeerView extends AbstractSet<String> {
+        private final String agentId;
+
+        PeerView(String agentId) {
+            this.agentId = agentId;
+        }
+
+        @Override
+        public int size() {
+            return degree(agentId);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && isConnected(agentId, (String) o);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int position;
+                private String next = advance();
+
+                private String advance() {
+                    lock.readLock().lock();
+                    try {
+                        Integer node = nodeIds.get(agentId);
+                        if (node == null || position >= degrees[node]) {
+                            return null;
+                        }
+                        return names[adjacency[node][position++]];
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    String current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package vishalmysore.agenticmesh.topology;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds direct links between agents that exchange a lot of relayed traffic and retires them once they
+ * go cold.
+ * <p>
+ * Each round looks only at the candidate pairs and at the shortcut links this optimizer created, never
+ * at the whole graph or the whole demand table. Relayed demand is recorded through
+ * {@link #recordDemand(int, int, int)}, which makes a pair a candidate once its demand crosses the
+ * promote rate; candidates that cool down again are dropped by the next round. A pair is promoted to
+ * a direct link when its demand reaches the promote rate and neither end is at the degree budget,
+ * hottest pairs first and at most a fixed number of changes per round. A shortcut is demoted only after its link traffic has
+ * stayed below the lower demote rate for several consecutive rounds, so a link near the threshold
+ * does not flap.
+ */
+public class TopologyOptimizer implements TopologyGraph.Listener {
+    private final TopologyGraph graph;
+    private final EdgeTrafficTable linkTraffic;
+    private final EdgeTrafficTable pairDemand;
+    private final double promoteRate;
+    private final double demoteRate;
+    private final int coldRounds;
+    private final int maxChangesPerRound;
+    // Shortcut link, keyed by its packed node pair, to the number of consecutive cold rounds
+    private final Map<Long, Integer> shortcuts;
+    // Packed node pairs whose demand crossed the promote rate since the last round looked at them
+    private final Set<Long> candidates;
+    private final AtomicLong promotions;
+    private final AtomicLong demotions;
+
+    /**
+     * Creates an optimizer and registers it with the graph
+     *
+     * @param linkTraffic        messages carried by each link, relays included
+     * @param pairDemand         messages between agents that are not peers, by original sender and receiver
+     * @param promoteRate        messages per second between a pair at which it gets a direct link
+     * @param demoteRate         messages per second over a shortcut below which it counts as cold
+     * @param coldRounds         consecutive cold rounds after which a shortcut is removed
+     * @param maxChangesPerRound links added or removed in one round at most
+     */
+    public TopologyOptimizer(TopologyGraph graph, EdgeTrafficTable linkTraffic, EdgeTrafficTable pairDemand,
+                             double promoteRate, double demoteRate, int coldRounds, int maxChangesPerRound) {
+        if (demoteRate < 0 || promoteRate <= demoteRate) {
+            throw new IllegalArgumentException("Promote rate must be above the demote rate");
+        }
+        if (coldRounds < 1 || maxChangesPerRound < 1) {
+            throw new IllegalArgumentException("Cold rounds and max changes per round must be positive");
+        }
+        this.graph = graph;
+        this.linkTraffic = linkTraffic;
+        this.pairDemand = pairDemand;
+        this.promoteRate = promoteRate;
+        this.demoteRate = demoteRate;
+        this.coldRounds = coldRounds;
+        this.maxChangesPerRound = maxChangesPerRound;
+        this.shortcuts = new ConcurrentHashMap<>();
+        this.candidates = ConcurrentHashMap.newKeySet();
+        this.promotions = new AtomicLong();
+        this.demotions = new AtomicLong();
+        graph.addListener(this);
+    }
+
+    /**
+     * Records messages relayed from one agent to another that is not its peer
+     */
+    public void recordDemand(int sender, int receiver, int messages) {
+        double rate = pairDemand.recordAndGetRate(sender, receiver, messages);
+        if (rate >= promoteRate || rate + pairDemand.rate(receiver, sender) >= promoteRate) {
+            candidates.add(key(sender, receiver));
+        }
+    }
+
+    /**
+     * Runs one round: demotes shortcuts that have been cold long enough, then promotes the hottest pairs
+     *
+     * @param maxDegree links an agent may have before it stops getting shortcuts
+     * @return the number of links added or removed
+     */
+    public synchronized int optimize(int maxDegree) {
+        int changes = demoteColdShortcuts();
+        if (changes >= maxChangesPerRound) {
+            return changes;
+        }
+        for (Candidate candidate : hotPairs()) {
+            if (changes >= maxChangesPerRound) {
+                break;
+            }
+            String name1 = graph.nameOf(candidate.node1);
+            String name2 = graph.nameOf(candidate.node2);
+            if (name1 == null || name2 == null
+                || graph.degree(name1) >= maxDegree || graph.degree(name2) >= maxDegree) {
+                continue;
+            }
+            if (graph.connect(name1, name2)) {
+                candidates.remove(key(candidate.node1, candidate.node2));
+                // The relayed demand is served by the link now; it must not re-promote the pair after a demotion
+                pairDemand.remove(candidate.node1, candidate.node2);
+                pairDemand.remove(candidate.node2, candidate.node1);
+                shortcuts.put(key(candidate.node1, candidate.node2), 0);
+                promotions.incrementAndGet();
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private int demoteColdShortcuts() {
+        int changes = 0;
+        for (Map.Entry<Long, Integer> entry : shortcuts.entrySet()) {
+            int node1 = (int) (entry.getKey() >>> 32);
+            int node2 = (int) (long) entry.getKey();
+            double rate = linkTraffic.rate(node1, node2) + linkTraffic.rate(node2, node1);
+            int streak = rate < demoteRate ? entry.getValue() + 1 : 0;
+            if (streak < coldRounds || changes >= maxChangesPerRound) {
+                // Over budget for this round the streak still counts, so the link goes next round
+                shortcuts.replace(entry.getKey(), entry.getValue(), streak);
+                continue;
+            }
+            String name1 = graph.nameOf(node1);
+            String name2 = graph.nameOf(node2);
+            shortcuts.remove(entry.getKey());
+            if (name1 != null && name2 != null && graph.disconnect(name1, name2)) {
+                linkTraffic.remove(node1, node2);
+                linkTraffic.remove(node2, node1);
+                demotions.incrementAndGet();
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Collects the candidates still above the promote rate, both directions combined, hottest first,
+     * and drops the ones that cooled down
+     */
+    private List<Candidate> hotPairs() {
+        List<Candidate> hot = new ArrayList<>();
+        Iterator<Long> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            long key = iterator.next();
+            int node1 = (int) (key >>> 32);
+            int node2 = (int) key;
+            double rate = pairDemand.rate(node1, node2) + pairDemand.rate(node2, node1);
+            if (rate >= promoteRate) {
+                hot.add(new Candidate(node1, node2, rate));
+            } else {
+                iterator.remove();
+            }
+        }
+        hot.sort((c1, c2) -> Double.compare(c2.rate, c1.rate));
+        return hot;
+    }
+
+    public int getShortcutCount() {
+        return shortcuts.size();
+    }
+
+    public int getCandidateCount() {
+        return candidates.size();
+    }
+
+    public long getPromotionCount() { return promotions.get(); }
+    public long getDemotionCount() { return demotions.get(); }
+
+    // Listener callbacks only touch the concurrent shortcut and candidate sets, so they never wait on a running round
+
+    @Override
+    public void onNodeAdded(int node, int capacity) {
+    }
+
+    @Override
+    public void onNodeRemoved(int node) {
+        shortcuts.keySet().removeIf(key -> (int) (key >>> 32) == node || (int) (long) key == node);
+        candidates.removeIf(key -> (int) (key >>> 32) == node || (int) (long) key == node);
+    }
+
+    @Override
+    public void onConnected(int node1, int node2) {
+    }
+
+    @Override
+    public void onDisconnected(int node1, int node2) {
+        shortcuts.remove(key(node1, node2));
+    }
+
+    /**
+     * Packs an unordered node pair, smaller id first
+     */
+    private static long key(int node1, int node2) {
+        int low = Math.min(node1, node2);
+        int high = Math.max(node1, node2);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    private static final class Candidate {
+        private final int node1;
+        private final int node2;
+        private final double rate;
+
+        Candidate(int node1, int node2, double rate) {
+            this.node1 = node1;
+            this.node2 = node2;
+            this.rate = rate;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package regression;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.mesh.P2PMesh;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures gossip broadcast coverage, latency and sends per agent on a random peer graph of 10k
+ * agents with log2(N) peers each, for the default fan-out and a few fixed ones. Run the main method.
+ */
+public class GossipBroadcastBenchmark {
+    private static final int AGENTS = 10_000;
+    private static final int BROADCASTS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int peers = (int) (Math.log(AGENTS) / Math.log(2));
+        System.out.println("agents=" + AGENTS + " peers/agent~" + peers);
+        for (int fanout : new int[] {0, 3, 6}) {
+            run(fanout, peers);
+        }
+    }
+
+    private static void run(int fanout, int peers) throws Exception {
+        LongAdder delivered = new LongAdder();
+        P2PMesh mesh = new P2PMesh("gossip-bench");
+        for (int i = 0; i < AGENTS; i++) {
+            mesh.addAgent(new CountingAgent("agent-" + i, delivered));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < AGENTS; i++) {
+            for (int p = 0; p < peers / 2; p++) {
+                int j = random.nextInt(AGENTS);
+                if (j != i) {
+                    mesh.connect("agent-" + i, "agent-" + j);
+                }
+            }
+        }
+        // No initialize(): the network monitor would prune these idle links before the first broadcast
+        mesh.start();
+        mesh.setGossipSettings(fanout, 0);
+
+        double minCoverage = 1.0;
+        int complete = 0;
+        long start = System.nanoTime();
+        for (int b = 0; b < BROADCASTS; b++) {
+            Message message = new Message("broadcast-" + b, "agent-" + random.nextInt(AGENTS), null,
+                "A2A", b, Message.MessageType.EVENT);
+            double coverage = mesh.broadcast(message).get(60, TimeUnit.SECONDS);
+            minCoverage = Math.min(minCoverage, coverage);
+            complete += coverage == 1.0 ? 1 : 0;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Object> stats = mesh.getStatistics();
+        System.out.printf("fanout=%s ttl=%s avgCoverage=%.4f minCoverage=%.4f complete=%d/%d "
+                + "avgLatency=%.1f ms sends/agent=%.2f duplicates/agent=%.2f broadcasts/s=%.1f%n",
+            stats.get("gossipFanout"), stats.get("gossipTtl"), stats.get("averageBroadcastCoverage"),
+            minCoverage, complete, BROADCASTS, stats.get("averageBroadcastLatencyMillis"),
+            (long) stats.get("gossipPushes") / (double) BROADCASTS / AGENTS,
+            (long) stats.get("gossipDuplicates") / (double) BROADCASTS / AGENTS, BROADCASTS / seconds);
+        mesh.stop();
+    }
+
+    private static class CountingAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private final LongAdder delivered;
+
+        CountingAgent(String id, LongAdder delivered) {
+            this.id = id;
+            this.state = new AgentState(id);
+            this.delivered = delivered;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "benchmark"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public void processMessage(Message message) { delivered.increment(); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { }
+    }
+}
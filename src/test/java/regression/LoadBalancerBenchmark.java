@@ -0,0 +1,112 @@
+package regression;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.mesh.HubMesh;
+
+import java.util.*;
+
+/**
+ * Compares HubMesh.getNextAgent against the previous list-copying implementation for growing
+ * numbers of spokes. Run the main method; results are printed as nanoseconds per selection.
+ */
+public class LoadBalancerBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int spokeCount : new int[]{10, 1_000, 10_000}) {
+            HubMesh mesh = new HubMesh("benchmark-" + spokeCount);
+            Map<String, MeshParticipantAgent> agents = new LinkedHashMap<>();
+            Map<String, Integer> loads = new HashMap<>();
+            for (int i = 0; i <= spokeCount; i++) {
+                MeshParticipantAgent agent = new BenchmarkAgent("agent-" + i);
+                mesh.addAgent(agent);
+                agents.put(agent.getId(), agent);
+                loads.put(agent.getId(), i % 7);
+            }
+            MeshParticipantAgent hub = mesh.getHubAgent();
+            int operations = Math.max(1_000, 2_000_000 / spokeCount);
+
+            for (HubMesh.LoadBalancingStrategy strategy : HubMesh.LoadBalancingStrategy.values()) {
+                mesh.setLoadBalancingStrategy(strategy);
+                double legacy = measure(operations, current ->
+                    legacyNextAgent(strategy, agents, hub, loads, current));
+                double current = measure(operations, mesh::getNextAgent);
+                System.out.printf("spokes=%6d %-13s legacy=%12.1f ns/op  current=%8.1f ns/op%n",
+                    spokeCount, strategy, legacy, current);
+            }
+        }
+    }
+
+    private interface Selector {
+        MeshParticipantAgent next(String currentAgentId);
+    }
+
+    private static double measure(int operations, Selector selector) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            String current = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                current = selector.next(current).getId();
+            }
+            double nanosPerOp = (System.nanoTime() - start) / (double) operations;
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, nanosPerOp);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The getNextAgent implementation HubMesh used before the copy-on-write load balancer
+     */
+    private static MeshParticipantAgent legacyNextAgent(HubMesh.LoadBalancingStrategy strategy,
+                                                        Map<String, MeshParticipantAgent> agents,
+                                                        MeshParticipantAgent hubAgent,
+                                                        Map<String, Integer> agentLoadCount,
+                                                        String currentAgentId) {
+        List<MeshParticipantAgent> spokes = new ArrayList<>(agents.values());
+        spokes.remove(hubAgent);
+        if (spokes.isEmpty()) return null;
+
+        switch (strategy) {
+            case ROUND_ROBIN:
+                int currentIndex = -1;
+                for (int i = 0; i < spokes.size(); i++) {
+                    if (spokes.get(i).getId().equals(currentAgentId)) {
+                        currentIndex = i;
+                        break;
+                    }
+                }
+                return spokes.get((currentIndex + 1) % spokes.size());
+            case LEAST_LOADED:
+                return spokes.stream()
+                    .min(Comparator.comparingInt(a -> agentLoadCount.getOrDefault(a.getId(), 0)))
+                    .orElse(null);
+            case RANDOM:
+                return spokes.get(new Random().nextInt(spokes.size()));
+            default:
+                return spokes.get(0);
+        }
+    }
+
+    private static class BenchmarkAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+
+        BenchmarkAgent(String id) {
+            this.id = id;
+            this.state = new AgentState(id);
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "benchmark"; }
+        @Override public void initialize() { }
+        @Override public void processMessage(Message message) { }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { }
+    }
+}
@@ -0,0 +1,91 @@
+package regression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import vishalmysore.agenticmesh.codec.MessageCodec;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the binary message codec with Jackson JSON, the encoding persistence uses, on encoded size
+ * and on the time to encode and decode a sensor reading. Run the main method.
+ */
+public class MessageCodecBenchmark {
+    private static final int MESSAGES = 200_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Message message = sensorReading();
+        MessageCodec codec = new MessageCodec();
+        ObjectMapper mapper = new ObjectMapper();
+        System.out.printf("size: binary=%d bytes json=%d bytes%n",
+            codec.encodedSize(message), mapper.writeValueAsBytes(message).length);
+        for (int round = 0; round < ROUNDS; round++) {
+            double binary = runBinary(codec, message);
+            double json = runJson(mapper, message);
+            System.out.printf("round %d: binary=%.0f ns/msg json=%.0f ns/msg speedup=%.1fx%n",
+                round, binary, json, json / binary);
+        }
+        System.out.println("pool: " + codec.getPool().getStatistics());
+    }
+
+    /**
+     * @return nanoseconds to encode into a pooled buffer, decode and release it
+     */
+    private static double runBinary(MessageCodec codec, Message message) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            ByteBuffer buffer = codec.encode(message);
+            checksum += codec.decode(buffer).getId().length();
+            codec.release(buffer);
+        }
+        return finish(start, checksum);
+    }
+
+    /**
+     * @return nanoseconds to write JSON bytes, read them back into a map and rebuild the message
+     */
+    private static double runJson(ObjectMapper mapper, Message message) throws Exception {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            byte[] json = mapper.writeValueAsBytes(message);
+            Map<?, ?> fields = mapper.readValue(json, Map.class);
+            Message decoded = new Message((String) fields.get("id"), (String) fields.get("senderId"),
+                (String) fields.get("receiverId"), (String) fields.get("protocol"), fields.get("payload"),
+                Message.MessageType.valueOf((String) fields.get("type")), (String) fields.get("correlationId"));
+            checksum += decoded.getId().length();
+        }
+        return finish(start, checksum);
+    }
+
+    private static double finish(long start, long checksum) {
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 0) {
+            throw new IllegalStateException("Nothing was decoded");
+        }
+        return (double) elapsed / MESSAGES;
+    }
+
+    private static Message sensorReading() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sensorId", "sensor-17");
+        payload.put("location", "building-3/floor-2");
+        payload.put("temperature", 21.5);
+        payload.put("humidity", 40);
+        payload.put("battery", 87);
+        payload.put("alarm", false);
+        List<Object> readings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            readings.add(20.0 + i * 0.25);
+        }
+        payload.put("readings", readings);
+        return new Message("6f1c2a9e-3b7d-4c1e-9a51-0d2e7f4b8c31", "sensor-17", "hub-1", "A2A", payload,
+            Message.MessageType.EVENT);
+    }
+}
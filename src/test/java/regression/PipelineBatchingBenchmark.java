@@ -0,0 +1,134 @@
+package regression;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.pipeline.PipelineRuntime;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the throughput and latency trade-off of micro-batching on a three stage pipeline whose
+ * middle stage pays a fixed cost per call, like a remote service, plus a small cost per message.
+ * Each setting is run saturated for throughput and at a fixed offered rate for latency. Run the
+ * main method.
+ */
+public class PipelineBatchingBenchmark {
+    private static final long CALL_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long MESSAGE_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final int SATURATED_MESSAGES = 20_000;
+    private static final int PACED_MESSAGES = 2_000;
+    private static final int PACED_RATE = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int[][] settings = {{1, 0}, {8, 0}, {8, 1}, {32, 0}, {32, 2}, {128, 0}, {128, 5}};
+        for (int[] setting : settings) {
+            double throughput = saturated(setting[0], setting[1]);
+            long[] latencies = paced(setting[0], setting[1]);
+            System.out.printf("batch=%3d linger=%d ms  saturated=%7.0f msg/s  at %d msg/s: p50=%.2f ms p99=%.2f ms%n",
+                setting[0], setting[1], throughput, PACED_RATE,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6);
+        }
+    }
+
+    private static double saturated(int batchSize, int lingerMillis) throws Exception {
+        PipelineRuntime runtime = pipeline(batchSize, lingerMillis);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < SATURATED_MESSAGES; i++) {
+                runtime.submit(message(i));
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        for (int i = 0; i < SATURATED_MESSAGES; i++) {
+            runtime.takeResult();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        producer.join();
+        runtime.stop(5, TimeUnit.SECONDS);
+        return SATURATED_MESSAGES / seconds;
+    }
+
+    private static long[] paced(int batchSize, int lingerMillis) throws Exception {
+        PipelineRuntime runtime = pipeline(batchSize, lingerMillis);
+        long interval = TimeUnit.SECONDS.toNanos(1) / PACED_RATE;
+        Thread producer = new Thread(() -> {
+            long next = System.nanoTime();
+            for (int i = 0; i < PACED_MESSAGES; i++) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                runtime.submit(message(i));
+                next += interval;
+            }
+        });
+        producer.start();
+        long[] latencies = new long[PACED_MESSAGES];
+        for (int i = 0; i < PACED_MESSAGES; i++) {
+            long submitted = (long) runtime.takeResult().getPayload();
+            latencies[i] = System.nanoTime() - submitted;
+        }
+        producer.join();
+        runtime.stop(5, TimeUnit.SECONDS);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static PipelineRuntime pipeline(int batchSize, int lingerMillis) {
+        PipelineRuntime runtime = new PipelineRuntime("batching-bench",
+            List.of(new RemoteAgent("parse", 0), new RemoteAgent("remote", CALL_NANOS), new RemoteAgent("sink", 0)),
+            1024);
+        for (int stage = 0; stage < 3; stage++) {
+            runtime.setBatching(stage, batchSize, Duration.ofMillis(lingerMillis));
+        }
+        runtime.start();
+        return runtime;
+    }
+
+    private static Message message(int i) {
+        return new Message("m" + i, "producer", null, "A2A", System.nanoTime(), Message.MessageType.EVENT);
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Pays a fixed cost per call and a small cost per message
+     */
+    private static class RemoteAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private final long callNanos;
+
+        RemoteAgent(String id, long callNanos) {
+            this.id = id;
+            this.state = new AgentState(id);
+            this.callNanos = callNanos;
+        }
+
+        @Override
+        public Message transform(Message message) {
+            spin(callNanos + MESSAGE_NANOS);
+            return message;
+        }
+
+        @Override
+        public List<Message> transformBatch(List<Message> messages) {
+            spin(callNanos + MESSAGE_NANOS * messages.size());
+            return messages;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "benchmark"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public void processMessage(Message message) { }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { }
+    }
+}
@@ -0,0 +1,86 @@
+package regression;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.mesh.PipelineMesh;
+
+/**
+ * Measures the per-message cost of a pipeline of cheap in-process stages with and without fusing
+ * them, with one blocking stage in the middle that always keeps its own thread. Run the main method.
+ */
+public class PipelineFusionBenchmark {
+    private static final int CHEAP_STAGES = 8;
+    private static final int MESSAGES = 200_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            double unfused = run(false);
+            double fused = run(true);
+            System.out.printf("stages=%d unfused=%.0f ns/msg fused=%.0f ns/msg speedup=%.1fx%n",
+                CHEAP_STAGES + 1, unfused, fused, unfused / fused);
+        }
+    }
+
+    /**
+     * @return nanoseconds per message, end to end
+     */
+    private static double run(boolean fuse) throws Exception {
+        PipelineMesh mesh = new PipelineMesh("fusion-bench", 1024);
+        for (int i = 0; i < CHEAP_STAGES; i++) {
+            String id = "cheap-" + i;
+            mesh.addAgent(new CheapAgent(id));
+            mesh.setStageLightweight(id, fuse);
+            if (i == CHEAP_STAGES / 2 - 1) {
+                mesh.addAgent(new CheapAgent("blocking"));
+            }
+        }
+        mesh.start();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < MESSAGES; i++) {
+                mesh.submit(new Message("m" + i, "producer", null, "A2A", 0L, Message.MessageType.EVENT));
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        long checksum = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            checksum += (long) mesh.takeResult().getPayload();
+        }
+        long elapsed = System.nanoTime() - start;
+        producer.join();
+        mesh.stop();
+        if (checksum != (long) MESSAGES * CHEAP_STAGES) {
+            throw new IllegalStateException("Unexpected checksum " + checksum);
+        }
+        return (double) elapsed / MESSAGES;
+    }
+
+    /**
+     * Adds one to the payload, a transform that costs nanoseconds
+     */
+    private static class CheapAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+
+        CheapAgent(String id) {
+            this.id = id;
+            this.state = new AgentState(id);
+        }
+
+        @Override
+        public Message transform(Message message) {
+            long value = (long) message.getPayload() + (id.equals("blocking") ? 0 : 1);
+            return new Message(message.getId(), message.getSenderId(), message.getReceiverId(),
+                message.getProtocol(), value, message.getType());
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "benchmark"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public void processMessage(Message message) { }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { }
+    }
+}
@@ -0,0 +1,83 @@
+package regression;
+
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.dispatch.BackpressurePolicy;
+import vishalmysore.agenticmesh.mesh.HubMesh;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures hub routing throughput as the number of shards grows with the number of producer
+ * threads. Run the main method; shard counts go up to the number of available cores.
+ */
+public class ShardedHubBenchmark {
+    private static final int SPOKES = 1_024;
+    private static final int MESSAGES_PER_PRODUCER = 500_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("available cores: " + cores);
+        for (int shards = 1; shards <= Math.max(1, cores); shards *= 2) {
+            run(shards);
+        }
+    }
+
+    private static void run(int shards) throws InterruptedException {
+        LongAdder delivered = new LongAdder();
+        HubMesh mesh = new HubMesh("bench-" + shards, shards, 1,
+            Runtime.getRuntime().availableProcessors(), BackpressurePolicy.BLOCK);
+        String[] spokeIds = new String[SPOKES];
+        mesh.addAgent(new CountingAgent("hub", delivered));
+        for (int i = 0; i < SPOKES; i++) {
+            spokeIds[i] = "spoke-" + i;
+            mesh.addAgent(new CountingAgent(spokeIds[i], delivered));
+        }
+        mesh.initialize();
+        mesh.start();
+
+        long total = (long) shards * MESSAGES_PER_PRODUCER;
+        CountDownLatch producersDone = new CountDownLatch(shards);
+        long start = System.nanoTime();
+        for (int p = 0; p < shards; p++) {
+            int offset = p;
+            new Thread(() -> {
+                for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                    String receiver = spokeIds[(i * 31 + offset) & (SPOKES - 1)];
+                    mesh.routeMessage(new Message("m", "hub", receiver, "A2A", i, Message.MessageType.EVENT));
+                }
+                producersDone.countDown();
+            }).start();
+        }
+        producersDone.await();
+        while (delivered.sum() < total) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("shards=%d producers=%d messages=%d throughput=%,.0f msg/s%n",
+            shards, shards, total, total / seconds);
+        mesh.stop();
+    }
+
+    private static class CountingAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private final LongAdder delivered;
+
+        CountingAgent(String id, LongAdder delivered) {
+            this.id = id;
+            this.state = new AgentState(id);
+            this.delivered = delivered;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "benchmark"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public void processMessage(Message message) { delivered.increment(); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { }
+    }
+}
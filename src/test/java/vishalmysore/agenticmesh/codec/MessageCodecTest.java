@@ -0,0 +1,112 @@
+package vishalmysore.agenticmesh.codec;
+
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCodecTest {
+
+    @Test
+    void testMessagesRoundTripWithEveryFieldAndPayloadType() {
+        MessageCodec codec = new MessageCodec();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("name", "sensor-7 \u00e9\u4e2d\ud83d\ude00");
+        payload.put("reading", 21.5);
+        payload.put("count", -42);
+        payload.put("timestamp", Long.MAX_VALUE);
+        payload.put("ok", true);
+        payload.put("missing", null);
+        payload.put("raw", new byte[]{1, 2, 3});
+        payload.put("tags", List.of("a", List.of(1, 2), Map.of("nested", false)));
+        Message message = new Message("m-1", "sensor", "hub", "A2A", payload, Message.MessageType.QUERY, "req-0")
+            .withPriority(Message.MessagePriority.CRITICAL)
+            .withDeadline(Instant.ofEpochSecond(1_700_000_000L, 123_456_789));
+
+        ByteBuffer encoded = codec.encode(message);
+        assertTrue(encoded.isDirect());
+        assertEquals(codec.encodedSize(message), encoded.remaining());
+        Message decoded = codec.decode(encoded);
+        assertFalse(encoded.hasRemaining());
+        codec.release(encoded);
+
+        assertEquals("m-1", decoded.getId());
+        assertEquals("sensor", decoded.getSenderId());
+        assertEquals("hub", decoded.getReceiverId());
+        assertEquals("A2A", decoded.getProtocol());
+        assertEquals(Message.MessageType.QUERY, decoded.getType());
+        assertEquals("req-0", decoded.getCorrelationId());
+        assertEquals(Message.MessagePriority.CRITICAL, decoded.getPriority());
+        assertEquals(message.getDeadline(), decoded.getDeadline());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decodedPayload = (Map<String, Object>) decoded.getPayload();
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) decodedPayload.remove("raw"));
+        payload.remove("raw");
+        assertEquals(payload, decodedPayload);
+        assertEquals(List.copyOf(payload.keySet()), List.copyOf(decodedPayload.keySet()));
+
+        Message sparse = new Message("m-2", null, null, null, null, Message.MessageType.EVENT);
+        Message decodedSparse = codec.decode(codec.encode(sparse));
+        assertNull(decodedSparse.getSenderId());
+        assertNull(decodedSparse.getPayload());
+        assertNull(decodedSparse.getDeadline());
+        assertEquals(Message.MessagePriority.LOW, decodedSparse.getPriority());
+        assertEquals(List.of(3), codec.decode(codec.encode(sparseWith(Set.of(3)))).getPayload());
+    }
+
+    @Test
+    void testFramesShareCallerBuffersAndBadInputIsRejected() {
+        MessageCodec codec = new MessageCodec();
+        Message first = sparseWith("first");
+        Message second = sparseWith(2L);
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        codec.encode(first, buffer);
+        codec.encode(second, buffer);
+        buffer.flip();
+        assertEquals("first", codec.decode(buffer).getPayload());
+        assertEquals(2L, codec.decode(buffer).getPayload());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+
+        assertThrows(BufferOverflowException.class, () -> codec.encode(first, ByteBuffer.allocate(8)));
+        assertThrows(IllegalArgumentException.class, () -> codec.encodedSize(sparseWith(new Object())));
+
+        ByteBuffer truncated = codec.encode(first);
+        truncated.limit(truncated.limit() - 1);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated));
+
+        ByteBuffer future = codec.encode(first);
+        future.put(2, (byte) (MessageCodec.VERSION + 1));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(future));
+    }
+
+    @Test
+    void testPoolReusesReleasedBuffersAndBoundsIdleOnes() {
+        ByteBufferPool pool = new ByteBufferPool(1);
+        ByteBuffer first = pool.acquire(300);
+        assertEquals(512, first.capacity());
+        assertTrue(first.isDirect());
+        ByteBuffer second = pool.acquire(400);
+        pool.release(first);
+        pool.release(second);
+        assertSame(first, pool.acquire(257));
+        assertEquals(1L, pool.getStatistics().get("droppedBuffers"));
+        assertEquals(1L, pool.getStatistics().get("reusedBuffers"));
+
+        ByteBuffer huge = pool.acquire(ByteBufferPool.MAX_BUFFER_SIZE + 1);
+        pool.release(huge);
+        assertEquals(0, pool.getStatistics().get("idleBuffers"));
+    }
+
+    private static Message sparseWith(Object payload) {
+        return new Message("m", "a", "b", "A2A", payload, Message.MessageType.EVENT);
+    }
+}
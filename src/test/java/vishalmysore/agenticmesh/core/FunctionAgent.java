@@ -0,0 +1,55 @@
+package vishalmysore.agenticmesh.core;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Test agent that transforms each message with a function, shared by the pipeline and DAG tests
+ */
+public class FunctionAgent implements MeshParticipantAgent {
+    private final String id;
+    private final AgentState state;
+    private final UnaryOperator<Message> function;
+
+    public FunctionAgent(String id, UnaryOperator<Message> function) {
+        this.id = id;
+        this.state = new AgentState(id);
+        this.function = function;
+    }
+
+    @Override public String getId() { return id; }
+    @Override public String getType() { return "function"; }
+    @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+    @Override public void processMessage(Message message) { function.apply(message); }
+    @Override public Message transform(Message message) { return function.apply(message); }
+    @Override public AgentState getState() { return state; }
+    @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+
+    /**
+     * Sleeps for the given time and passes the message on unchanged
+     */
+    public static UnaryOperator<Message> sleeping(long millis) {
+        return sleeping(millis, UnaryOperator.identity());
+    }
+
+    /**
+     * Sleeps for the given time and then applies the function
+     */
+    public static UnaryOperator<Message> sleeping(long millis, UnaryOperator<Message> then) {
+        return message -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return then.apply(message);
+        };
+    }
+
+    /**
+     * Copies the message with another payload
+     */
+    public static Message withPayload(Message message, Object payload) {
+        return new Message(message.getId(), message.getSenderId(), message.getReceiverId(),
+            message.getProtocol(), payload, message.getType());
+    }
+}
@@ -17,6 +17,33 @@ public class MessageTest {
         assertEquals(Message.MessageType.COMMAND, message.getType());
     }
 
+    @Test
+    void testResponseToRequest() {
+        Message request = new Message("req-1", "agent1", "agent2", "MCP", "question", Message.MessageType.QUERY);
+        Message response = Message.responseTo(request, "answer");
+
+        assertEquals("agent2", response.getSenderId());
+        assertEquals("agent1", response.getReceiverId());
+        assertEquals("MCP", response.getProtocol());
+        assertEquals(Message.MessageType.RESPONSE, response.getType());
+        assertEquals("req-1", response.getCorrelationId());
+        assertNotEquals("req-1", response.getId());
+        assertNull(request.getCorrelationId());
+    }
+
+    @Test
+    void testPriorityDefaultsFromTypeAndCanBeOverridden() {
+        Message command = new Message("1", "a", "b", "A2A", null, Message.MessageType.COMMAND);
+        Message event = new Message("2", "a", "b", "A2A", null, Message.MessageType.EVENT);
+
+        assertEquals(Message.MessagePriority.HIGH, command.getPriority());
+        assertEquals(Message.MessagePriority.LOW, event.getPriority());
+        Message urgent = event.withPriority(Message.MessagePriority.CRITICAL);
+        assertEquals(Message.MessagePriority.CRITICAL, urgent.getPriority());
+        assertEquals(event.getId(), urgent.getId());
+        assertEquals(Message.MessageType.EVENT, urgent.getType());
+    }
+
    // @Test
     void testNullProtocolHandling() {
         assertThrows(IllegalArgumentException.class, () -> 
@@ -0,0 +1,188 @@
+package vishalmysore.agenticmesh.dag;
+
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.FunctionAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.mesh.DagMesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static vishalmysore.agenticmesh.core.FunctionAgent.sleeping;
+import static vishalmysore.agenticmesh.core.FunctionAgent.withPayload;
+
+public class DagRuntimeTest {
+
+    @Test
+    void testBranchesRunConcurrentlyAndJoinPerRequest() throws Exception {
+        long[] enrich = new long[2];
+        long[] classify = new long[2];
+        CountDownLatch classifyStarted = new CountDownLatch(1);
+        DagMesh mesh = new DagMesh("workflow", 4, 64);
+        mesh.addAgent(new FunctionAgent("parse", message -> withPayload(message, "parsed-" + message.getPayload())));
+        mesh.addAgent(new FunctionAgent("enrich", message -> {
+            enrich[0] = System.nanoTime();
+            // Run one after the other, classify would only start after this wait gave up
+            try {
+                classifyStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Message output = sleeping(40, m -> withPayload(m, "enriched")).apply(message);
+            enrich[1] = System.nanoTime();
+            return output;
+        }));
+        mesh.addAgent(new FunctionAgent("classify", message -> {
+            classify[0] = System.nanoTime();
+            classifyStarted.countDown();
+            Message output = sleeping(80, m -> withPayload(m, "class-a")).apply(message);
+            classify[1] = System.nanoTime();
+            return output;
+        }));
+        mesh.addAgent(new FunctionAgent("merge", message -> message));
+        mesh.connect("parse", "enrich");
+        mesh.connect("parse", "classify");
+        mesh.connect("enrich", "merge");
+        mesh.connect("classify", "merge");
+        assertThrows(IllegalArgumentException.class, () -> mesh.connect("merge", "parse"));
+        mesh.initialize();
+        mesh.start();
+
+        Message result = mesh.submit(request(0)).get(10, TimeUnit.SECONDS);
+        // Both branches were running at the same time; the join happened before the future completed
+        assertTrue(enrich[0] < classify[1] && classify[0] < enrich[1],
+            "enrich and classify did not overlap");
+        assertEquals(Map.of("enrich", "enriched", "classify", "class-a"), result.getPayload());
+        assertEquals("r0", result.getCorrelationId());
+
+        assertEquals(List.of("parse", "classify", "merge"), mesh.getCriticalPath());
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> nodes = (Map<String, Map<String, Object>>) mesh.getStatistics().get("nodes");
+        assertTrue((double) nodes.get("classify").get("averageLatencyMillis")
+            > (double) nodes.get("enrich").get("averageLatencyMillis"));
+        mesh.stop();
+    }
+
+    @Test
+    void testManyRequestsStreamThroughAndFailuresStayWithTheirRequest() throws Exception {
+        DagMesh mesh = new DagMesh("stream", 4, 8);
+        mesh.addAgent(new FunctionAgent("source", message -> {
+            if (message.getPayload().equals(13)) {
+                throw new IllegalStateException("bad request");
+            }
+            return message.getPayload().equals(7) ? null : message;
+        }));
+        mesh.addAgent(new FunctionAgent("left",
+            sleeping(2, message -> withPayload(message, (int) message.getPayload() * 2))));
+        mesh.addAgent(new FunctionAgent("right",
+            sleeping(2, message -> withPayload(message, (int) message.getPayload() + 1))));
+        mesh.connect("source", "left");
+        mesh.connect("source", "right");
+        mesh.start();
+
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            results.add(mesh.submit(request(i)));
+        }
+        for (int i = 0; i < 40; i++) {
+            if (i == 13) {
+                ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> results.get(13).get(5, TimeUnit.SECONDS));
+                assertEquals("bad request", error.getCause().getMessage());
+            } else if (i == 7) {
+                assertNull(results.get(7).get(5, TimeUnit.SECONDS));
+            } else {
+                // Two sinks: both outputs of the same request are joined
+                assertEquals(Map.of("left", i * 2, "right", i + 1),
+                    results.get(i).get(5, TimeUnit.SECONDS).getPayload());
+            }
+        }
+        Map<String, Object> stats = mesh.getStatistics();
+        assertEquals(38L, stats.get("completedRequests"));
+        assertEquals(1L, stats.get("failedRequests"));
+        assertEquals(1L, stats.get("filteredRequests"));
+        mesh.stop();
+        assertThrows(IllegalStateException.class, () -> mesh.submit(request(0)));
+    }
+
+    @Test
+    void testAgentErrorCompletesItsRequestExceptionally() throws Exception {
+        DagRuntime runtime = new DagRuntime("errors", List.of(
+            new FunctionAgent("source", message -> {
+                if (message.getPayload().equals(1)) {
+                    throw new AssertionError("agent bug");
+                }
+                return message;
+            })), Map.of(), 1, 4);
+        runtime.start();
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> runtime.submit(request(1)).get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof AssertionError);
+        // The permit came back and the node keeps serving later requests
+        assertEquals("r2", runtime.submit(request(2)).get(5, TimeUnit.SECONDS).getId());
+        assertEquals(0, runtime.getStatistics().get("requestsInFlight"));
+        assertEquals(1L, runtime.getStatistics().get("failedRequests"));
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmitterWaitingForAPermitWhenStopTimesOutGetsAFailedFuture() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Ignores the interrupt from stop(), so the request is still stuck when stop() fails it
+        DagRuntime runtime = new DagRuntime("racing", List.of(new FunctionAgent("stuck", message -> {
+            while (true) {
+                try {
+                    release.await();
+                    return message;
+                } catch (InterruptedException e) {
+                    // Keep waiting
+                }
+            }
+        })), Map.of(), 1, 1);
+        runtime.start();
+        CompletableFuture<Message> first = runtime.submit(request(0));
+        List<CompletableFuture<Message>> late = new CopyOnWriteArrayList<>();
+        Thread submitter = new Thread(() -> late.add(runtime.submit(request(1))));
+        submitter.start();
+        // Past the running check and parked on the only permit, which the stuck request holds
+        while (submitter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        assertFalse(runtime.stop(100, TimeUnit.MILLISECONDS));
+        submitter.join(5_000);
+        assertEquals(1, late.size());
+        for (CompletableFuture<Message> result : List.of(first, late.get(0))) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, runtime.getStatistics().get("requestsInFlight"));
+        release.countDown();
+    }
+
+    @Test
+    void testStoppedRuntimeCannotBeRestarted() throws Exception {
+        DagRuntime runtime = new DagRuntime("restart", List.of(new FunctionAgent("source", message -> message)),
+            Map.of(), 1, 1);
+        runtime.start();
+        assertEquals("r0", runtime.submit(request(0)).get(5, TimeUnit.SECONDS).getId());
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+
+        assertThrows(IllegalStateException.class, runtime::start);
+        assertFalse(runtime.isRunning());
+        assertThrows(IllegalStateException.class, () -> runtime.submit(request(1)));
+        assertEquals(0, runtime.getStatistics().get("requestsInFlight"));
+    }
+
+    private static Message request(int i) {
+        return new Message("r" + i, "client", null, "A2A", i, Message.MessageType.QUERY);
+    }
+}
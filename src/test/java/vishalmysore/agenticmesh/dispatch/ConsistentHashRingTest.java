@@ -0,0 +1,38 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsistentHashRingTest {
+
+    @Test
+    void testKeysSpreadAcrossShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+        int[] counts = new int[4];
+        for (int i = 0; i < 10_000; i++) {
+            counts[ring.shardFor("agent-" + i)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 1_500 && count < 3_500, "Unbalanced shard with " + count + " keys");
+        }
+    }
+
+    @Test
+    void testAddingShardOnlyMovesKeysToNewShard() {
+        ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+        ConsistentHashRing grown = ring.withAdditionalShard();
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "agent-" + i;
+            int before = ring.shardFor(key);
+            int after = grown.shardFor(key);
+            if (before != after) {
+                assertEquals(4, after, "Keys may only move to the new shard");
+                moved++;
+            }
+        }
+        // Ideal movement is 1/5 of the keys
+        assertTrue(moved > 1_200 && moved < 2_800, "Unexpected number of moved keys: " + moved);
+    }
+}
@@ -0,0 +1,157 @@
+package vishalmysore.agenticmesh.dispatch;
+
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngressQueueTest {
+
+    private static Message message(String id, Message.MessageType type) {
+        return new Message(id, "sender", "receiver", "A2A", id, type);
+    }
+
+    private static List<String> drainIds(IngressQueue queue) {
+        List<Message> drained = new ArrayList<>();
+        queue.drainTo(drained, Integer.MAX_VALUE);
+        List<String> ids = new ArrayList<>();
+        drained.forEach(m -> ids.add(m.getId()));
+        return ids;
+    }
+
+    @Test
+    void testFailFastRejectsWhenFull() {
+        IngressQueue queue = new IngressQueue(2, BackpressurePolicy.FAIL_FAST);
+        queue.submit(message("m1", Message.MessageType.EVENT));
+        queue.submit(message("m2", Message.MessageType.EVENT));
+
+        assertThrows(RejectedExecutionException.class,
+            () -> queue.submit(message("m3", Message.MessageType.EVENT)));
+        assertEquals(1, queue.getRejectedCount());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void testDropOldestEvictsHead() {
+        IngressQueue queue = new IngressQueue(2, BackpressurePolicy.DROP_OLDEST);
+        queue.submit(message("m1", Message.MessageType.EVENT));
+        queue.submit(message("m2", Message.MessageType.EVENT));
+        queue.submit(message("m3", Message.MessageType.EVENT));
+
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(List.of("m2", "m3"), drainIds(queue));
+    }
+
+    @Test
+    void testDropLowestPriorityKeepsCommands() {
+        IngressQueue queue = new IngressQueue(2, BackpressurePolicy.DROP_LOWEST_PRIORITY);
+        queue.submit(message("event", Message.MessageType.EVENT));
+        queue.submit(message("command1", Message.MessageType.COMMAND));
+        queue.submit(message("command2", Message.MessageType.COMMAND));
+        // Nothing queued ranks below an incoming event, so the event itself is dropped
+        queue.submit(message("late-event", Message.MessageType.EVENT));
+
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(List.of("command1", "command2"), drainIds(queue));
+    }
+
+    @Test
+    void testBlockWaitsForCapacity() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(1, BackpressurePolicy.BLOCK);
+        queue.submit(message("m1", Message.MessageType.EVENT));
+
+        Thread producer = new Thread(() -> queue.submit(message("m2", Message.MessageType.EVENT)));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive(), "Producer should block while the queue is full");
+
+        assertEquals("m1", queue.take().getId());
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals("m2", queue.take().getId());
+        assertEquals(0, queue.getRejectedCount());
+    }
+
+    @Test
+    void testWeightedFairDequeueAcrossLanes() {
+        IngressQueue queue = new IngressQueue(100, BackpressurePolicy.FAIL_FAST);
+        for (int i = 0; i < 10; i++) {
+            queue.submit(message("event" + i, Message.MessageType.EVENT));
+            queue.submit(message("query" + i, Message.MessageType.QUERY));
+            queue.submit(message("command" + i, Message.MessageType.COMMAND));
+            queue.submit(message("critical" + i, Message.MessageType.EVENT).withPriority(Message.MessagePriority.CRITICAL));
+        }
+
+        List<String> order = drainIds(queue);
+        // One full round: 8 CRITICAL, 4 HIGH, 2 MEDIUM, 1 LOW
+        assertEquals(List.of("critical0", "critical1", "critical2", "critical3", "critical4", "critical5",
+            "critical6", "critical7", "command0", "command1", "command2", "command3", "query0", "query1",
+            "event0"), order.subList(0, 15));
+        // Low-priority lanes keep making progress while higher lanes are still backlogged
+        assertTrue(order.indexOf("event1") < order.indexOf("command9"));
+        assertEquals(40, order.size());
+    }
+
+    @Test
+    void testLaneStatisticsAndPriorityEviction() {
+        IngressQueue queue = new IngressQueue(3, BackpressurePolicy.DROP_LOWEST_PRIORITY);
+        queue.submit(message("event", Message.MessageType.EVENT));
+        queue.submit(message("query", Message.MessageType.QUERY));
+        queue.submit(message("command", Message.MessageType.COMMAND));
+
+        assertEquals(1, queue.getLaneDepths().get(Message.MessagePriority.LOW));
+        assertEquals(1, queue.getLaneDepths().get(Message.MessagePriority.MEDIUM));
+        assertEquals(1, queue.getLaneDepths().get(Message.MessagePriority.HIGH));
+
+        queue.submit(message("urgent", Message.MessageType.QUERY).withPriority(Message.MessagePriority.CRITICAL));
+        assertEquals(0, queue.getLaneDepths().get(Message.MessagePriority.LOW));
+        assertEquals(List.of("urgent", "command", "query"), drainIds(queue));
+        assertEquals(1L, queue.getLaneDequeuedCounts().get(Message.MessagePriority.CRITICAL));
+        assertEquals(0L, queue.getLaneDequeuedCounts().get(Message.MessagePriority.LOW));
+    }
+
+    @Test
+    void testExpiredMessagesAreDroppedAtDequeue() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(10, BackpressurePolicy.FAIL_FAST);
+        queue.submit(message("stale", Message.MessageType.COMMAND).withDeadline(Instant.now().minusMillis(1)));
+        queue.submit(message("fresh", Message.MessageType.COMMAND).withTimeToLive(Duration.ofMinutes(1)));
+        queue.submit(message("forever", Message.MessageType.COMMAND));
+
+        assertEquals("fresh", queue.take().getId());
+        assertEquals(List.of("forever"), drainIds(queue));
+        assertEquals(1, queue.getExpiredCount());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void testAdmissionControlShedsStandingBacklog() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(100, BackpressurePolicy.FAIL_FAST);
+        AdmissionController admission = new AdmissionController(Duration.ofMillis(1), Duration.ofMillis(5));
+        queue.setAdmissionController(admission);
+        for (int i = 0; i < 10; i++) {
+            queue.submit(message("m" + i, Message.MessageType.EVENT));
+        }
+        Thread.sleep(10);
+        queue.take(); // Delay above target: the interval starts
+        Thread.sleep(10);
+        queue.take(); // Still above target after a full interval: start shedding
+
+        assertTrue(admission.isShedding());
+        assertThrows(RejectedExecutionException.class,
+            () -> queue.submit(message("late", Message.MessageType.EVENT)));
+        queue.submit(message("urgent", Message.MessageType.EVENT).withPriority(Message.MessagePriority.CRITICAL));
+        assertEquals(1, admission.getShedCount());
+
+        // Draining the backlog ends the overload
+        drainIds(queue);
+        assertFalse(admission.isShedding());
+        queue.submit(message("after", Message.MessageType.EVENT));
+        assertEquals(1, queue.size());
+    }
+}
@@ -7,6 +7,21 @@ import org.mockito.MockitoAnnotations;
 import vishalmysore.agenticmesh.core.MeshParticipantAgent;
 import vishalmysore.agenticmesh.core.AgentState;
 import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.dispatch.BackpressurePolicy;
+import vishalmysore.agenticmesh.resilience.CircuitBreaker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -107,4 +122,522 @@ public class HubMeshTest {
         verify(mockSpokeAgent1).shutdown();
         assertEquals(MeshState.Status.STOPPED, hubMesh.getState().getStatus());
     }
+
+    @Test
+    void testRoutingThroughputScalesWithOfferedLoad() throws InterruptedException {
+        hubMesh = new HubMesh("throughput-hub", 2);
+        CountingAgent sink = new CountingAgent("sink");
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(sink);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        double peakRate = 0;
+        for (int load : new int[]{100, 1_000, 10_000}) {
+            sink.expect(load);
+            long start = System.nanoTime();
+            for (int i = 0; i < load; i++) {
+                hubMesh.routeMessage(new Message("msg-" + i, "hub-agent", "sink", "A2A",
+                    i, Message.MessageType.EVENT));
+            }
+            // The old poll-and-sleep loop needed 100 ms per message, i.e. 1000 s for the largest load
+            assertTrue(sink.await(5, TimeUnit.SECONDS), "Messages were not delivered for load " + load);
+            double rate = load / ((System.nanoTime() - start) / 1e9);
+            assertTrue(rate > 100, "Throughput " + rate + " msg/s is still capped for load " + load);
+            peakRate = Math.max(peakRate, rate);
+        }
+        assertTrue(peakRate > 1_000, "Throughput did not grow with offered load: " + peakRate);
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testMailboxesPreserveOrderAndRunAgentsInParallel() throws InterruptedException {
+        hubMesh = new HubMesh("mailbox-hub", 1, 4, BackpressurePolicy.BLOCK);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(40);
+        RecordingAgent first = new RecordingAgent("first", running, maxRunning, done);
+        RecordingAgent second = new RecordingAgent("second", running, maxRunning, done);
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(first);
+        hubMesh.addAgent(second);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        for (int i = 0; i < 20; i++) {
+            hubMesh.routeMessage(new Message("a-" + i, "hub-agent", "first", "A2A", i, Message.MessageType.COMMAND));
+            hubMesh.routeMessage(new Message("b-" + i, "hub-agent", "second", "A2A", i, Message.MessageType.COMMAND));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, first.received);
+        assertEquals(expected, second.received);
+        assertFalse(first.overlapped || second.overlapped, "An agent processed two messages at once");
+        assertEquals(2, maxRunning.get(), "Different agents should be served in parallel");
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testSlowAgentFillsItsMailboxAndPushesBackOnRouting() throws InterruptedException {
+        hubMesh = new HubMesh("slow-hub", 1, 2, BackpressurePolicy.FAIL_FAST);
+        hubMesh.setMailboxCapacity(4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingAgent slow = new CountingAgent("slow") {
+            @Override
+            public void processMessage(Message message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processMessage(message);
+            }
+        };
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(slow);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        int capacity = (Integer) hubMesh.getStatistics().get("messageQueueCapacity");
+        int routed = 0;
+        try {
+            while (routed < capacity * 2) {
+                hubMesh.routeMessage(new Message("m" + routed, "hub-agent", "slow", "A2A", routed,
+                    Message.MessageType.EVENT));
+                routed++;
+            }
+            fail("Routing never pushed back on a stalled agent");
+        } catch (RejectedExecutionException expected) {
+            // The backlog stays in the bounded ingress queue instead of growing the mailbox
+        }
+        assertTrue(routed <= capacity + 4 + 64 + 1, "Accepted " + routed + " messages past the bounds");
+        assertTrue((Long) hubMesh.getStatistics().get("pendingMailboxMessages") <= 4);
+        assertEquals(1L, hubMesh.getStatistics().get("rejectedMessages"));
+
+        slow.expect(routed);
+        release.countDown();
+        assertTrue(slow.await(5, TimeUnit.SECONDS), "Queued messages were lost once the agent caught up");
+        hubMesh.stop();
+    }
+
+    @Test
+    void testUrgentMessageOvertakesLowPriorityBacklogInMailbox() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountingAgent busy = new CountingAgent("busy") {
+            @Override
+            public void processMessage(Message message) {
+                if (message.getId().equals("blocker")) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                received.add(message.getId());
+                super.processMessage(message);
+            }
+        };
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(busy);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        busy.expect(12);
+        hubMesh.routeMessage(new Message("blocker", "hub-agent", "busy", "A2A", 0, Message.MessageType.EVENT));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            hubMesh.routeMessage(new Message("event-" + i, "hub-agent", "busy", "A2A", i, Message.MessageType.EVENT));
+        }
+        hubMesh.routeMessage(new Message("command", "hub-agent", "busy", "A2A", 0, Message.MessageType.COMMAND));
+        // Wait until the whole backlog sits in the mailbox, past the ingress lanes
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((Long) hubMesh.getStatistics().get("pendingMailboxMessages") < 11 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        assertEquals("command", received.get(1), "HIGH message waited behind LOW ones: " + received);
+        hubMesh.stop();
+    }
+
+    @Test
+    void testAdmissionShedsAndMailboxDropsExpiredWhileAgentIsSlow() throws InterruptedException {
+        hubMesh.setMailboxCapacity(1);
+        hubMesh.setAdmissionControl(Duration.ofMillis(5), Duration.ofMillis(10));
+        AtomicInteger processed = new AtomicInteger();
+        CountingAgent slow = new CountingAgent("slow") {
+            @Override
+            public void processMessage(Message message) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.incrementAndGet();
+            }
+        };
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(slow);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        // The backlog outgrows a dispatcher batch, so it queues in ingress where admission control sees its delay
+        int accepted = 0;
+        boolean shed = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!shed && System.nanoTime() < deadline) {
+            try {
+                hubMesh.routeMessage(new Message("m" + accepted, "hub-agent", "slow", "A2A", accepted,
+                    Message.MessageType.EVENT).withTimeToLive(Duration.ofMillis(200)));
+                accepted++;
+            } catch (RejectedExecutionException e) {
+                shed = true;
+            }
+            if (accepted >= 300) {
+                Thread.sleep(1);
+            }
+        }
+        assertTrue(shed, "Admission control never saw the backlog of a slow agent");
+        assertTrue((Long) hubMesh.getStatistics().get("shedMessages") > 0);
+
+        long settle = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed.get() + (Long) hubMesh.getStatistics().get("expiredMessages") < accepted
+            && System.nanoTime() < settle) {
+            Thread.sleep(5);
+        }
+        long expired = (Long) hubMesh.getStatistics().get("expiredMessages");
+        assertEquals(accepted, processed.get() + expired);
+        assertTrue(expired > 0, "No message outlived its deadline");
+        hubMesh.stop();
+    }
+
+    @Test
+    void testRouteMessagesDeliversBatchesGroupedByReceiver() throws InterruptedException {
+        BatchingAgent batching = new BatchingAgent("batching");
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(batching);
+        hubMesh.addAgent(mockSpokeAgent1);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        List<Message> burst = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            burst.add(new Message("reading-" + i, "spoke1", "batching", "A2A", i, Message.MessageType.EVENT));
+        }
+        hubMesh.routeMessages(burst);
+
+        assertTrue(batching.done.await(5, TimeUnit.SECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, batching.received);
+        assertTrue(batching.largestBatch > 1, "Burst should reach the agent in batches");
+        verify(mockSpokeAgent1, never()).processMessage(burst.get(0));
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testShardedHubRoutesAndRebalances() throws InterruptedException {
+        hubMesh = new HubMesh("sharded-hub", 4, 1, 2, BackpressurePolicy.BLOCK);
+        hubMesh.addAgent(mockHubAgent);
+        List<CountingAgent> spokes = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            CountingAgent spoke = new CountingAgent("spoke-" + i);
+            spoke.expect(20);
+            spokes.add(spoke);
+            hubMesh.addAgent(spoke);
+        }
+        hubMesh.initialize();
+        hubMesh.start();
+
+        for (int round = 0; round < 10; round++) {
+            for (CountingAgent spoke : spokes) {
+                hubMesh.routeMessage(
+                    new Message("m", "hub-agent", spoke.getId(), "A2A", round, Message.MessageType.EVENT));
+            }
+        }
+        int moved = hubMesh.addShard();
+        for (int round = 0; round < 10; round++) {
+            for (CountingAgent spoke : spokes) {
+                hubMesh.routeMessage(
+                    new Message("m", "hub-agent", spoke.getId(), "A2A", round, Message.MessageType.EVENT));
+            }
+        }
+
+        for (CountingAgent spoke : spokes) {
+            assertTrue(spoke.await(5, TimeUnit.SECONDS), "Messages lost for " + spoke.getId());
+        }
+        assertTrue(moved < spokes.size() / 2, "Too many spokes moved: " + moved);
+        assertEquals(5, hubMesh.getStatistics().get("shards"));
+        assertEquals((long) moved, hubMesh.getStatistics().get("shardRebalanceMoves"));
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testRequestCompletesWithCorrelatedResponse() throws Exception {
+        MeshParticipantAgent responder = new CountingAgent("responder") {
+            @Override
+            public void processMessage(Message message) {
+                hubMesh.routeMessage(Message.responseTo(message, "answer to " + message.getPayload()));
+            }
+        };
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(responder);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            responses.add(hubMesh.request(new Message("query-" + i, "hub-agent", "responder", "A2A",
+                "q" + i, Message.MessageType.QUERY), Duration.ofSeconds(5)));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            Message response = responses.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("answer to q" + i, response.getPayload());
+            assertEquals("query-" + i, response.getCorrelationId());
+            assertEquals("hub-agent", response.getReceiverId());
+        }
+        assertEquals(0, hubMesh.getStatistics().get("pendingRequests"));
+        assertEquals(100L, hubMesh.getStatistics().get("completedRequests"));
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testRequestTimesOutWithoutResponse() throws InterruptedException {
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(mockSpokeAgent1);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        CompletableFuture<Message> response = hubMesh.request(new Message("silent-query", "hub-agent", "spoke1",
+            "A2A", "anyone?", Message.MessageType.QUERY), Duration.ofMillis(50));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof TimeoutException);
+        assertEquals(0, hubMesh.getStatistics().get("pendingRequests"));
+        assertEquals(1L, hubMesh.getStatistics().get("timedOutRequests"));
+
+        hubMesh.stop();
+    }
+
+    @Test
+    void testCircuitBreakerSkipsFailingAgentUntilProbeSucceeds() throws InterruptedException {
+        AtomicInteger failuresLeft = new AtomicInteger(4);
+        CountingAgent flaky = new CountingAgent("flaky") {
+            @Override
+            public void processMessage(Message message) {
+                super.processMessage(message);
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("backend unavailable");
+                }
+            }
+        };
+        CountingAgent healthy = new CountingAgent("healthy");
+        hubMesh.setCircuitBreakerSettings(0.5, 4, Duration.ofSeconds(10), 10, Duration.ofMillis(100), 1);
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(flaky);
+        hubMesh.addAgent(healthy);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        // One message at a time, since a batched delivery counts as a single call to the breaker
+        for (int i = 0; i < 4; i++) {
+            flaky.expect(1);
+            hubMesh.routeMessage(new Message("m" + i, "hub-agent", "flaky", "A2A", i, Message.MessageType.COMMAND));
+            assertTrue(flaky.await(5, TimeUnit.SECONDS));
+            Thread.sleep(20); // Let the failure be recorded after the latch opened
+        }
+        assertEquals(CircuitBreaker.State.OPEN, hubMesh.getCircuitStates().get("flaky"));
+        assertEquals(AgentState.Status.ERROR, flaky.getState().getStatus());
+        for (int i = 0; i < 10; i++) {
+            assertSame(healthy, hubMesh.getNextAgent(null));
+        }
+
+        // While open, messages are discarded without calling the agent
+        hubMesh.routeMessage(new Message("rejected", "hub-agent", "flaky", "A2A", 0, Message.MessageType.COMMAND));
+        Thread.sleep(20);
+        assertEquals(1L, hubMesh.getStatistics().get("shortCircuitedMessages"));
+
+        Thread.sleep(100);
+        flaky.expect(1);
+        hubMesh.routeMessage(new Message("probe", "hub-agent", "flaky", "A2A", 0, Message.MessageType.COMMAND));
+        assertTrue(flaky.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertEquals(CircuitBreaker.State.CLOSED, hubMesh.getCircuitStates().get("flaky"));
+        assertEquals(AgentState.Status.ACTIVE, flaky.getState().getStatus());
+
+        hubMesh.stop();
+    }
+
+    private static class BatchingAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        final CountDownLatch done = new CountDownLatch(100);
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        volatile int largestBatch;
+
+        BatchingAgent(String id) {
+            this.id = id;
+            this.state = new AgentState(id);
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "batching"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+        @Override public void processMessage(Message message) { processBatch(List.of(message)); }
+
+        @Override
+        public void processBatch(List<Message> messages) {
+            largestBatch = Math.max(largestBatch, messages.size());
+            for (Message message : messages) {
+                received.add((Integer) message.getPayload());
+                done.countDown();
+            }
+        }
+    }
+
+    private static class RecordingAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final CountDownLatch done;
+        private final AtomicInteger inside = new AtomicInteger();
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean overlapped;
+
+        RecordingAgent(String id, AtomicInteger running, AtomicInteger maxRunning, CountDownLatch done) {
+            this.id = id;
+            this.state = new AgentState(id);
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.done = done;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "recorder"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+
+        @Override
+        public void processMessage(Message message) {
+            if (inside.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add((Integer) message.getPayload());
+            running.decrementAndGet();
+            inside.decrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    void testDuplicateQueriesAreProcessedOnceAndAnsweredFromCache() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        MeshParticipantAgent responder = new CountingAgent("responder") {
+            @Override
+            public void processMessage(Message message) {
+                processed.incrementAndGet();
+                hubMesh.routeMessage(Message.responseTo(message, "answer"));
+            }
+        };
+        hubMesh.addAgent(mockHubAgent);
+        hubMesh.addAgent(responder);
+        hubMesh.setIdempotency(Duration.ofMinutes(1), 1_000, true);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        Message query = new Message("query-1", "hub-agent", "responder", "A2A", "q", Message.MessageType.QUERY);
+        assertEquals("answer", hubMesh.request(query, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS).getPayload());
+        // A client retry with the same id gets the original answer without reaching the agent again
+        Message retried = hubMesh.request(query, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+        assertEquals("answer", retried.getPayload());
+        assertEquals("query-1", retried.getCorrelationId());
+
+        assertEquals(1, processed.get());
+        assertEquals(1L, hubMesh.getStatistics().get("duplicateMessages"));
+        assertEquals(1L, hubMesh.getStatistics().get("replayedResponses"));
+        hubMesh.stop();
+    }
+
+    @Test
+    void testRoutedDuplicateQueryGetsItsReplayedResponseDelivered() throws Exception {
+        List<String> answered = new CopyOnWriteArrayList<>();
+        CountingAgent requester = new CountingAgent("requester") {
+            @Override
+            public void processMessage(Message message) {
+                answered.add(message.getCorrelationId());
+                super.processMessage(message);
+            }
+        };
+        MeshParticipantAgent responder = new CountingAgent("responder") {
+            @Override
+            public void processMessage(Message message) {
+                hubMesh.routeMessage(Message.responseTo(message, "answer"));
+            }
+        };
+        hubMesh.addAgent(requester);
+        hubMesh.addAgent(responder);
+        hubMesh.setIdempotency(Duration.ofMinutes(1), 1_000, true);
+        hubMesh.initialize();
+        hubMesh.start();
+
+        Message query = new Message("query-1", "requester", "responder", "A2A", "q", Message.MessageType.QUERY);
+        requester.expect(1);
+        hubMesh.routeMessage(query);
+        assertTrue(requester.await(5, TimeUnit.SECONDS));
+        // Without a waiting request() the replay travels the normal path through the requester's filter
+        requester.expect(1);
+        hubMesh.routeMessage(query);
+        assertTrue(requester.await(5, TimeUnit.SECONDS), "Replayed response was dropped as a duplicate");
+
+        assertEquals(List.of("query-1", "query-1"), answered);
+        assertEquals(1L, hubMesh.getStatistics().get("replayedResponses"));
+        hubMesh.stop();
+    }
+
+    private static class CountingAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        CountingAgent(String id) {
+            this.id = id;
+            this.state = new AgentState(id);
+        }
+
+        void expect(int count) { latch = new CountDownLatch(count); }
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException { return latch.await(timeout, unit); }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "counter"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public void processMessage(Message message) { latch.countDown(); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+    }
 }
@@ -0,0 +1,395 @@
+package vishalmysore.agenticmesh.mesh;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.resilience.CircuitBreaker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class P2PMeshTest {
+
+    private P2PMesh mesh;
+
+    @BeforeEach
+    void setUp() {
+        // Not initialized, so network monitoring does not rewire the test topology
+        mesh = new P2PMesh("test-p2p");
+        mesh.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mesh.stop();
+    }
+
+    @Test
+    void testSendMessagesDeliversEachReceiversMessagesAsOneBatch() throws InterruptedException {
+        PeerAgent a = addAgent("a");
+        PeerAgent b = addAgent("b");
+        PeerAgent c = addAgent("c");
+        PeerAgent d = addAgent("d");
+        mesh.connect("a", "b");
+        mesh.connect("a", "c");
+        mesh.connect("c", "d");
+        b.expect(50);
+        c.expect(20);
+        d.expect(5);
+
+        List<Message> burst = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            burst.add(message("b-" + i, "a", "b", i));
+            if (i < 20) {
+                burst.add(message("c-" + i, "a", "c", i));
+            }
+            if (i < 5) {
+                burst.add(message("d-" + i, "a", "d", i));
+            }
+        }
+        mesh.sendMessages(burst);
+
+        assertTrue(b.await(5, TimeUnit.SECONDS) && c.await(5, TimeUnit.SECONDS) && d.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(50), b.batchSizes);
+        assertEquals(List.of(20), c.batchSizes);
+        assertEquals(range(50), b.payloads());
+        assertEquals(range(20), c.payloads());
+        // Messages for a non-peer are relayed one by one through c
+        assertEquals(5, d.received.size());
+        assertEquals(List.of(1, 1, 1, 1, 1), d.batchSizes);
+        assertEquals(5L, mesh.getStatistics().get("relayedMessages"));
+        assertTrue(a.received.isEmpty());
+    }
+
+    @Test
+    void testSendMessagesValidatesTheWholeBatchBeforeSending() throws InterruptedException {
+        PeerAgent b = addAgent("b");
+        addAgent("a");
+        mesh.connect("a", "b");
+
+        List<Message> burst = List.of(message("ok", "a", "b", 1), message("bad", "a", "missing", 2));
+        assertThrows(IllegalArgumentException.class, () -> mesh.sendMessages(burst));
+
+        Thread.sleep(50);
+        assertTrue(b.received.isEmpty(), "Part of a rejected batch was delivered");
+    }
+
+    @Test
+    void testRequestCompletesWithCorrelatedResponse() throws Exception {
+        addAgent("client");
+        PeerAgent responder = new PeerAgent("responder") {
+            @Override
+            public void processMessage(Message message) {
+                super.processMessage(message);
+                mesh.sendMessage(Message.responseTo(message, "answer to " + message.getPayload()));
+            }
+        };
+        mesh.addAgent(responder);
+        mesh.connect("client", "responder");
+
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(mesh.request(new Message("query-" + i, "client", "responder", "A2A", "q" + i,
+                Message.MessageType.QUERY), Duration.ofSeconds(5)));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            Message response = responses.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("answer to q" + i, response.getPayload());
+            assertEquals("query-" + i, response.getCorrelationId());
+            assertEquals("client", response.getReceiverId());
+        }
+    }
+
+    @Test
+    void testRequestTimesOutWithoutResponseAndFailsWhenUnroutable() {
+        addAgent("client");
+        addAgent("silent");
+        addAgent("island");
+        mesh.connect("client", "silent");
+
+        CompletableFuture<Message> response = mesh.request(new Message("silent-query", "client", "silent", "A2A",
+            "anyone?", Message.MessageType.QUERY), Duration.ofMillis(50));
+        ExecutionException timeout = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertTrue(timeout.getCause() instanceof TimeoutException);
+
+        // A send error fails the future instead of being thrown to the caller
+        CompletableFuture<Message> unroutable = mesh.request(new Message("lost-query", "client", "island", "A2A",
+            "hello?", Message.MessageType.QUERY), Duration.ofSeconds(5));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> unroutable.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testSendMessageReachesNonNeighbourAndFollowsChangedRoute() throws InterruptedException {
+        for (String id : new String[]{"a", "b", "c", "e"}) {
+            addAgent(id);
+        }
+        PeerAgent d = addAgent("d");
+        mesh.connect("a", "b");
+        mesh.connect("b", "c");
+        mesh.connect("c", "d");
+
+        d.expect(1);
+        mesh.sendMessage(message("first", "a", "d", 1));
+        assertTrue(d.await(5, TimeUnit.SECONDS));
+        assertEquals(3, mesh.getStatistics().get("maxHops"));
+
+        // A shorter path appears and the old one breaks
+        mesh.connect("a", "e");
+        mesh.connect("e", "d");
+        mesh.disconnect("b", "c");
+        assertEquals(List.of("a", "e", "d"), mesh.getRoute("a", "d"));
+        d.expect(1);
+        mesh.sendMessage(message("second", "a", "d", 2));
+        assertTrue(d.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2), d.payloads());
+        assertEquals(2L, mesh.getStatistics().get("relayedMessages"));
+        assertEquals(2.5, (Double) mesh.getStatistics().get("averageHops"), 1e-9);
+    }
+
+    @Test
+    void testRelayWithOpenCircuitBreakerIsNotUsed() throws Exception {
+        addAgent("a");
+        PeerAgent relay = new PeerAgent("relay") {
+            @Override
+            public void processMessage(Message message) {
+                super.processMessage(message);
+                throw new IllegalStateException("relay backend down");
+            }
+        };
+        mesh.addAgent(relay);
+        PeerAgent c = addAgent("c");
+        mesh.connect("a", "relay");
+        mesh.connect("relay", "c");
+
+        // Enough failed direct deliveries to open the relay's breaker
+        relay.expect(10);
+        for (int i = 0; i < 10; i++) {
+            mesh.sendMessage(message("direct-" + i, "a", "relay", i));
+        }
+        assertTrue(relay.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mesh.getCircuitStates().get("relay") != CircuitBreaker.State.OPEN && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, mesh.getCircuitStates().get("relay"));
+
+        CompletableFuture<Message> response = mesh.request(new Message("via-relay", "a", "c", "A2A", "q",
+            Message.MessageType.QUERY), Duration.ofSeconds(5));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+        assertTrue(c.received.isEmpty());
+        assertEquals(1L, mesh.getShortCircuitedMessageCount());
+    }
+
+    @Test
+    void testBroadcastCoverageMatchesDeliveriesWithoutDuplicates() throws Exception {
+        List<PeerAgent> peers = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            peers.add(addAgent("n" + i));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 64; i++) {
+            mesh.connect("n" + i, "n" + ((i + 1) % 64));
+            int chord = random.nextInt(64);
+            if (chord != i) {
+                mesh.connect("n" + i, "n" + chord);
+            }
+        }
+
+        double coverage = mesh.broadcast(new Message("news", "n0", null, "A2A", "hello",
+            Message.MessageType.EVENT)).get(5, TimeUnit.SECONDS);
+
+        // The future completes only after every reached agent has been handed its copy
+        int delivered = 0;
+        for (PeerAgent peer : peers) {
+            assertTrue(peer.received.size() <= 1, peer.getId() + " got the broadcast twice");
+            delivered += peer.received.size();
+        }
+        assertTrue(peers.get(0).received.isEmpty(), "The sender received its own broadcast");
+        assertEquals(coverage, delivered / 63.0, 1e-9);
+        assertTrue(coverage > 0.5, "Broadcast barely spread: " + coverage);
+        assertTrue((Long) mesh.getStatistics().get("gossipDuplicates") > 0);
+        assertEquals(0, mesh.getStatistics().get("activeBroadcasts"));
+    }
+
+    @Test
+    void testSlowAgentDoesNotHoldUpTheSpreadAndLeavingPeersDoNotStallIt() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        addAgent("a");
+        PeerAgent slow = new PeerAgent("slow") {
+            @Override
+            public void processMessage(Message message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processMessage(message);
+            }
+        };
+        mesh.addAgent(slow);
+        PeerAgent c = addAgent("c");
+        PeerAgent d = addAgent("d");
+        addAgent("gone");
+        mesh.connect("a", "slow");
+        mesh.connect("slow", "c");
+        mesh.connect("c", "d");
+        mesh.connect("d", "gone");
+        mesh.setGossipSettings(4, 8);
+        mesh.removeAgent("gone");
+        c.expect(1);
+        d.expect(1);
+
+        CompletableFuture<Double> coverage = mesh.broadcast(new Message("alert", "a", null, "A2A", "!",
+            Message.MessageType.EVENT));
+        // The only route runs through the blocked agent, and the broadcast still gets past it
+        assertTrue(c.await(5, TimeUnit.SECONDS) && d.await(5, TimeUnit.SECONDS));
+        assertFalse(coverage.isDone(), "Completed before the slow agent got its copy");
+
+        // A peer leaving while its copy is still being delivered does not leave the future hanging
+        mesh.removeAgent("slow");
+        release.countDown();
+        assertEquals(1.0, coverage.get(5, TimeUnit.SECONDS), 1e-9);
+        assertEquals(1, slow.received.size());
+    }
+
+    @Test
+    void testIdleLinksSurviveALullAndBusyLinksAreKept() throws InterruptedException {
+        // Dropped links are recorded, since peers left below the minimum degree rewire at random
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        mesh.stop();
+        mesh = new P2PMesh("test-p2p") {
+            @Override
+            public void disconnect(String agentId1, String agentId2) {
+                dropped.add(agentId1.compareTo(agentId2) < 0 ? agentId1 + agentId2 : agentId2 + agentId1);
+                super.disconnect(agentId1, agentId2);
+            }
+        };
+        mesh.start();
+        PeerAgent b = addAgent("b");
+        for (String id : new String[]{"a", "c", "d"}) {
+            addAgent(id);
+        }
+        mesh.connect("a", "b");
+        mesh.connect("b", "c");
+        mesh.connect("c", "d");
+        mesh.connect("d", "a");
+        b.expect(1);
+        mesh.sendMessage(message("keepalive", "a", "b", 0));
+        assertTrue(b.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mesh.getTrafficRate("a", "b") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // Idle links are only dropped on the third check in a row without traffic
+        mesh.checkNetworkHealth();
+        mesh.checkNetworkHealth();
+        assertEquals(4L, mesh.getStatistics().get("connections"));
+        assertTrue(dropped.isEmpty());
+        mesh.checkNetworkHealth();
+        assertFalse(dropped.contains("ab"), "A link carrying traffic was dropped");
+        assertTrue(mesh.getPeers("a").contains("b"));
+        assertFalse(dropped.isEmpty(), "Idle links were never dropped");
+    }
+
+    @Test
+    void testDisconnectingALinkForgetsItsTraffic() throws InterruptedException {
+        PeerAgent b = addAgent("b");
+        addAgent("a");
+        mesh.connect("a", "b");
+        b.expect(1);
+        mesh.sendMessage(message("m", "a", "b", 0));
+        assertTrue(b.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mesh.getTrafficRate("a", "b") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, mesh.getStatistics().get("trafficEdges"));
+
+        mesh.disconnect("a", "b");
+        assertEquals(0, mesh.getStatistics().get("trafficEdges"));
+        assertEquals(0.0, mesh.getTrafficRate("a", "b"));
+    }
+
+    private PeerAgent addAgent(String id) {
+        PeerAgent agent = new PeerAgent(id);
+        mesh.addAgent(agent);
+        return agent;
+    }
+
+    private static Message message(String id, String senderId, String receiverId, int payload) {
+        return new Message(id, senderId, receiverId, "A2A", payload, Message.MessageType.EVENT);
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    static class PeerAgent implements MeshParticipantAgent {
+        private final String id;
+        private final AgentState state;
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+        final List<Message> received = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        PeerAgent(String id) {
+            this.id = id;
+            this.state = new AgentState(id);
+        }
+
+        void expect(int count) { latch = new CountDownLatch(count); }
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException { return latch.await(timeout, unit); }
+
+        List<Object> payloads() {
+            List<Object> payloads = new ArrayList<>();
+            synchronized (received) {
+                received.forEach(message -> payloads.add(message.getPayload()));
+            }
+            return payloads;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public String getType() { return "peer"; }
+        @Override public void initialize() { state.setStatus(AgentState.Status.ACTIVE); }
+        @Override public AgentState getState() { return state; }
+        @Override public void shutdown() { state.setStatus(AgentState.Status.SHUTDOWN); }
+
+        @Override
+        public void processMessage(Message message) {
+            batchSizes.add(1);
+            receive(message);
+        }
+
+        @Override
+        public void processBatch(List<Message> messages) {
+            batchSizes.add(messages.size());
+            messages.forEach(this::receive);
+        }
+
+        void receive(Message message) {
+            received.add(message);
+            latch.countDown();
+        }
+    }
+}
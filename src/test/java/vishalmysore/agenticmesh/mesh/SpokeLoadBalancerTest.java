@@ -0,0 +1,157 @@
+package vishalmysore.agenticmesh.mesh;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.MeshParticipantAgent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SpokeLoadBalancerTest {
+
+    private List<MeshParticipantAgent> spokes;
+
+    @BeforeEach
+    void setUp() {
+        spokes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MeshParticipantAgent spoke = mock(MeshParticipantAgent.class);
+            when(spoke.getId()).thenReturn("spoke" + i);
+            spokes.add(spoke);
+        }
+    }
+
+    @Test
+    void testRoundRobinFollowsCurrentAgent() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.ROUND_ROBIN);
+        balancer.rebuild(spokes);
+
+        assertSame(spokes.get(2), balancer.next("spoke1"));
+        assertSame(spokes.get(0), balancer.next("spoke3"));
+    }
+
+    @Test
+    void testRoundRobinCursorVisitsEverySpoke() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.ROUND_ROBIN);
+        balancer.rebuild(spokes);
+
+        Set<MeshParticipantAgent> visited = new HashSet<>();
+        for (int i = 0; i < spokes.size(); i++) {
+            visited.add(balancer.next(null));
+        }
+        assertEquals(spokes.size(), visited.size());
+    }
+
+    @Test
+    void testLeastLoadedPrefersLighterSpoke() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.LEAST_LOADED);
+        balancer.rebuild(spokes.subList(0, 2));
+        balancer.recordLoad("spoke0", 10);
+
+        for (int i = 0; i < 20; i++) {
+            assertSame(spokes.get(1), balancer.next(null));
+        }
+    }
+
+    @Test
+    void testRebuildKeepsLoadsOfRemainingSpokes() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.RANDOM);
+        balancer.rebuild(spokes);
+        balancer.recordLoad("spoke0", 3);
+        balancer.recordLoad("spoke3", 5);
+
+        balancer.rebuild(spokes.subList(0, 3));
+
+        assertEquals(3, balancer.getSpokeCount());
+        assertEquals(3, balancer.getLoads().get("spoke0"));
+        assertFalse(balancer.getLoads().containsKey("spoke3"));
+        assertTrue(spokes.subList(0, 3).contains(balancer.next(null)));
+    }
+
+    @Test
+    void testLeastInFlightAvoidsBacklog() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.LEAST_IN_FLIGHT);
+        balancer.rebuild(spokes.subList(0, 2));
+        // spoke0 has the lower lifetime load but a live backlog
+        balancer.recordLoad("spoke1", 1_000);
+        balancer.onDispatch("spoke0", 5);
+
+        assertSame(spokes.get(1), balancer.next(null));
+
+        balancer.onComplete("spoke0", 5, TimeUnit.MILLISECONDS.toNanos(5));
+        balancer.onDispatch("spoke1", 1);
+        assertSame(spokes.get(0), balancer.next(null));
+    }
+
+    @Test
+    void testPeakEwmaMovesTrafficAwayFromSlowSpoke() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.PEAK_EWMA);
+        balancer.rebuild(spokes.subList(0, 2));
+        balancer.onDispatch("spoke0", 1);
+        balancer.onComplete("spoke0", 1, TimeUnit.MILLISECONDS.toNanos(1));
+        balancer.onDispatch("spoke1", 1);
+        balancer.onComplete("spoke1", 1, TimeUnit.MILLISECONDS.toNanos(2));
+        assertSame(spokes.get(0), balancer.next(null));
+
+        // A single slow response is picked up immediately rather than averaged away
+        balancer.onDispatch("spoke0", 1);
+        balancer.onComplete("spoke0", 1, TimeUnit.MILLISECONDS.toNanos(200));
+        assertSame(spokes.get(1), balancer.next(null));
+        assertEquals(200.0, balancer.getLatencyEwmaMillis().get("spoke0"), 0.001);
+        assertEquals(0, balancer.getInFlight().get("spoke0"));
+    }
+
+    @Test
+    void testPeakEwmaCountsBacklogOfSpokesWithoutSamples() {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.PEAK_EWMA);
+        balancer.rebuild(spokes.subList(0, 2));
+        // Before any latency sample the backlog alone decides
+        balancer.onDispatch("spoke0", 5);
+        assertSame(spokes.get(1), balancer.next(null));
+        balancer.onComplete("spoke0", 5, TimeUnit.MILLISECONDS.toNanos(10));
+        balancer.onDispatch("spoke1", 1);
+        balancer.onComplete("spoke1", 1, TimeUnit.MILLISECONDS.toNanos(2));
+
+        // A spoke added under load starts at the mean latency instead of looking free
+        balancer.rebuild(spokes.subList(0, 3));
+        assertEquals(2.0, balancer.getLatencyEwmaMillis().get("spoke2"), 0.001);
+        balancer.onDispatch("spoke2", 20);
+        for (int i = 0; i < 50; i++) {
+            assertNotSame(spokes.get(2), balancer.next(null));
+        }
+
+        // Its first real sample replaces the seed
+        balancer.onComplete("spoke2", 20, TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1.0, balancer.getLatencyEwmaMillis().get("spoke2"), 0.001);
+    }
+
+    @Test
+    void testSuspendedSpokesAreSkippedUntilResumed() throws InterruptedException {
+        SpokeLoadBalancer balancer = new SpokeLoadBalancer(HubMesh.LoadBalancingStrategy.LEAST_LOADED);
+        balancer.rebuild(spokes.subList(0, 2));
+        balancer.suspend("spoke0", 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 20; i++) {
+            assertSame(spokes.get(1), balancer.next(null));
+        }
+
+        balancer.suspend("spoke1", 20, TimeUnit.MILLISECONDS);
+        assertNull(balancer.next(null));
+        Thread.sleep(30);
+        // The suspension expires on its own so the spoke can be probed again
+        assertSame(spokes.get(1), balancer.next(null));
+
+        balancer.setStrategy(HubMesh.LoadBalancingStrategy.ROUND_ROBIN);
+        balancer.resume("spoke0");
+        Set<MeshParticipantAgent> seen = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            seen.add(balancer.next(null));
+        }
+        assertEquals(2, seen.size());
+    }
+}
@@ -0,0 +1,544 @@
+package vishalmysore.agenticmesh.pipeline;
+
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.AgentState;
+import vishalmysore.agenticmesh.core.FunctionAgent;
+import vishalmysore.agenticmesh.core.Message;
+import vishalmysore.agenticmesh.mesh.MeshState;
+import vishalmysore.agenticmesh.mesh.PipelineMesh;
+import vishalmysore.agenticmesh.persistence.PersistenceManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static vishalmysore.agenticmesh.core.FunctionAgent.sleeping;
+import static vishalmysore.agenticmesh.core.FunctionAgent.withPayload;
+
+public class PipelineRuntimeTest {
+
+    @Test
+    void testMessagesFlowThroughStagesInPipelineOrder() throws InterruptedException {
+        PipelineMesh mesh = new PipelineMesh("pipeline", 4);
+        mesh.addAgent(new FunctionAgent("enrich", message -> withPayload(message, message.getPayload() + "+enrich")));
+        mesh.addAgent(new FunctionAgent("parse", message -> withPayload(message, message.getPayload() + "+parse")));
+        mesh.addAgent(new FunctionAgent("filter", message -> {
+            if (message.getId().endsWith("3")) {
+                return null;
+            }
+            if (message.getId().endsWith("7")) {
+                throw new IllegalStateException("bad record");
+            }
+            return message;
+        }));
+        mesh.setPipelineOrder(List.of("parse", "enrich", "filter"));
+        assertEquals("enrich", mesh.getNextAgent("parse").getId());
+        assertNull(mesh.getNextAgent("filter"));
+        assertThrows(IllegalStateException.class, () -> mesh.submit(message(0)));
+
+        mesh.initialize();
+        mesh.start();
+        List<Message> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            mesh.submit(message(i));
+            // Taking while submitting keeps the small queues from filling up
+            Message result = mesh.pollResult(0, TimeUnit.MILLISECONDS);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        while (results.size() < 16) {
+            Message result = mesh.pollResult(5, TimeUnit.SECONDS);
+            assertNotNull(result);
+            results.add(result);
+        }
+
+        List<String> expectedIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            if (i % 10 != 3 && i % 10 != 7) {
+                expectedIds.add("m" + i);
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        results.forEach(result -> ids.add(result.getId()));
+        assertEquals(expectedIds, ids);
+        assertEquals("data+parse+enrich", results.get(0).getPayload());
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> stages = (List<Map<String, Object>>) mesh.getStatistics().get("stages");
+        assertEquals("parse", stages.get(0).get("agentId"));
+        assertEquals(2L, stages.get(2).get("filteredMessages"));
+        assertEquals(2L, stages.get(2).get("failedMessages"));
+        assertEquals(16L, mesh.getStatistics().get("completedMessages"));
+        mesh.stop();
+        assertEquals(false, mesh.getStatistics().get("running"));
+    }
+
+    @Test
+    void testSlowStageBlocksSubmittersUntilItCatchesUp() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        FunctionAgent stalled = new FunctionAgent("stalled", message -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return message;
+        });
+        PipelineRuntime runtime = new PipelineRuntime("backpressure", List.of(stalled), 2);
+        runtime.start();
+
+        // One message is in the stalled stage and two wait in its queue
+        int accepted = 0;
+        while (runtime.offer(message(accepted), 100, TimeUnit.MILLISECONDS)) {
+            accepted++;
+        }
+        assertEquals(3, accepted);
+
+        release.countDown();
+        for (int i = 0; i < accepted; i++) {
+            assertEquals("m" + i, runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        }
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> runtime.submit(message(0)));
+    }
+
+    @Test
+    void testStoppingMeshTurnsAwayBlockedSubmittersAndKeepsResultsTakeable() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineMesh mesh = new PipelineMesh("stopping", 1);
+        mesh.addAgent(new FunctionAgent("stalled", message -> {
+            awaitQuietly(release);
+            return message;
+        }));
+        mesh.initialize();
+        mesh.start();
+        // One message in the stalled stage, one in its queue, the third submitter waits for room
+        assertTrue(mesh.offer(message(0), 5, TimeUnit.SECONDS));
+        int accepted = 1;
+        while (mesh.offer(message(accepted), 100, TimeUnit.MILLISECONDS)) {
+            accepted++;
+        }
+        assertEquals(2, accepted);
+        AtomicReference<Throwable> rejected = new AtomicReference<>();
+        Thread submitter = new Thread(() -> {
+            try {
+                mesh.submit(message(2));
+            } catch (RuntimeException e) {
+                rejected.set(e);
+            }
+        });
+        submitter.start();
+        Thread stopper = new Thread(mesh::stop);
+        stopper.start();
+        submitter.join(5_000);
+        assertTrue(rejected.get() instanceof IllegalStateException, "submitter got " + rejected.get());
+
+        // The full results queue holds up the drain until the first result is taken through the mesh
+        release.countDown();
+        assertEquals("m0", mesh.pollResult(5, TimeUnit.SECONDS).getId());
+        stopper.join(5_000);
+        assertFalse(stopper.isAlive());
+        assertEquals(MeshState.Status.STOPPED, mesh.getState().getStatus());
+        assertThrows(IllegalStateException.class, () -> mesh.submit(message(3)));
+    }
+
+    @Test
+    void testThroughputFollowsTheSlowestStage() throws InterruptedException {
+        // Each handshake only completes if a stage works on one message while its neighbour works on another
+        CountDownLatch fastTookSecond = new CountDownLatch(1);
+        CountDownLatch slowTookSecond = new CountDownLatch(1);
+        AtomicInteger overlaps = new AtomicInteger();
+        PipelineRuntime runtime = new PipelineRuntime("throughput", List.of(
+            new FunctionAgent("fast1", message -> {
+                if (message.getId().equals("m1")) {
+                    fastTookSecond.countDown();
+                }
+                return sleeping(2).apply(message);
+            }),
+            new FunctionAgent("slow", message -> {
+                if (message.getId().equals("m0") && awaitQuietly(fastTookSecond, 5)) {
+                    overlaps.incrementAndGet();
+                } else if (message.getId().equals("m1")) {
+                    slowTookSecond.countDown();
+                }
+                return sleeping(10).apply(message);
+            }),
+            new FunctionAgent("fast2", message -> {
+                if (message.getId().equals("m0") && awaitQuietly(slowTookSecond, 5)) {
+                    overlaps.incrementAndGet();
+                }
+                return sleeping(2).apply(message);
+            })), 8);
+        runtime.start();
+        int messages = 30;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < messages; i++) {
+                runtime.submit(message(i));
+            }
+        });
+        producer.start();
+        for (int i = 0; i < messages; i++) {
+            assertEquals("m" + i, runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        }
+        producer.join();
+
+        assertEquals(2, overlaps.get());
+        // The slow stage is busy for most of the run while the fast ones mostly wait for it
+        assertEquals("slow", runtime.getBottleneckStage());
+        assertTrue(runtime.getOccupancy(1) > 2 * runtime.getOccupancy(0));
+        assertTrue(runtime.getOccupancy(1) > 2 * runtime.getOccupancy(2));
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReplicasKeepSubmissionOrderAndCanBeRemovedWhileRunning() throws InterruptedException {
+        List<FunctionAgent> created = new ArrayList<>();
+        // Later messages are faster, so replicas finish them out of order
+        UnaryOperator<Message> slowFirst = message -> {
+            int i = Integer.parseInt(message.getId().substring(1));
+            return sleeping(Math.max(1, 12 - i % 12)).apply(message);
+        };
+        PipelineRuntime runtime = new PipelineRuntime("replicas", List.of(new FunctionAgent("model", slowFirst)), 8);
+        assertThrows(IllegalArgumentException.class, () -> runtime.setReplicas(0, 2, null));
+        runtime.setReplicas(0, 4, () -> {
+            FunctionAgent replica = new FunctionAgent("model-replica", slowFirst);
+            synchronized (created) {
+                created.add(replica);
+            }
+            return replica;
+        });
+        runtime.start();
+        assertEquals(3, created.size());
+        assertTrue(created.stream().allMatch(agent -> agent.getState().getStatus() == AgentState.Status.ACTIVE));
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 48; i++) {
+                runtime.submit(message(i));
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 48; i++) {
+            assertEquals("m" + i, runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        }
+        producer.join();
+        assertTrue(runtime.getOccupancy(0) > 0.0);
+
+        runtime.setReplicas(0, 1, null);
+        runtime.submit(message(48));
+        assertEquals("m48", runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+        assertEquals(1, runtime.getReplicas(0));
+        assertTrue(created.stream().allMatch(agent -> agent.getState().getStatus() == AgentState.Status.SHUTDOWN));
+    }
+
+    @Test
+    void testUnorderedStageLetsFastMessagesOvertake() throws InterruptedException {
+        UnaryOperator<Message> slowFirst = message ->
+            sleeping(message.getId().equals("m0") ? 300 : 1).apply(message);
+        PipelineRuntime runtime = new PipelineRuntime("unordered", List.of(new FunctionAgent("model", slowFirst)), 8);
+        runtime.setReplicas(0, 2, () -> new FunctionAgent("model-replica", slowFirst));
+        runtime.setOrdered(0, false);
+        runtime.start();
+        assertThrows(IllegalStateException.class, () -> runtime.setOrdered(0, true));
+
+        for (int i = 0; i < 5; i++) {
+            runtime.submit(message(i));
+        }
+        assertEquals("m1", runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        List<Message> rest = new ArrayList<>();
+        while (rest.size() < 4) {
+            rest.add(runtime.pollResult(5, TimeUnit.SECONDS));
+        }
+        assertEquals("m0", rest.get(3).getId());
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testBatchesFlushWhenFullOrAfterLinger() throws InterruptedException {
+        List<Integer> batchSizes = new ArrayList<>();
+        FunctionAgent batching = new FunctionAgent("remote", message -> message) {
+            @Override
+            public List<Message> transformBatch(List<Message> messages) {
+                synchronized (batchSizes) {
+                    batchSizes.add(messages.size());
+                }
+                List<Message> results = new ArrayList<>(messages);
+                // Drops one message of each batch that contains m2
+                results.replaceAll(message -> message.getId().equals("m2") ? null : message);
+                return results;
+            }
+        };
+        PipelineRuntime runtime = new PipelineRuntime("batching", List.of(batching), 16);
+        runtime.setBatching(0, 4, Duration.ofMillis(200));
+        runtime.start();
+
+        for (int i = 0; i < 8; i++) {
+            runtime.submit(message(i));
+        }
+        for (int i = 0; i < 8; i++) {
+            if (i != 2) {
+                assertEquals("m" + i, runtime.pollResult(5, TimeUnit.SECONDS).getId());
+            }
+        }
+        assertEquals(List.of(4, 4), batchSizes);
+
+        // A lone message waits out the linger time, then goes as a batch of one
+        long started = System.nanoTime();
+        runtime.submit(message(8));
+        assertEquals("m8", runtime.pollResult(5, TimeUnit.SECONDS).getId());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(List.of(4, 4, 1), batchSizes);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stage = ((List<Map<String, Object>>) runtime.getStatistics().get("stages")).get(0);
+        assertEquals(1L, stage.get("filteredMessages"));
+        assertEquals(3.0, (double) stage.get("averageBatchSize"), 1e-9);
+        assertTrue(runtime.stop(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAdjacentLightweightStagesRunFusedOnOneThread() throws InterruptedException {
+        Map<String, Thread> threads = new ConcurrentHashMap<>();
+        PipelineMesh mesh = new PipelineMesh("fusion", 16);
+        for (String id : new String[]{"decode", "validate", "remote", "format", "tag"}) {
+            mesh.addAgent(new FunctionAgent(id, message -> {
+                threads.put(id, Thread.currentThread());
+                if (id.equals("validate") && message.getId().equals("m1")) {
+                    return null;
+                }
+                return withPayload(message, message.getPayload() + "+" + id);
+            }));
+        }
+        for (String id : new String[]{"decode", "validate", "format", "tag"}) {
+            mesh.setStageLightweight(id, true);
+        }
+        mesh.start();
+        assertThrows(IllegalStateException.class, () -> mesh.setStageReplicas("tag", 2, () -> null));
+
+        for (int i = 0; i < 3; i++) {
+            mesh.submit(message(i));
+        }
+        assertEquals("data+decode+validate+remote+format+tag", mesh.pollResult(5, TimeUnit.SECONDS).getPayload());
+        assertEquals("m2", mesh.pollResult(5, TimeUnit.SECONDS).getId());
+        assertSame(threads.get("decode"), threads.get("validate"));
+        assertSame(threads.get("format"), threads.get("tag"));
+        assertNotSame(threads.get("validate"), threads.get("remote"));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> stages = (List<Map<String, Object>>) mesh.getStatistics().get("stages");
+        assertEquals(3, stages.size());
+        assertEquals(List.of("decode", "validate"), stages.get(0).get("fusedAgents"));
+        assertEquals("remote", stages.get(1).get("agentId"));
+        assertEquals(1L, stages.get(0).get("filteredMessages"));
+        mesh.stop();
+    }
+
+    @Test
+    void testRestartedPipelineResumesFromCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("pipeline-checkpoints");
+        AtomicInteger firstRunParses = new AtomicInteger();
+        CountDownLatch crashed = new CountDownLatch(1);
+        PipelineMesh first = checkpointedMesh(new PersistenceManager(dir),
+            new FunctionAgent("parse", message -> {
+                firstRunParses.incrementAndGet();
+                return withPayload(message, message.getPayload() + "+parse");
+            }),
+            new FunctionAgent("store", message -> {
+                // Stands in for a crash: the second stage never finishes in this run
+                awaitQuietly(crashed);
+                return message;
+            }));
+        PipelineCheckpoint checkpoint = null;
+        try {
+            first.initialize();
+            first.start();
+            for (int i = 0; i < 10; i++) {
+                first.submit(message(i));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (checkpoint == null || !checkpoint.getMessages().stream()
+                    .allMatch(entry -> entry.get("completedStages").equals(1))) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(5);
+                checkpoint = first.checkpoint();
+            }
+            assertEquals(10, checkpoint.getMessages().size());
+            assertEquals(List.of("parse", "store"), checkpoint.getStages());
+
+            // A fresh manager has nothing cached, so the second run reads the checkpoint back from disk
+            AtomicInteger secondRunParses = new AtomicInteger();
+            PipelineMesh second = checkpointedMesh(new PersistenceManager(dir),
+                new FunctionAgent("parse", message -> {
+                    secondRunParses.incrementAndGet();
+                    return withPayload(message, message.getPayload() + "+parse");
+                }),
+                new FunctionAgent("store", message -> withPayload(message, message.getPayload() + "+store")));
+            second.initialize();
+            second.start();
+            second.submit(message(10));
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i <= 10; i++) {
+                Message result = second.pollResult(5, TimeUnit.SECONDS);
+                assertNotNull(result);
+                assertEquals("data+parse+store", result.getPayload());
+                ids.add(result.getId());
+            }
+            assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9", "m10"), ids);
+            // Only the message submitted after the restart went through the first stage again
+            assertEquals(1, secondRunParses.get());
+            assertEquals(10, second.getStatistics().get("restoredMessages"));
+            second.stop();
+        } finally {
+            crashed.countDown();
+            while (first.pollResult(1, TimeUnit.SECONDS) != null) {
+                // Drained so stopping leaves no checkpoint behind
+            }
+            first.stop();
+        }
+        assertEquals(10, firstRunParses.get());
+        assertNull(new PersistenceManager(dir).load(first.getCheckpointKey(), PipelineCheckpoint.class));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count(), "Checkpoint or temporary files were left behind");
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void testUnreadableCheckpointIsTreatedAsAbsent() throws Exception {
+        Path dir = Files.createTempDirectory("pipeline-checkpoints");
+        PipelineMesh mesh = checkpointedMesh(new PersistenceManager(dir),
+            new FunctionAgent("parse", message -> withPayload(message, message.getPayload() + "+parse")));
+        // What an in-place write cut short by a crash would have left behind
+        Files.writeString(dir.resolve(mesh.getCheckpointKey() + ".json"), "{\"pipeline\":\"checkpointed\",\"mess");
+        mesh.initialize();
+        mesh.start();
+        mesh.submit(message(0));
+        assertEquals("data+parse", mesh.pollResult(5, TimeUnit.SECONDS).getPayload());
+        assertEquals(0, mesh.getStatistics().get("restoredMessages"));
+
+        // The next checkpoint replaces the broken file with one that reads back
+        mesh.checkpoint();
+        PipelineCheckpoint stored = new PersistenceManager(dir).load(mesh.getCheckpointKey(), PipelineCheckpoint.class);
+        assertEquals(List.of("parse"), stored.getStages());
+        mesh.stop();
+        new PersistenceManager(dir).clear();
+        Files.delete(dir);
+    }
+
+    @Test
+    void testAutoscalerGrowsTheBottleneckAndShrinksItWhenIdle() throws InterruptedException {
+        PipelineMesh mesh = new PipelineMesh("autoscaled", 64);
+        mesh.addAgent(new FunctionAgent("parse", UnaryOperator.identity()));
+        mesh.addAgent(new FunctionAgent("lookup", sleeping(10)));
+        mesh.setStageReplicaLimits("lookup", 1, 4, () -> new FunctionAgent("lookup", sleeping(10)));
+        mesh.setAutoscaling(0.5, 0.8, Duration.ofMillis(150));
+        mesh.initialize();
+        mesh.start();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                while (mesh.pollResult(1, TimeUnit.SECONDS) != null) {
+                    // Keeps the results queue from filling up
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        // About 200 messages per second needs at least two lookup replicas
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        int submitted = 0;
+        while (stageStatistics(mesh, 1).get("replicas").equals(1) && System.nanoTime() < deadline) {
+            mesh.submit(message(submitted++));
+            Thread.sleep(5);
+        }
+        assertTrue((int) stageStatistics(mesh, 1).get("replicas") > 1);
+        assertEquals("lookup", mesh.getBottleneckStage());
+        Map<String, Object> lookup = stageStatistics(mesh, 1);
+        assertTrue((double) lookup.get("arrivalRate") > 0);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> serviceTime = (Map<String, Object>) lookup.get("serviceTime");
+        assertTrue((long) serviceTime.get("count") > 0);
+        assertTrue((double) serviceTime.get("p50Millis") >= 8);
+
+        // Without load the stage drops back to its minimum
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!stageStatistics(mesh, 1).get("replicas").equals(1)) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> autoscaler = (Map<String, Object>) mesh.getStatistics().get("autoscaler");
+        assertTrue((long) autoscaler.get("scaleUps") >= 1);
+        assertTrue((long) autoscaler.get("scaleDowns") >= 1);
+        consumer.join();
+        mesh.stop();
+    }
+
+    @Test
+    void testStatisticsReadsDoNotMoveTheAutoscalerWindow() throws InterruptedException {
+        PipelineStage stage = new PipelineStage(new FunctionAgent("idle", UnaryOperator.identity()), 16,
+            new LinkedBlockingQueue<>(), true);
+        PipelineStage.SampleCursor controller = new PipelineStage.SampleCursor();
+        for (int i = 0; i < 8; i++) {
+            stage.input().put(new PipelineItem(i, message(i)));
+        }
+        Thread.sleep(150);
+        assertTrue((double) stage.getStatistics().get("arrivalRate") > 0);
+        Thread.sleep(150);
+        // The statistics window moved past the arrivals; the autoscaler's still covers them
+        assertEquals(0.0, (double) stage.getStatistics().get("arrivalRate"));
+        assertTrue(stage.sample(controller).arrivalRate > 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stageStatistics(PipelineMesh mesh, int stage) {
+        return ((List<Map<String, Object>>) mesh.getStatistics().get("stages")).get(stage);
+    }
+
+    private static PipelineMesh checkpointedMesh(PersistenceManager persistence, FunctionAgent... stages) {
+        PipelineMesh mesh = new PipelineMesh("checkpointed", 16);
+        for (FunctionAgent stage : stages) {
+            mesh.addAgent(stage);
+        }
+        mesh.setCheckpointInterval(Duration.ofHours(1), persistence);
+        return mesh;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false if the latch did not open in time
+     */
+    private static boolean awaitQuietly(CountDownLatch latch, long timeoutSeconds) {
+        try {
+            return latch.await(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Message message(int i) {
+        return new Message("m" + i, "source", null, "A2A", "data", Message.MessageType.EVENT);
+    }
+}
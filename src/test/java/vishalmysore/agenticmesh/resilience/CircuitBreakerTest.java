@@ -0,0 +1,101 @@
+package vishalmysore.agenticmesh.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private final List<String> transitions = new ArrayList<>();
+
+    private CircuitBreaker breaker(Duration openDuration, int probes) {
+        return new CircuitBreaker("agent", 0.5, 4, Duration.ofSeconds(10), 10, openDuration, probes,
+            (breaker, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    private static void call(CircuitBreaker breaker, boolean success) {
+        assertTrue(breaker.tryAcquire());
+        if (success) {
+            breaker.onSuccess();
+        } else {
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void testOpensOnceFailureRateReachesThreshold() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1), 1);
+        call(breaker, false);
+        call(breaker, false);
+        call(breaker, false);
+        // Below the minimum number of calls the breaker stays closed whatever the failure rate
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        call(breaker, true);
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void testSuccessfulProbesCloseTheBreaker() throws InterruptedException {
+        CircuitBreaker breaker = breaker(Duration.ofMillis(20), 2);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        Thread.sleep(30);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Only the configured number of probes are let through
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void testFailedProbeReopensTheBreaker() throws InterruptedException {
+        CircuitBreaker breaker = breaker(Duration.ofMillis(20), 1);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        Thread.sleep(30);
+
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN"), transitions);
+    }
+
+    @Test
+    void testProbeThrowingAnErrorGivesItsSlotBack() throws InterruptedException {
+        CircuitBreaker breaker = breaker(Duration.ofMillis(20), 1);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        Thread.sleep(30);
+
+        assertTrue(breaker.tryAcquire());
+        assertThrows(StackOverflowError.class, () -> breaker.execute(() -> {
+            throw new StackOverflowError();
+        }));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // The next probe is granted instead of the breaker staying half-open with its slot taken
+        Thread.sleep(30);
+        assertTrue(breaker.tryAcquire());
+        breaker.execute(() -> { });
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
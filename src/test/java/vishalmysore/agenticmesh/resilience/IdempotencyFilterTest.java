@@ -0,0 +1,65 @@
+package vishalmysore.agenticmesh.resilience;
+
+import org.junit.jupiter.api.Test;
+import vishalmysore.agenticmesh.core.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyFilterTest {
+
+    @Test
+    void testDuplicatesAreSuppressedPerReceiverUntilForgotten() {
+        IdempotencyFilter filter = new IdempotencyFilter(Duration.ofMinutes(1), 1_000, false);
+        assertTrue(filter.markIfFirst("agent1", "m1"));
+        assertFalse(filter.markIfFirst("agent1", "m1"));
+        assertTrue(filter.markIfFirst("agent2", "m1"));
+        assertEquals(1, filter.getDuplicateCount());
+
+        filter.forget("agent1", "m1");
+        assertTrue(filter.markIfFirst("agent1", "m1"));
+
+        Message first = message("m2", Message.MessageType.EVENT);
+        Message other = message("m3", Message.MessageType.EVENT);
+        List<Message> fresh = filter.markFirst("agent1", List.of(first, other, first), null);
+        assertEquals(List.of(first, other), fresh);
+    }
+
+    @Test
+    void testIdsExpireAndMemoryStaysBounded() throws InterruptedException {
+        IdempotencyFilter filter = new IdempotencyFilter(Duration.ofMillis(20), 100, false);
+        assertTrue(filter.markIfFirst("agent", "old"));
+        Thread.sleep(50);
+        assertTrue(filter.markIfFirst("agent", "old"));
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.markIfFirst("agent", "id-" + i);
+        }
+        assertTrue(filter.size() <= 100);
+        // The most recent ids are still remembered after older generations were dropped
+        assertFalse(filter.markIfFirst("agent", "id-9999"));
+    }
+
+    @Test
+    void testDuplicateQueryReplaysCachedResponse() {
+        IdempotencyFilter filter = new IdempotencyFilter(Duration.ofMinutes(1), 1_000, true);
+        Message query = new Message("q1", "client", "agent", "A2A", "question", Message.MessageType.QUERY);
+        List<Message> replayed = new ArrayList<>();
+
+        assertEquals(List.of(query), filter.markFirst("agent", List.of(query), replayed::add));
+        Message response = Message.responseTo(query, "answer");
+        filter.recordResponse(response);
+
+        assertTrue(filter.markFirst("agent", List.of(query), replayed::add).isEmpty());
+        assertEquals(List.of(response), replayed);
+        assertSame(response, filter.getCachedResponse("agent", "q1"));
+        assertNull(filter.getCachedResponse("client", "q1"));
+    }
+
+    private static Message message(String id, Message.MessageType type) {
+        return new Message(id, "sender", "agent1", "A2A", "payload", type);
+    }
+}
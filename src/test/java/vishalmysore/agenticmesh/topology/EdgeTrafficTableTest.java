@@ -0,0 +1,90 @@
+package vishalmysore.agenticmesh.topology;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EdgeTrafficTableTest {
+
+    @Test
+    void testCountsPerDirectedEdgeAndRemoval() {
+        EdgeTrafficTable table = new EdgeTrafficTable(Duration.ofSeconds(10), 10, 4);
+        // Enough edges to grow every segment several times
+        for (int sender = 0; sender < 100; sender++) {
+            for (int receiver = 0; receiver < 20; receiver++) {
+                table.record(sender, receiver, sender + receiver + 1);
+            }
+        }
+        assertEquals(2000, table.size());
+        assertEquals(6, table.windowCount(2, 3));
+        assertEquals(5, table.windowCount(3, 1));
+        assertEquals(0, table.windowCount(3, 99));
+
+        table.removeNode(3);
+        assertEquals(0, table.windowCount(2, 3));
+        assertEquals(0, table.total(3, 1));
+        assertEquals(2000 - 20 - 99, table.size());
+        // Every remaining edge is still reachable after backward-shift deletion
+        for (int sender = 0; sender < 100; sender++) {
+            for (int receiver = 0; receiver < 20; receiver++) {
+                if (sender != 3 && receiver != 3) {
+                    assertEquals(sender + receiver + 1, table.total(sender, receiver));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testOldBucketsLeaveTheWindow() throws InterruptedException {
+        EdgeTrafficTable table = new EdgeTrafficTable(Duration.ofMillis(100), 4);
+        table.record(1, 2, 50);
+        assertEquals(50, table.windowCount(1, 2));
+        assertTrue(table.rate(1, 2) > 0);
+
+        Thread.sleep(150);
+        table.record(1, 2, 5);
+        assertEquals(5, table.windowCount(1, 2));
+        assertEquals(55, table.total(1, 2));
+
+        Map<Long, Double> rates = new HashMap<>();
+        table.forEach((sender, receiver, rate) -> rates.put(((long) sender << 32) | receiver, rate));
+        assertEquals(1, rates.size());
+        // 5 messages within a window of at most 100 ms
+        assertTrue(rates.get((1L << 32) | 2) >= 50.0);
+    }
+
+    @Test
+    void testFullTableReplacesItsQuietestEdge() {
+        EdgeTrafficTable table = new EdgeTrafficTable(Duration.ofSeconds(10), 10, 1, 64);
+        for (int sender = 0; sender < 64; sender++) {
+            table.record(sender, 1000, sender + 2);
+        }
+        assertEquals(64, table.size());
+        assertEquals(0, table.getEvictionCount());
+
+        assertTrue(table.recordAndGetRate(5000, 1000, 1) > 0);
+        assertEquals(64, table.size());
+        assertEquals(1, table.getEvictionCount());
+        assertEquals(0, table.windowCount(0, 1000));
+        assertEquals(3, table.windowCount(1, 1000));
+        assertEquals(1, table.windowCount(5000, 1000));
+    }
+
+    @Test
+    void testIdleEdgesAreDroppedBeforeGrowing() throws InterruptedException {
+        EdgeTrafficTable table = new EdgeTrafficTable(Duration.ofMillis(100), 4, 1);
+        for (int sender = 0; sender < 12; sender++) {
+            table.record(sender, 1000, 1);
+        }
+        Thread.sleep(150);
+        // The 13th edge would grow the segment; the idle ones make room instead
+        table.record(12, 1000, 1);
+        assertEquals(1, table.size());
+        assertEquals(0, table.total(0, 1000));
+        assertEquals(0, table.getEvictionCount());
+    }
+}
@@ -0,0 +1,121 @@
+package vishalmysore.agenticmesh.topology;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutingTableTest {
+
+    @Test
+    void testRoutesFollowConnectAndDisconnect() {
+        TopologyGraph graph = new TopologyGraph();
+        RoutingTable routing = new RoutingTable(graph, 4);
+        for (String id : new String[]{"a", "b", "c", "d", "e"}) {
+            graph.addNode(id);
+        }
+        graph.connect("a", "b");
+        graph.connect("b", "c");
+        graph.connect("c", "d");
+
+        assertEquals(3, routing.distance("a", "d"));
+        assertEquals("b", routing.nextHop("a", "d"));
+        assertEquals(List.of("a", "b", "c", "d"), routing.path("a", "d"));
+        assertEquals(RoutingTable.UNREACHABLE, routing.distance("a", "e"));
+        assertNull(routing.nextHop("a", "e"));
+        assertEquals(2, routing.getMissCount());
+
+        // A shortcut is relaxed into the cached tree without rebuilding it
+        long builds = routing.getBuildCount();
+        graph.connect("a", "c");
+        assertEquals(2, routing.distance("a", "d"));
+        assertEquals("c", routing.nextHop("a", "d"));
+        assertEquals(builds, routing.getBuildCount());
+        assertTrue(routing.getRelaxationCount() > 0);
+
+        // Losing a tree edge re-attaches the cut off subtree in place
+        graph.disconnect("a", "c");
+        assertEquals(3, routing.distance("a", "d"));
+        assertEquals("b", routing.nextHop("a", "d"));
+        assertEquals(builds, routing.getBuildCount());
+        assertTrue(routing.getRepairCount() > 0);
+
+        graph.removeNode("c");
+        assertEquals(RoutingTable.UNREACHABLE, routing.distance("a", "d"));
+        assertTrue(routing.path("a", "d").isEmpty());
+        assertEquals(builds, routing.getBuildCount());
+        graph.removeNode("d");
+        assertEquals(1, routing.getInvalidationCount());
+        graph.addNode("f");
+        assertEquals(RoutingTable.UNREACHABLE, routing.distance("f", "d"));
+    }
+
+    @Test
+    void testIncrementalRoutesMatchFreshSearch() {
+        Random random = new Random(11);
+        TopologyGraph graph = new TopologyGraph(4);
+        RoutingTable routing = new RoutingTable(graph, 8);
+        int agents = 60;
+        for (int i = 0; i < agents; i++) {
+            graph.addNode("agent" + i);
+        }
+        for (int step = 0; step < 3000; step++) {
+            String a = "agent" + random.nextInt(agents);
+            String b = "agent" + random.nextInt(agents);
+            int action = random.nextInt(10);
+            if (action < 5 && !a.equals(b) && graph.contains(a) && graph.contains(b)) {
+                graph.connect(a, b);
+            } else if (action < 9) {
+                graph.disconnect(a, b);
+            } else if (graph.contains(a)) {
+                graph.removeNode(a);
+            } else {
+                graph.addNode(a);
+            }
+
+            String target = "agent" + random.nextInt(12);
+            String source = "agent" + random.nextInt(agents);
+            if (!graph.contains(target) || !graph.contains(source)) {
+                continue;
+            }
+            Map<String, Integer> expected = bfs(graph, target);
+            for (int i = 0; i < agents; i++) {
+                source = "agent" + i;
+                if (!graph.contains(source)) {
+                    continue;
+                }
+                int distance = routing.distance(source, target);
+                assertEquals(expected.getOrDefault(source, RoutingTable.UNREACHABLE), distance);
+                if (distance > 0) {
+                    String hop = routing.nextHop(source, target);
+                    assertTrue(graph.isConnected(source, hop));
+                    assertEquals(distance - 1, (int) expected.get(hop));
+                }
+            }
+        }
+        // Twelve targets share eight cached trees
+        assertTrue(routing.getCachedDestinations() <= 8);
+        assertTrue(routing.getRepairCount() > 0);
+    }
+
+    private static Map<String, Integer> bfs(TopologyGraph graph, String from) {
+        Map<String, Integer> distances = new HashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        distances.put(from, 0);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            String node = queue.poll();
+            for (String peer : graph.copyPeers(node)) {
+                if (distances.putIfAbsent(peer, distances.get(node) + 1) == null) {
+                    queue.add(peer);
+                }
+            }
+        }
+        return distances;
+    }
+}
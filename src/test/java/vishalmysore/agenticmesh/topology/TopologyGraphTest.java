@@ -0,0 +1,135 @@
+package vishalmysore.agenticmesh.topology;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopologyGraphTest {
+
+    @Test
+    void testConnectDisconnectAndRemove() {
+        TopologyGraph graph = new TopologyGraph();
+        for (String id : new String[]{"a", "b", "c", "d"}) {
+            graph.addNode(id);
+        }
+        assertTrue(graph.connect("a", "b"));
+        assertTrue(graph.connect("a", "c"));
+        assertTrue(graph.connect("a", "d"));
+        assertFalse(graph.connect("b", "a"));
+        assertThrows(IllegalArgumentException.class, () -> graph.connect("a", "missing"));
+        assertEquals(3, graph.getEdgeCount());
+
+        assertTrue(graph.disconnect("c", "a"));
+        assertEquals(Set.of("b", "d"), new HashSet<>(graph.getPeers("a")));
+        assertTrue(graph.getPeers("c").isEmpty());
+
+        assertTrue(graph.removeNode("a"));
+        assertEquals(0, graph.getEdgeCount());
+        assertEquals(0, graph.degree("b"));
+        assertFalse(graph.isConnected("b", "a"));
+    }
+
+    @Test
+    void testPeerViewIsLiveAndRemovedNodeIdsAreRecycled() {
+        TopologyGraph graph = new TopologyGraph();
+        graph.addNode("a");
+        graph.addNode("b");
+        Set<String> peers = graph.getPeers("a");
+        assertTrue(peers.isEmpty());
+
+        graph.connect("a", "b");
+        assertEquals(Set.of("b"), new HashSet<>(peers));
+        assertTrue(peers.contains("b"));
+        assertThrows(UnsupportedOperationException.class, () -> peers.add("c"));
+
+        int node = graph.nodeOf("a");
+        graph.removeNode("a");
+        assertTrue(peers.isEmpty());
+        assertEquals(node, graph.addNode("c"));
+        // The view belongs to the removed agent, not to whoever reuses its node id
+        assertTrue(peers.isEmpty());
+    }
+
+    @Test
+    void testRandomOperationsMatchReferenceAdjacency() {
+        TopologyGraph graph = new TopologyGraph();
+        Map<String, Set<String>> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 20_000; step++) {
+            String a = "agent" + random.nextInt(200);
+            String b = "agent" + random.nextInt(200);
+            int operation = random.nextInt(10);
+            if (operation < 2) {
+                graph.addNode(a);
+                reference.putIfAbsent(a, new HashSet<>());
+            } else if (operation < 7) {
+                if (reference.containsKey(a) && reference.containsKey(b) && !a.equals(b)) {
+                    assertEquals(reference.get(a).add(b), graph.connect(a, b));
+                    reference.get(b).add(a);
+                }
+            } else if (operation < 9) {
+                boolean expected = reference.containsKey(a) && reference.get(a).remove(b);
+                if (expected) {
+                    reference.get(b).remove(a);
+                }
+                assertEquals(expected, graph.disconnect(a, b));
+            } else {
+                Set<String> peers = reference.remove(a);
+                if (peers != null) {
+                    peers.forEach(peer -> reference.get(peer).remove(a));
+                }
+                assertEquals(peers != null, graph.removeNode(a));
+            }
+        }
+
+        long edges = 0;
+        for (Map.Entry<String, Set<String>> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), new HashSet<>(graph.getPeers(entry.getKey())), entry.getKey());
+            edges += entry.getValue().size();
+        }
+        assertEquals(reference.size(), graph.getNodeCount());
+        assertEquals(edges / 2, graph.getEdgeCount());
+
+        String agent = reference.keySet().iterator().next();
+        List<String> sampled = graph.sampleNonPeers(agent, 5);
+        for (String candidate : sampled) {
+            assertNotEquals(agent, candidate);
+            assertFalse(reference.get(agent).contains(candidate));
+        }
+    }
+
+    @Test
+    void testSamplePeersPicksDistinctPeersAndSkipsExcluded() {
+        TopologyGraph graph = new TopologyGraph();
+        graph.addNode("hub");
+        for (int i = 0; i < 10; i++) {
+            graph.addNode("peer" + i);
+            graph.connect("hub", "peer" + i);
+        }
+        int hub = graph.nodeOf("hub");
+        int excluded = graph.nodeOf("peer3");
+        int[] picked = new int[4];
+        Set<Integer> seen = new HashSet<>();
+        for (int round = 0; round < 200; round++) {
+            assertEquals(4, graph.samplePeers(hub, 4, excluded, picked));
+            Set<Integer> distinct = new HashSet<>();
+            for (int node : picked) {
+                assertNotEquals(excluded, node);
+                assertTrue(graph.isConnected("hub", graph.nameOf(node)));
+                distinct.add(node);
+            }
+            assertEquals(4, distinct.size());
+            seen.addAll(distinct);
+        }
+        assertEquals(9, seen.size());
+        // Asking for more than the degree returns every peer but the excluded one
+        assertEquals(9, graph.samplePeers(hub, 20, excluded, new int[20]));
+    }
+}
@@ -0,0 +1,75 @@
+package vishalmysore.agenticmesh.topology;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopologyOptimizerTest {
+
+    @Test
+    void testHotPairGetsShortcutThatIsRetiredOnlyAfterColdRounds() {
+        TopologyGraph graph = new TopologyGraph();
+        EdgeTrafficTable links = new EdgeTrafficTable(Duration.ofSeconds(60), 12);
+        EdgeTrafficTable demand = new EdgeTrafficTable(Duration.ofSeconds(60), 12);
+        TopologyOptimizer optimizer = new TopologyOptimizer(graph, links, demand, 10.0, 1.0, 2, 8);
+        for (String id : new String[]{"a", "b", "c", "d"}) {
+            graph.addNode(id);
+        }
+        graph.connect("a", "b");
+        graph.connect("b", "c");
+        graph.connect("c", "d");
+        int a = graph.nodeOf("a");
+        int c = graph.nodeOf("c");
+
+        optimizer.recordDemand(a, c, 1_000_000);
+        assertEquals(1, optimizer.getCandidateCount());
+        assertEquals(1, optimizer.optimize(8));
+        assertEquals(0, optimizer.getCandidateCount());
+        assertTrue(graph.isConnected("a", "c"));
+        assertFalse(graph.isConnected("a", "d"));
+        assertEquals(1, optimizer.getShortcutCount());
+
+        // A busy shortcut is never demoted
+        links.record(c, a, 1_000_000);
+        assertEquals(0, optimizer.optimize(8));
+        assertEquals(0, optimizer.optimize(8));
+        assertTrue(graph.isConnected("a", "c"));
+        links.remove(c, a);
+
+        // Cold links go only after the configured number of rounds
+        assertEquals(0, optimizer.optimize(8));
+        assertTrue(graph.isConnected("a", "c"));
+        assertEquals(1, optimizer.optimize(8));
+        assertFalse(graph.isConnected("a", "c"));
+        assertEquals(1, optimizer.getDemotionCount());
+        // Links the optimizer did not create are left alone
+        assertTrue(graph.isConnected("a", "b"));
+    }
+
+    @Test
+    void testDegreeBudgetAndExternalRemovals() {
+        TopologyGraph graph = new TopologyGraph();
+        EdgeTrafficTable links = new EdgeTrafficTable(Duration.ofSeconds(60), 12);
+        EdgeTrafficTable demand = new EdgeTrafficTable(Duration.ofSeconds(60), 12);
+        TopologyOptimizer optimizer = new TopologyOptimizer(graph, links, demand, 10.0, 1.0, 2, 8);
+        for (String id : new String[]{"hub", "x", "y", "z"}) {
+            graph.addNode(id);
+        }
+        graph.connect("hub", "x");
+        optimizer.recordDemand(graph.nodeOf("hub"), graph.nodeOf("y"), 1_000_000);
+        optimizer.recordDemand(graph.nodeOf("z"), graph.nodeOf("hub"), 1_000_000);
+        assertEquals(2, optimizer.getCandidateCount());
+
+        assertEquals(1, optimizer.optimize(2));
+        assertEquals(2, graph.degree("hub"));
+        assertEquals(1, optimizer.getShortcutCount());
+
+        graph.removeNode("hub");
+        assertEquals(0, optimizer.getShortcutCount());
+        assertEquals(0, optimizer.getCandidateCount());
+        assertThrows(IllegalArgumentException.class,
+            () -> new TopologyOptimizer(graph, links, demand, 1.0, 1.0, 2, 8));
+    }
+}